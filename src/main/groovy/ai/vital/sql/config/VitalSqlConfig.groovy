@@ -13,6 +13,23 @@ class VitalSqlConfig {
 		PostgreSQL
 	}
 	
+	public static enum BulkImportMode {
+		//multi-row INSERT statements
+		JDBC,
+		//COPY ... FROM STDIN, PostgreSQL only
+		PostgreSQLCopy,
+		//LOAD DATA LOCAL INFILE from an in-memory stream, MySQL family only
+		MySQLLoadData
+	}
+	
+	public static enum BulkExportCompression {
+		None,
+		//concatenated gzip members, one per batch
+		GZIP,
+		//concatenated zstd frames, one per batch, requires zstd-jni on the classpath
+		ZSTD
+	}
+	
 	String tablesPrefix
 	
 	String endpointURL
@@ -27,4 +44,156 @@ class VitalSqlConfig {
 	
 	Integer poolMaxTotal = 5
 	
+	/**
+	 * seconds the list of segment tables is cached for, 0 disables caching
+	 */
+	Integer segmentsCatalogTTL = 60
+	
+	/**
+	 * seconds export query objects counts and page boundaries are cached for, a query for the page
+	 * following a cached one continues after its last URI instead of skipping offset objects; 0 disables it
+	 */
+	Integer exportCursorsTTL = 60
+	
+	/**
+	 * max number of segments a select query evaluates concurrently, each on its own
+	 * pooled connection, capped at half of poolMaxTotal; 0 or 1 evaluates segments sequentially
+	 */
+	Integer segmentsQueryParallelism = 0
+	
+	/**
+	 * sorted select queries matching at least this many objects in a segment are sorted
+	 * and limited by the database, 0 always sorts the matching objects in memory
+	 */
+	Integer sortPushdownMinResults = 1000
+	
+	/**
+	 * numeric and date aggregations are evaluated by the database instead of loading all values
+	 */
+	Boolean aggregationPushdown = true
+	
+	/**
+	 * seconds segment statistics (objects per type, rows, distinct values and range per property) are kept for,
+	 * AND criteria are evaluated in the order of their estimated matching objects; 0 keeps the query order
+	 */
+	Integer segmentStatisticsTTL = 0
+	
+	/**
+	 * seconds between background refreshes of the statistics of the queried segments, the first collection
+	 * starts with the first query of a segment and queries never wait for it; 0 collects them in the background
+	 * once they are missing or older than segmentStatisticsTTL, queries never wait for them either
+	 */
+	Integer segmentStatisticsInterval = 0
+	
+	/**
+	 * max rows of a segment table read to estimate its statistics, sampled in id ranges spread over the table
+	 */
+	Integer segmentStatisticsSampleRows = 20000
+	
+	/**
+	 * AND criteria are restricted with uri IN (...) of the objects matched by the preceding criteria
+	 * once there are at most this many of them, 0 disables it
+	 */
+	Integer criteriaRestrictionMaxURIs = 1000
+	
+	/**
+	 * seconds passed AND constraint probes of a segment are cached for, writes through this process
+	 * invalidate them; 0 probes with every query
+	 */
+	Integer probeCacheTTL = 60
+	
+	/**
+	 * graph query child arcs are evaluated for batches of that many parents, 0 or 1 evaluates each parent separately
+	 */
+	Integer graphBatchSize = 100
+	
+	/**
+	 * max connectors fetched for a single batch, arcs exceeding it fall back to per parent evaluation
+	 */
+	Integer graphBatchMaxConnectors = 10000
+	
+	/**
+	 * graph query arc iterators fetch the next page in the background with another pooled connection once
+	 * this percent of the current page is consumed, 0 fetches pages on demand; pages are fetched on demand
+	 * whenever half of a bounded pool is already borrowed by concurrent query paths
+	 */
+	Integer graphPrefetchThreshold = 0
+	
+	/**
+	 * maintain per segment edges adjacency table on write and use it to expand graph query arcs,
+	 * existing segments get it with upgrade
+	 */
+	Boolean edgesTable = false
+	
+	/**
+	 * maintain per segment objects header table (one row per object) on write and use it for counts,
+	 * URIs listing, export and type only filters, existing segments get it with upgrade
+	 */
+	Boolean objectsTable = false
+	
+	/**
+	 * save compares objects with their stored version and rewrites only the rows of changed properties,
+	 * otherwise all rows of saved objects are deleted and inserted again
+	 */
+	Boolean differentialSave = false
+	
+	/**
+	 * max rows written with a single multi-row INSERT statement, also capped by the database parameters limit
+	 */
+	Integer insertMaxRowsPerStatement = 500
+	
+	/**
+	 * rows per INSERT statement are halved when a statement takes longer and grown when it takes
+	 * less than a quarter of it, 0 keeps insertMaxRowsPerStatement
+	 */
+	Integer insertStatementTargetMS = 200
+	
+	/**
+	 * max estimated bytes of the values of a single multi-row INSERT statement, keep it below the server
+	 * max_allowed_packet, 0 disables the bound
+	 */
+	Integer insertMaxStatementBytes = 2097152
+	
+	/**
+	 * rows loading method of bulk import, falls back to JDBC if not supported by the database
+	 */
+	BulkImportMode bulkImportMode = BulkImportMode.JDBC
+	
+	/**
+	 * bulk import threads encoding parsed objects into rows, used when bulkImportWriters is greater than 1
+	 */
+	Integer bulkImportEncoders = 2
+	
+	/**
+	 * bulk import connections writing encoded rows, each commits its own chunks, capped at poolMaxTotal;
+	 * 0 or 1 imports on a single thread
+	 */
+	Integer bulkImportWriters = 0
+	
+	/**
+	 * chunks of 1000 objects each bulk import queue holds before the producing stage blocks
+	 */
+	Integer bulkImportQueueSize = 4
+	
+	/**
+	 * bulk import commits a checkpoint with each chunk in the segment checkpoints table, an import of the same
+	 * dataset into the segment restarted after a failure skips the committed chunks
+	 */
+	Boolean bulkImportCheckpoints = false
+	
+	/**
+	 * PostgreSQL builds deferred segment indices with CREATE INDEX CONCURRENTLY, slower but doesn't block writes
+	 */
+	Boolean deferredIndexesConcurrently = false
+	
+	/**
+	 * bulk export threads decoding and serializing fetched objects, the output order is preserved
+	 */
+	Integer bulkExportEncoders = 2
+	
+	/**
+	 * bulk export output compression, bulk import detects compressed input
+	 */
+	BulkExportCompression bulkExportCompression = BulkExportCompression.None
+	
 }
@@ -9,6 +9,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -25,7 +26,9 @@ import ai.vital.sql.query.SQLGraphObjectResolver;
 import ai.vital.sql.query.SQLSingleSegmentQueryHandler;
 import ai.vital.sql.query.SqlExportQueryImpl;
 import ai.vital.sql.query.SqlResultsProvider;
+import ai.vital.sql.query.SynchronizedQueryStats;
 import ai.vital.sql.schemas.SchemasUtils;
+import ai.vital.sql.stats.TableStatistics;
 import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.VitalServiceConstants;
 import ai.vital.vitalservice.VitalStatus;
@@ -124,7 +127,7 @@ public class VitalSqlImplementation {
 		
 			connection = dataSource.getConnection();
 			
-			return SchemasUtils.tableExists(connection, dataSource, table.tableName);
+			return dataSource.getSegmentsCatalog().tableExists(connection, table.tableName);
 			
 		} finally {
 			SQLUtils.closeQuietly(connection);
@@ -134,6 +137,14 @@ public class VitalSqlImplementation {
 	
 	
 	public VitalSegment addSegment(VitalSegment dbSegment, boolean createIfNotExists) throws Exception {
+		return addSegment(dbSegment, createIfNotExists, false);
+	}
+	
+	/**
+	 * @param deferIndexes the segment table is created without secondary indices, they are built by
+	 * {@link #bulkImport(VitalSegment, InputStream, String, boolean)} or {@link #buildSegmentIndexes(VitalSegment)}
+	 */
+	public VitalSegment addSegment(VitalSegment dbSegment, boolean createIfNotExists, boolean deferIndexes) throws Exception {
 
 		Connection connection = null;
 		
@@ -144,13 +155,13 @@ public class VitalSqlImplementation {
 		
 			SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, dbSegment);
 			
-			if(SchemasUtils.tableExists(connection, dataSource, segmentTable.tableName)) {
+			if(dataSource.getSegmentsCatalog().tableExists(connection, segmentTable.tableName)) {
 				
 				throw new Exception("Segment table with URI: " + dbSegment.getURI() + " already exists, id: " + dbSegment.getRaw(Property_hasSegmentID.class));
 				
 			}
 
-			SchemasUtils.createSegmentTable(dataSource, connection, dbSegment);
+			SchemasUtils.createSegmentTable(dataSource, connection, dbSegment, deferIndexes);
 			
 			return dbSegment;
 			
@@ -170,7 +181,7 @@ public class VitalSqlImplementation {
 			connection = dataSource.getConnection();
 			
 			SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, s);
-			if( ! SchemasUtils.tableExists(connection, dataSource, segmentTable.tableName)) {
+			if( ! dataSource.getSegmentsCatalog().tableExists(connection, segmentTable.tableName)) {
 				throw new Exception("Segment with URI: " + s.getURI() + ", id:" + segmentID + " not found");
 			}
 			
@@ -178,6 +189,10 @@ public class VitalSqlImplementation {
 				
 				SchemasUtils.deleteSegmentTable(dataSource, connection, s);
 				
+				dataSource.invalidateSegmentCaches(segmentTable.tableName);
+				
+				dataSource.getSegmentStatistics().invalidate(segmentTable.tableName);
+				
 			}
 			
 			
@@ -188,6 +203,31 @@ public class VitalSqlImplementation {
 	}
 	
 	
+	/**
+	 * Upgrades segment table created with an older schema version, see {@link SchemasUtils#upgradeSegmentTable(VitalSqlDataSource, Connection, VitalSegment)}
+	 */
+	public VitalStatus upgradeSegment(VitalSegment segment) throws Exception {
+		
+		check_noSparkSQL("upgradeSegment");
+		
+		Connection connection = null;
+		
+		try {
+			
+			connection = dataSource.getConnection();
+			
+			segment = checkSegment(connection, segment);
+			
+			boolean altered = SchemasUtils.upgradeSegmentTable(dataSource, connection, segment);
+			
+			return VitalStatus.withOKMessage("Segment " + segment.getURI() + " table " + (altered ? "upgraded" : "already up to date"));
+			
+		} finally {
+			closeQuietly(connection);
+		}
+		
+	}
+	
 	public VitalStatus bulkExport(VitalSegment segment, OutputStream outputStream, String datasetURI) throws Exception {
 		
 		
@@ -212,7 +252,7 @@ public class VitalSqlImplementation {
 
 		String segmentID = (String) segment.getRaw(Property_hasSegmentID.class);
 		SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, segment);
-		if( ! SchemasUtils.tableExists(connection, dataSource, segmentTable.tableName)) {
+		if( ! dataSource.getSegmentsCatalog().tableExists(connection, segmentTable.tableName)) {
 			throw new Exception("Segment not found, URI: " + segment.getURI() + " id: " + segmentID);
 		}
 		
@@ -221,6 +261,13 @@ public class VitalSqlImplementation {
 
 
 	public VitalStatus bulkImport(VitalSegment segment, InputStream inputStream, String datasetURI) throws Exception {
+		return bulkImport(segment, inputStream, datasetURI, false);
+	}
+	
+	/**
+	 * @param deferIndexes an empty segment table is loaded without secondary indices, the missing indices are built after the load
+	 */
+	public VitalStatus bulkImport(VitalSegment segment, InputStream inputStream, String datasetURI, boolean deferIndexes) throws Exception {
 		
 		check_noSparkSQL("bulkImport");
 		
@@ -231,7 +278,15 @@ public class VitalSqlImplementation {
 
 			segment = checkSegment(connection, segment);
 			
-			return BulkOperationsImpl.bulkImport(dataSource, connection, SchemasUtils.getSegmentTable(dataSource, segment), inputStream, datasetURI);
+			SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, segment);
+			
+			try {
+				return BulkOperationsImpl.bulkImport(dataSource, connection, segmentTable, inputStream, datasetURI, deferIndexes);
+			} finally {
+				//partially imported on failure
+				dataSource.invalidateSegmentCaches(segmentTable.tableName);
+				dataSource.getSegmentStatistics().invalidate(segmentTable.tableName);
+			}
 			
 		} finally {
 			closeQuietly(connection);
@@ -240,6 +295,34 @@ public class VitalSqlImplementation {
 		
 	}
 	
+	/**
+	 * Builds the secondary indices missing in a segment table created or loaded with deferred indices
+	 */
+	public VitalStatus buildSegmentIndexes(VitalSegment segment) throws Exception {
+		
+		check_noSparkSQL("buildSegmentIndexes");
+		
+		Connection connection = null;
+		try {
+			
+			connection = dataSource.getConnection();
+			
+			segment = checkSegment(connection, segment);
+			
+			long start = System.currentTimeMillis();
+			
+			int built = SchemasUtils.buildSegmentIndexes(dataSource, connection, SchemasUtils.getSegmentTable(dataSource, segment), Boolean.TRUE.equals(dataSource.getConfig().getDeferredIndexesConcurrently()));
+			
+			VitalStatus vs = VitalStatus.withOKMessage("Built " + built + " index(es), " + (System.currentTimeMillis() - start) + "ms");
+			vs.setSuccesses(built);
+			return vs;
+			
+		} finally {
+			closeQuietly(connection);
+		}
+		
+	}
+	
 	private void check_noSparkSQL(String m) {
 
 		if(dataSource.isSparkSQL()) throw new RuntimeException("'" + m + "' method unavailable in sparkSQL endpoint");
@@ -287,6 +370,9 @@ public class VitalSqlImplementation {
 
 		currentTransaction.commit();
 		
+		//the transaction segments are not tracked
+		dataSource.invalidateSegmentCaches();
+		
 		synchronized(activeTransactions) {
 			activeTransactions.remove(transactionID);
 		}
@@ -354,7 +440,11 @@ public class VitalSqlImplementation {
 			
 			for(VitalSegment segment : segmentsPool) {
 				
-				CoreOperations.deleteBatch(dataSource, connection, SchemasUtils.getSegmentTable(dataSource, segment), urisSet);
+				SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, segment);
+				
+				CoreOperations.deleteBatch(dataSource, connection, segmentTable, urisSet);
+				
+				dataSource.invalidateSegmentCaches(segmentTable.tableName);
 				
 			}
 			
@@ -403,7 +493,11 @@ public class VitalSqlImplementation {
 			
 			segment = checkSegment(connection, segment);
 			
-			int updated = CoreOperations.clearSegmentTable(connection, SchemasUtils.getSegmentTable(dataSource, segment));
+			SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, segment);
+			
+			int updated = CoreOperations.clearSegmentTable(connection, segmentTable);
+			
+			dataSource.invalidateSegmentCaches(segmentTable.tableName);
 			
 			VitalStatus status = VitalStatus.withOKMessage("All segment " + segment.getURI() + " id: " + segment.getRaw(Property_hasSegmentID.class) + " objects deleted: " + updated);
 			status.setSuccesses(updated);
@@ -445,6 +539,7 @@ public class VitalSqlImplementation {
 				
 				deleted = CoreOperations.deleteGraphObject(connection, SchemasUtils.getSegmentTable(dataSource, segment), uri.get());
 				if(deleted) {
+					dataSource.invalidateSegmentCaches(SchemasUtils.getSegmentTable(dataSource, segment).tableName);
 					target = segment;
 					break;
 				}
@@ -588,6 +683,37 @@ public class VitalSqlImplementation {
 		
 	}
 
+	/**
+	 * @param refresh collects the statistics now, otherwise the cached ones are returned and collected only if not available
+	 */
+	public TableStatistics getSegmentStatistics(VitalSegment segment, boolean refresh) throws Exception {
+		
+		check_noSparkSQL("getSegmentStatistics");
+		
+		Connection connection = null;
+		
+		try {
+			
+			connection = dataSource.getConnection();
+			
+			segment = checkSegment(connection, segment);
+			
+			SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, segment);
+			
+			TableStatistics ts = refresh ? null : dataSource.getSegmentStatistics().getCached(segmentTable.tableName);
+			
+			if(ts == null) {
+				ts = dataSource.getSegmentStatistics().refresh(connection, segmentTable, null);
+			}
+			
+			return ts;
+			
+		} finally {
+			closeQuietly(connection);
+		}
+		
+	}
+	
 	public void open() {
 		//nop
 	}
@@ -671,7 +797,11 @@ public class VitalSqlImplementation {
 			}
 					
 			//this would throw a transaction stage specific exception
-			CoreOperations.batchSaveObjects(dataSource, connection, SchemasUtils.getSegmentTable(dataSource, targetSegment), Arrays.asList(graphObject));
+			SegmentTable targetTable = SchemasUtils.getSegmentTable(dataSource, targetSegment);
+			
+			CoreOperations.batchSaveObjects(dataSource, connection, targetTable, Arrays.asList(graphObject));
+			
+			dataSource.invalidateSegmentCaches(targetTable.tableName);
 			
 			return graphObject;
 			
@@ -751,7 +881,11 @@ public class VitalSqlImplementation {
 							
 			}
 			
-			CoreOperations.batchSaveObjects(dataSource, connection, SchemasUtils.getSegmentTable(dataSource, targetSegment), graphObjectsList);
+			SegmentTable targetTable = SchemasUtils.getSegmentTable(dataSource, targetSegment);
+			
+			CoreOperations.batchSaveObjects(dataSource, connection, targetTable, graphObjectsList);
+			
+			dataSource.invalidateSegmentCaches(targetTable.tableName);
 			
 			ResultList l = new ResultList();
 			for(GraphObject g : graphObjectsList) {
@@ -812,7 +946,8 @@ public class VitalSqlImplementation {
 			queryStats = new QueryStats();
 		}
 		if(sq.getCollectStats() == CollectStats.detailed) {
-			queryStats.setQueriesTimes(new ArrayList<QueryTime>());
+			//synchronized once, concurrent segment workers and prefetches share it
+			queryStats.setQueriesTimes(Collections.synchronizedList(new ArrayList<QueryTime>()));
 		} else {
 			if(queryStats != null) {
 				queryStats.setQueriesTimes(null);
@@ -837,31 +972,15 @@ public class VitalSqlImplementation {
 			
 			List<SegmentTable> segments = new ArrayList<SegmentTable>();
 			
-			List<String> allTables = SchemasUtils.listAllTables(connection, dataSource);
-			
 			for(VitalSegment segment : sq.getSegments()) {
 				
-				String tableName = SchemasUtils.getSegmentTable(dataSource, segment).tableName;
+				SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, segment);
 				
 				String segmentID = (String) segment.getRaw(Property_hasSegmentID.class);
 				
-				VitalSegment found = null;
+				if( ! dataSource.getSegmentsCatalog().tableExists(connection, segmentTable.tableName, queryStats) ) throw new Exception("Segment for querying: " + segmentID + " not found");
 				
-				for(String c : allTables) {
-					
-					if( c.equals( tableName ) ) {
-						
-						found = segment;
-						
-						break;
-						
-					}
-					
-				}
-				
-				if(found == null) throw new Exception("Segment for querying: " + segmentID + " not found");
-				
-				segments.add( SchemasUtils.getSegmentTable(dataSource, found));
+				segments.add(segmentTable);
 				
 			}
 			
@@ -871,7 +990,7 @@ public class VitalSqlImplementation {
 				
 				//the segment does not have to be indexed
 				
-				return SqlExportQueryImpl.export(connection, segments.get(0), (VitalExportQuery)sq, queryStats);
+				return SqlExportQueryImpl.export(dataSource, connection, segments.get(0), (VitalExportQuery)sq, null, queryStats);
 				
 			}
 
@@ -884,6 +1003,36 @@ public class VitalSqlImplementation {
 		
 	}
 	
+	/**
+	 * Export query page starting after the given URI, the last result URI of a page is the continuation token of the next one
+	 * @param afterURI continuation token, null starts at the query offset
+	 */
+	public ResultList exportQuery(VitalExportQuery sq, String afterURI) throws Exception {
+		
+		Connection connection = null;
+		
+		QueryStats queryStats = initStatsObject(sq);
+		
+		try {
+			
+			if( sq.getSegments() == null || sq.getSegments().size() != 1 ) throw new NullPointerException("export query requires exactly 1 segment");
+			
+			connection = dataSource.getConnection();
+			
+			VitalSegment segment = sq.getSegments().get(0);
+			
+			SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, segment);
+			
+			if( ! dataSource.getSegmentsCatalog().tableExists(connection, segmentTable.tableName, queryStats) ) throw new Exception("Segment for querying: " + segment.getRaw(Property_hasSegmentID.class) + " not found");
+			
+			return SqlExportQueryImpl.export(dataSource, connection, segmentTable, sq, afterURI, queryStats);
+			
+		} finally {
+			closeQuietly(connection);
+		}
+		
+	}
+	
 	public Connection getConnection() throws SQLException {
 		return dataSource.getConnection();
 	}
@@ -917,38 +1066,26 @@ public class VitalSqlImplementation {
 			}
 			
 			
-			List<String> listTables = SchemasUtils.listAllTables(connection, dataSource);
-			
 			for(VitalSegment s : inputSegments) {
 				
-				String tableName = SchemasUtils.getSegmentTable(dataSource, s).tableName;
+				SegmentTable segmentTable = SchemasUtils.getSegmentTable(dataSource, s);
 				
 				String segmentID = (String) s.getRaw(Property_hasSegmentID.class);
 				
-				VitalSegment dbvs = null;
-				
-				for(String x : listTables) {
-					
-					if( x.equals( tableName ) ) {
-						
-						dbvs = s;
-						break;
-					}
-					
-				}
-				
-				if(dbvs == null) throw new VitalServiceException("Segment not found: " + segmentID);
-				
-				segments.add(SchemasUtils.getSegmentTable(dataSource, dbvs));
+				if( ! dataSource.getSegmentsCatalog().tableExists(connection, segmentTable.tableName, queryStats) ) throw new VitalServiceException("Segment not found: " + segmentID);
 				
+				segments.add(segmentTable);
 				
 			}
 			
 			VitalGraphQuery gq = (VitalGraphQuery) query;
 			
-			SQLGraphObjectResolver resolver = new SQLGraphObjectResolver(connection, !gq.getPayloads(), queryStats);
+			//arcs pages may be prefetched concurrently
+			QueryStats graphStats = SynchronizedQueryStats.of(queryStats);
+			
+			SQLGraphObjectResolver resolver = new SQLGraphObjectResolver(connection, !gq.getPayloads(), graphStats);
 			
-			ResultsProvider provider = new SqlResultsProvider(dataSource, connection, segments, resolver, queryStats);
+			ResultsProvider provider = new SqlResultsProvider(dataSource, connection, segments, resolver, graphStats);
 			
 			GraphQueryImplementation impl = new GraphQueryImplementation(provider, gq, resolver);
 			ResultList rl = impl.execute();
@@ -7,6 +7,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.slf4j.Logger;
@@ -16,10 +20,14 @@ import ai.vital.sql.config.VitalSqlConfig;
 import ai.vital.sql.config.VitalSqlConfig.SqlDBType;
 import ai.vital.sql.model.SegmentTable;
 import ai.vital.sql.model.VitalSignsToSqlBridge;
+import ai.vital.sql.query.ExportCursors;
+import ai.vital.sql.query.ProbeCache;
+import ai.vital.sql.schemas.SegmentsCatalog;
 import ai.vital.sql.schemas.SqlDialect;
 import ai.vital.sql.schemas.amazonredshift.AmazonRedshiftSqlDialect;
 import ai.vital.sql.schemas.mysql.MySQLDialect;
 import ai.vital.sql.schemas.postgresql.PostgreSQLDialect;
+import ai.vital.sql.stats.SegmentStatistics;
 import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.query.QueryStats;
 import ai.vital.vitalservice.query.QueryTime;
@@ -57,6 +65,19 @@ public class VitalSqlDataSource extends BasicDataSource {
 	private final static Logger log = LoggerFactory.getLogger(VitalSqlDataSource.class);
 	
 	private SegmentTable systemSegmentTable = null;
+	
+	private SegmentsCatalog segmentsCatalog = new SegmentsCatalog(this);
+	
+	private ExportCursors exportCursors = new ExportCursors(this);
+	
+	private ProbeCache probeCache = new ProbeCache(this);
+	
+	private SegmentStatistics segmentStatistics = new SegmentStatistics(this);
+	
+	private ExecutorService segmentsExecutor = null;
+	
+	//pooled connections borrowed by concurrent query paths besides the query connection
+	private Semaphore parallelConnections = null;
 
 	private Driver hiveDriver;
 	
@@ -195,6 +216,133 @@ public class VitalSqlDataSource extends BasicDataSource {
 	public SqlDialect getDialect() {
 		return dialect;
 	}
+	
+	public SegmentsCatalog getSegmentsCatalog() {
+		return segmentsCatalog;
+	}
+	
+	public ExportCursors getExportCursors() {
+		return exportCursors;
+	}
+	
+	public SegmentStatistics getSegmentStatistics() {
+		return segmentStatistics;
+	}
+	
+	public ProbeCache getProbeCache() {
+		return probeCache;
+	}
+	
+	/**
+	 * Drops the export cursors and passed probes of a segment table written through this process
+	 */
+	public void invalidateSegmentCaches(String tableName) {
+		exportCursors.invalidate(tableName);
+		probeCache.invalidate(tableName);
+	}
+	
+	/**
+	 * Drops the export cursors and passed probes of all segment tables
+	 */
+	public void invalidateSegmentCaches() {
+		exportCursors.invalidateAll();
+		probeCache.invalidateAll();
+	}
+
+	/**
+	 * Executor for concurrent segments evaluation and bulk import stages, the concurrency is bounded per query
+	 * by {@link #getSegmentsQueryParallelism()} and per import by {@link #getBulkImportWriters()}
+	 */
+	public synchronized ExecutorService getSegmentsExecutor() {
+		
+		if(segmentsExecutor == null) {
+			segmentsExecutor = Executors.newVirtualThreadPerTaskExecutor();
+		}
+		
+		return segmentsExecutor;
+		
+	}
+	
+	/**
+	 * Reserves a pooled connection for a concurrent query path (segment workers, graph prefetch), at most half
+	 * of a bounded pool is reserved at a time across all queries so that the query connections are always available.
+	 * @return false if the caller should go on with its own connection only
+	 */
+	public boolean tryAcquireParallelConnection() {
+		
+		//negative max total means unbounded pool
+		if(getMaxTotal() <= 0) return true;
+		
+		return getParallelConnections().tryAcquire();
+		
+	}
+	
+	public void releaseParallelConnection() {
+		
+		if(getMaxTotal() <= 0) return;
+		
+		getParallelConnections().release();
+		
+	}
+	
+	private synchronized Semaphore getParallelConnections() {
+		
+		if(parallelConnections == null) {
+			parallelConnections = new Semaphore(getMaxTotal() / 2);
+		}
+		
+		return parallelConnections;
+		
+	}
+	
+	/**
+	 * Max number of segments a single query evaluates concurrently, never more than half
+	 * of a bounded pool so that concurrent queries and transactions still get connections.
+	 * 1 means sequential evaluation.
+	 */
+	public int getSegmentsQueryParallelism() {
+		
+		Integer parallelism = config.getSegmentsQueryParallelism();
+		
+		if(parallelism == null || parallelism.intValue() < 2) return 1;
+		
+		//negative max total means unbounded pool
+		if(getMaxTotal() <= 0) return parallelism.intValue();
+		
+		return Math.max(1, Math.min(parallelism.intValue(), getMaxTotal() / 2));
+		
+	}
+	
+	/**
+	 * @return bulk import writers, the importing connection included, 1 means single threaded import.
+	 * Never more than half of a bounded pool so that concurrent queries and transactions still get connections.
+	 */
+	public int getBulkImportWriters() {
+		
+		Integer writers = config.getBulkImportWriters();
+		
+		if(writers == null || writers.intValue() < 2) return 1;
+		
+		//negative max total means unbounded pool
+		if(getMaxTotal() <= 0) return writers.intValue();
+		
+		return Math.max(1, Math.min(writers.intValue(), getMaxTotal() / 2));
+		
+	}
+	
+	@Override
+	public synchronized void close() throws SQLException {
+		
+		if(segmentsExecutor != null) {
+			segmentsExecutor.shutdownNow();
+			segmentsExecutor = null;
+		}
+		
+		segmentStatistics.close();
+		
+		super.close();
+		
+	}
 
 	public boolean singleStatementAtATime() {
 		return false;
@@ -205,20 +353,67 @@ public class VitalSqlDataSource extends BasicDataSource {
 	}
 	
 	public String getInsertCommandTemplate(Connection connection, String tableName) throws SQLException {
+		return getInsertCommandTemplate(connection, tableName, VitalSignsToSqlBridge.columns.size());
+	}
+	
+	/**
+	 * @param columnsCount number of leading columns from VitalSignsToSqlBridge.columns list
+	 */
+	public String getInsertCommandTemplate(Connection connection, String tableName, int columnsCount) throws SQLException {
 
-		String template = initInsertCommandTemplate(connection);
+		String template = initInsertCommandTemplate(connection, columnsCount);
 		
 		return template.replace("${TABLENAME}", SQLUtils.escapeID(connection, tableName));
 		
 	}
 		
-	String insertCommandTemplate = null;
+	/**
+	 * @return INSERT command with given number of VALUES tuples
+	 */
+	public String getInsertCommandTemplate(Connection connection, String tableName, int columnsCount, int rows) throws SQLException {
+		
+		String template = getInsertCommandTemplate(connection, tableName, columnsCount);
+		
+		if(rows <= 1) return template;
+		
+		int valuesIndex = template.lastIndexOf(" VALUES ") + " VALUES ".length();
+		
+		String tuple = template.substring(valuesIndex);
+		
+		StringBuilder command = new StringBuilder(template.length() + ( tuple.length() + 2 ) * rows).append(template);
+		
+		for(int i = 1; i < rows; i++) {
+			command.append(", ").append(tuple);
+		}
+		
+		return command.toString();
+		
+	}
+	
+	//table name -> rows per multi-row INSERT statement adapted to measured latency
+	private final Map<String, Integer> insertRowsPerStatement = new ConcurrentHashMap<String, Integer>();
+	
+	/**
+	 * @return adapted rows per multi-row INSERT statement of the table, 0 - not set yet
+	 */
+	public int getInsertRowsPerStatement(String tableName) {
+		Integer r = insertRowsPerStatement.get(tableName);
+		return r != null ? r.intValue() : 0;
+	}
+
+	public void setInsertRowsPerStatement(String tableName, int rows) {
+		insertRowsPerStatement.put(tableName, rows);
+	}
+
+	Map<Integer, String> insertCommandTemplates = new ConcurrentHashMap<Integer, String>();
+		
+	private String initInsertCommandTemplate(Connection connection, int columnsCount) throws SQLException {
 		
-	private String initInsertCommandTemplate(Connection connection) throws SQLException {
+		String insertCommandTemplate = insertCommandTemplates.get(columnsCount);
 		
 		if(insertCommandTemplate != null) return insertCommandTemplate;
 
-		List<String> columns = VitalSignsToSqlBridge.columns;
+		List<String> columns = VitalSignsToSqlBridge.columns.subList(0, columnsCount);
 		
 		StringBuilder command = new StringBuilder("INSERT INTO ")
 		.append("${TABLENAME}").append(" ( ");
@@ -243,6 +438,8 @@ public class VitalSqlDataSource extends BasicDataSource {
 		command.append(")");
 		
 		insertCommandTemplate = command.toString();
+		
+		insertCommandTemplates.put(columnsCount, insertCommandTemplate);
 
 		return insertCommandTemplate;
 	}
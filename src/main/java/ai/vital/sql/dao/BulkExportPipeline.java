@@ -0,0 +1,397 @@
+package ai.vital.sql.dao;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.config.VitalSqlConfig.BulkExportCompression;
+import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.model.VitalSignsToSqlBridge;
+import ai.vital.sql.model.VitalSignsToSqlBridge.RawObject;
+import ai.vital.sql.model.VitalSignsToSqlBridge.RawObjectsStreamHandler;
+import ai.vital.vitalsigns.block.BlockCompactStringSerializer;
+
+/**
+ * Multi-threaded bulk export: the calling thread fetches the rows and groups them into batches of
+ * {@link #BATCH_SIZE} objects, encoder workers decode, serialize and optionally compress
+ * the batches and write them to the output in fetch order. Each batch is serialized (and compressed)
+ * independently, gzip members and zstd frames can be concatenated. The first error stops all stages,
+ * all errors are logged and the first one is thrown.
+ */
+public class BulkExportPipeline {
+
+	private final static Logger log = LoggerFactory.getLogger(BulkExportPipeline.class);
+
+	static int BATCH_SIZE = 1000;
+
+	static class Batch {
+
+		long index;
+
+		List<RawObject> objects = new ArrayList<RawObject>();
+
+		Batch(long index) {
+			this.index = index;
+		}
+
+	}
+
+	//end of input marker
+	private final static Batch END = new Batch(-1);
+
+	//zstd frame magic number, little endian
+	private final static int ZSTD_MAGIC = 0xFD2FB528;
+
+	private VitalSqlDataSource dataSource;
+
+	private SegmentTable segmentTable;
+
+	private BulkExportCompression compression;
+
+	private int encoders;
+
+	private BlockingQueue<Batch> fetched;
+
+	private OutputStream outputStream;
+
+	private final Object writeLock = new Object();
+
+	//index of the next batch to write, guarded by writeLock
+	private long nextBatch = 0;
+
+	private AtomicInteger exported = new AtomicInteger(0);
+
+	private List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+	private volatile boolean failed = false;
+
+	private volatile long step = System.currentTimeMillis();
+
+	public BulkExportPipeline(VitalSqlDataSource dataSource, SegmentTable segmentTable) {
+		super();
+		this.dataSource = dataSource;
+		this.segmentTable = segmentTable;
+
+		BulkExportCompression c = dataSource.getConfig().getBulkExportCompression();
+		this.compression = c != null ? c : BulkExportCompression.None;
+
+		Integer e = dataSource.getConfig().getBulkExportEncoders();
+		this.encoders = Math.max(1, e != null ? e.intValue() : 1);
+
+		this.fetched = new ArrayBlockingQueue<Batch>(encoders * 2);
+	}
+
+	public int getExported() {
+		return exported.get();
+	}
+
+	/**
+	 * @param rs result set sorted by URI
+	 */
+	void run(ResultSet rs, OutputStream outputStream) throws Exception {
+
+		log.info("BulkExport pipeline, table: {}, encoders: {}, compression: {}", segmentTable.tableName, encoders, compression);
+
+		if(compression == BulkExportCompression.ZSTD) {
+			try {
+				Class.forName("com.github.luben.zstd.Zstd");
+			} catch(Throwable e) {
+				throw new RuntimeException("ZSTD bulk export compression requires zstd-jni library: " + e.getLocalizedMessage(), e);
+			}
+		}
+
+		this.outputStream = outputStream;
+
+		ExecutorService executor = dataSource.getSegmentsExecutor();
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+		try {
+
+			for(int i = 0; i < encoders; i++) {
+
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						encode();
+						return null;
+					}
+
+				}));
+
+			}
+
+			VitalSignsToSqlBridge.fromSqlRaw(segmentTable, rs, new RawObjectsStreamHandler() {
+
+				Batch batch = new Batch(0);
+
+				@Override
+				public void onRawObject(RawObject o) {
+
+					batch.objects.add(o);
+
+					if(batch.objects.size() >= BATCH_SIZE) {
+						put(batch);
+						batch = new Batch(batch.index + 1);
+					}
+
+				}
+
+				@Override
+				public void onNoMoreObjects() {
+
+					if(batch.objects.size() > 0) {
+						put(batch);
+					}
+
+					for(int i = 0; i < encoders; i++) {
+						put(END);
+					}
+
+				}
+
+			});
+
+		} catch(Exception e) {
+
+			//the fetch is aborted when an encoder failed
+			if(!failed) error(e);
+
+		} finally {
+
+			for(Future<Void> future : futures) {
+
+				try {
+					future.get();
+				} catch(ExecutionException e) {
+					error(e.getCause());
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					error(e);
+				}
+
+			}
+
+		}
+
+		if(errors.size() > 0) {
+
+			Throwable first = errors.get(0);
+
+			for(int i = 1; i < errors.size(); i++) {
+				first.addSuppressed(errors.get(i));
+			}
+
+			log.error("BulkExport pipeline failed, errors: {}, exported: {}", errors.size(), exported.get());
+
+			if(first instanceof Exception) throw (Exception) first;
+			throw new RuntimeException(first);
+
+		}
+
+		//compressed output is never empty
+		if(nextBatch == 0 && compression != BulkExportCompression.None) {
+			outputStream.write(compress(new byte[0]));
+		}
+
+		outputStream.flush();
+
+	}
+
+	private void encode() throws Exception {
+
+		try {
+
+			Batch batch = null;
+
+			while( ( batch = take() ) != null && batch != END ) {
+
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+				OutputStreamWriter writer = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+
+				BlockCompactStringSerializer serializer = new BlockCompactStringSerializer(writer);
+
+				int count = 0;
+
+				for(RawObject o : batch.objects) {
+
+					serializer.startBlock();
+					serializer.writeGraphObject(VitalSignsToSqlBridge.toGraphObject(o));
+					serializer.endBlock();
+
+					count++;
+
+				}
+
+				serializer.flush();
+				writer.flush();
+
+				byte[] data = bytes.toByteArray();
+
+				if(compression != BulkExportCompression.None) {
+					data = compress(data);
+				}
+
+				write(batch.index, data, count);
+
+			}
+
+		} catch(Throwable e) {
+
+			//errors too, the fetch only stops when failed is set
+			error(e);
+
+		}
+
+	}
+
+	/**
+	 * waits for the previous batches to be written
+	 */
+	private void write(long index, byte[] data, int count) throws IOException, InterruptedException {
+
+		synchronized (writeLock) {
+
+			while(!failed && nextBatch != index) {
+				writeLock.wait(100);
+			}
+
+			if(failed) return;
+
+			outputStream.write(data);
+
+			nextBatch++;
+
+			writeLock.notifyAll();
+
+		}
+
+		int val = exported.addAndGet(count);
+
+		if(BulkOperationsImpl.printProgress) {
+			log.info("Exported so far {}, {}ms", val, System.currentTimeMillis() - step);
+			step = System.currentTimeMillis();
+		}
+
+	}
+
+	private byte[] compress(byte[] data) throws IOException {
+
+		if(compression == BulkExportCompression.ZSTD) {
+			return com.github.luben.zstd.Zstd.compress(data, 3);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+
+		GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+		gzip.write(data);
+		gzip.close();
+
+		return bytes.toByteArray();
+
+	}
+
+	/**
+	 * @return the input stream decompressed if it starts with a gzip or zstd header
+	 */
+	static InputStream decompress(InputStream inputStream) throws IOException {
+
+		BufferedInputStream in = new BufferedInputStream(inputStream);
+
+		in.mark(4);
+
+		byte[] header = new byte[4];
+
+		int read = 0;
+
+		while(read < header.length) {
+			int r = in.read(header, read, header.length - read);
+			if(r < 0) break;
+			read += r;
+		}
+
+		in.reset();
+
+		if(read >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b) {
+			log.info("Bulk import input is gzip compressed");
+			return new GZIPInputStream(in);
+		}
+
+		if(read == 4 && ( (header[0] & 0xff) | (header[1] & 0xff) << 8 | (header[2] & 0xff) << 16 | (header[3] & 0xff) << 24 ) == ZSTD_MAGIC) {
+			log.info("Bulk import input is zstd compressed");
+			return new com.github.luben.zstd.ZstdInputStream(in);
+		}
+
+		return in;
+
+	}
+
+	private void error(Throwable e) {
+
+		log.error(e.getLocalizedMessage(), e);
+
+		errors.add(e);
+
+		failed = true;
+
+	}
+
+	/**
+	 * blocks until there is space in the queue, aborts the fetch when the pipeline failed
+	 */
+	private void put(Batch batch) {
+
+		try {
+
+			while(!failed) {
+				if(fetched.offer(batch, 100, TimeUnit.MILLISECONDS)) return;
+			}
+
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		throw new RuntimeException("Bulk export pipeline failed");
+
+	}
+
+	/**
+	 * @return next batch or null when the pipeline failed
+	 */
+	private Batch take() throws InterruptedException {
+
+		while(!failed) {
+			Batch batch = fetched.poll(100, TimeUnit.MILLISECONDS);
+			if(batch != null) return batch;
+		}
+
+		return null;
+
+	}
+
+}
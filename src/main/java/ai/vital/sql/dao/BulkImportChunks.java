@@ -0,0 +1,136 @@
+package ai.vital.sql.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ai.vital.sql.dao.CheckpointsOperations.Checkpoint;
+import ai.vital.sql.model.RowsBuffer;
+import ai.vital.vitalsigns.block.BlockCompactStringSerializer.BlockIterator;
+import ai.vital.vitalsigns.block.BlockCompactStringSerializer.VitalBlock;
+import ai.vital.vitalsigns.model.GraphObject;
+
+/**
+ * Splits bulk import blocks into chunks of at least {@link #CHUNK_SIZE} objects ending at block
+ * boundaries, so the same input always gives the same chunks. Chunks committed by a previous run
+ * of the import are skipped, their blocks are read but not converted, except the last one which
+ * is checked against the checkpoint last URI.
+ */
+class BulkImportChunks {
+
+	static int CHUNK_SIZE = 1000;
+
+	static class Chunk {
+
+		List<GraphObject> objects;
+
+		RowsBuffer rows;
+
+		Checkpoint checkpoint;
+
+		Chunk(List<GraphObject> objects) {
+			this.objects = objects;
+		}
+
+	}
+
+	private BlockIterator blocksIterator;
+
+	//chunk index -> checkpoint
+	private Map<Integer, Checkpoint> committed;
+
+	private String checkpointsTable;
+
+	private int index = 0;
+
+	private long blocks = 0;
+
+	private long objects = 0;
+
+	int skippedChunks = 0;
+
+	long skippedObjects = 0;
+
+	BulkImportChunks(BlockIterator blocksIterator, Map<Integer, Checkpoint> committed, String checkpointsTable) {
+		super();
+		this.blocksIterator = blocksIterator;
+		this.committed = committed;
+		this.checkpointsTable = checkpointsTable;
+	}
+
+	/**
+	 * @return next chunk to import or null at the end of input
+	 */
+	Chunk next() {
+
+		Checkpoint cp = null;
+
+		while( ( cp = committed.get(index) ) != null ) {
+			skip(cp);
+			index++;
+		}
+
+		List<GraphObject> buffer = new ArrayList<GraphObject>();
+
+		while(buffer.size() < CHUNK_SIZE && blocksIterator.hasNext()) {
+
+			VitalBlock _next = blocksIterator.next();
+
+			buffer.addAll(_next.toList());
+
+			blocks++;
+
+		}
+
+		if(buffer.isEmpty()) return null;
+
+		objects += buffer.size();
+
+		Chunk chunk = new Chunk(buffer);
+
+		chunk.checkpoint = new Checkpoint();
+		chunk.checkpoint.chunk = index;
+		chunk.checkpoint.blocks = blocks;
+		chunk.checkpoint.objects = objects;
+		chunk.checkpoint.lastURI = buffer.get(buffer.size() - 1).getURI();
+
+		index++;
+
+		return chunk;
+
+	}
+
+	private void skip(Checkpoint cp) {
+
+		String lastURI = null;
+
+		while(blocks < cp.blocks) {
+
+			if(!blocksIterator.hasNext()) {
+				throw new RuntimeException("Bulk import input ends before the committed chunk " + cp.chunk + ", delete its checkpoints from " + checkpointsTable + " to import it from scratch");
+			}
+
+			VitalBlock _next = blocksIterator.next();
+
+			blocks++;
+
+			if(blocks == cp.blocks) {
+				List<GraphObject> list = _next.toList();
+				lastURI = list.size() > 0 ? list.get(list.size() - 1).getURI() : null;
+			}
+
+		}
+
+		if(lastURI == null ? cp.lastURI != null : !lastURI.equals(cp.lastURI)) {
+			throw new RuntimeException("Bulk import input doesn't match the committed chunk " + cp.chunk + ", last URI: " + lastURI + ", expected: " + cp.lastURI + ", delete its checkpoints from " + checkpointsTable + " to import it from scratch");
+		}
+
+		skippedChunks++;
+
+		skippedObjects += cp.objects - objects;
+
+		objects = cp.objects;
+
+	}
+
+}
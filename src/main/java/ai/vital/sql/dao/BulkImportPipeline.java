@@ -0,0 +1,307 @@
+package ai.vital.sql.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.dao.BulkImportChunks.Chunk;
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.model.VitalSignsToSqlBridge;
+import ai.vital.sql.model.VitalSignsToSqlBridge.OutputType;
+import ai.vital.sql.utils.SQLUtils;
+import ai.vital.vitalsigns.model.GraphObject;
+import ai.vital.vitalsigns.model.properties.Property_hasProvenance;
+
+/**
+ * Multi-threaded bulk import: the calling thread parses blocks into chunks of objects,
+ * encoder workers encode the chunks rows and writer workers insert them, each writer
+ * on its own connection committing its own chunks. The stages are connected with bounded
+ * queues so a slow stage blocks the previous one. The first error stops all stages,
+ * all errors are logged and the first one is thrown.
+ */
+public class BulkImportPipeline {
+
+	private final static Logger log = LoggerFactory.getLogger(BulkImportPipeline.class);
+
+	//end of input marker
+	private final static Chunk END = new Chunk(null);
+
+	private VitalSqlDataSource dataSource;
+
+	private SegmentTable segmentTable;
+
+	private OutputType outputType;
+
+	private String datasetURI;
+
+	private String checkpointsDataset;
+
+	private int encoders;
+
+	private int writers;
+
+	private BlockingQueue<Chunk> parsed;
+
+	private BlockingQueue<Chunk> encoded;
+
+	private AtomicInteger activeEncoders;
+
+	private AtomicInteger imported = new AtomicInteger(0);
+
+	private List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+	private volatile boolean failed = false;
+
+	private volatile long step = System.currentTimeMillis();
+
+	/**
+	 * @param checkpointsDataset checkpoints are committed with the chunks under that key, null disables checkpoints
+	 */
+	public BulkImportPipeline(VitalSqlDataSource dataSource, SegmentTable segmentTable, OutputType outputType, String datasetURI, String checkpointsDataset) {
+		super();
+		this.dataSource = dataSource;
+		this.segmentTable = segmentTable;
+		this.outputType = outputType;
+		this.datasetURI = datasetURI;
+		this.checkpointsDataset = checkpointsDataset;
+
+		Integer e = dataSource.getConfig().getBulkImportEncoders();
+		this.encoders = Math.max(1, e != null ? e.intValue() : 1);
+
+		this.writers = dataSource.getBulkImportWriters();
+
+		Integer q = dataSource.getConfig().getBulkImportQueueSize();
+		int queueSize = Math.max(1, q != null ? q.intValue() : 1);
+
+		this.parsed = new ArrayBlockingQueue<Chunk>(queueSize);
+		this.encoded = new ArrayBlockingQueue<Chunk>(queueSize);
+		this.activeEncoders = new AtomicInteger(encoders);
+	}
+
+	/**
+	 * @param connection the importing connection, used by the first writer
+	 * @return imported objects count
+	 */
+	int run(final Connection connection, BulkImportChunks chunks) throws Exception {
+
+		log.info("BulkImport pipeline, table: {}, encoders: {}, writers: {}", segmentTable.tableName, encoders, writers);
+
+		ExecutorService executor = dataSource.getSegmentsExecutor();
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+		int parsedObjects = 0;
+
+		try {
+
+			for(int i = 0; i < encoders; i++) {
+
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						encode();
+						return null;
+					}
+
+				}));
+
+			}
+
+			for(int i = 0; i < writers; i++) {
+
+				final boolean own = i > 0;
+
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+
+						Connection writerConnection = null;
+
+						try {
+
+							writerConnection = own ? dataSource.getConnection() : connection;
+
+							write(writerConnection);
+
+						} finally {
+							if(own) SQLUtils.closeQuietly(writerConnection);
+						}
+
+						return null;
+					}
+
+				}));
+
+			}
+
+			Chunk chunk = null;
+
+			while(!failed && ( chunk = chunks.next() ) != null) {
+
+				parsedObjects += chunk.objects.size();
+
+				put(parsed, chunk);
+
+			}
+
+			for(int i = 0; i < encoders; i++) {
+				put(parsed, END);
+			}
+
+		} catch(Throwable e) {
+
+			error(e);
+
+		} finally {
+
+			for(Future<Void> future : futures) {
+
+				try {
+					future.get();
+				} catch(ExecutionException e) {
+					error(e.getCause());
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					error(e);
+				}
+
+			}
+
+		}
+
+		if(errors.size() > 0) {
+
+			Throwable first = errors.get(0);
+
+			for(int i = 1; i < errors.size(); i++) {
+				first.addSuppressed(errors.get(i));
+			}
+
+			log.error("BulkImport pipeline failed, errors: {}, parsed: {}, imported: {}", errors.size(), parsedObjects, imported.get());
+
+			if(first instanceof Exception) throw (Exception) first;
+			throw new RuntimeException(first);
+
+		}
+
+		return imported.get();
+
+	}
+
+	private void encode() throws Exception {
+
+		try {
+
+			Chunk chunk = null;
+
+			while( ( chunk = take(parsed) ) != null && chunk != END ) {
+
+				if(! "".equals(datasetURI)) {
+					for(GraphObject g : chunk.objects) {
+						g.set(Property_hasProvenance.class, datasetURI);
+					}
+				}
+
+				chunk.rows = VitalSignsToSqlBridge.encodeRows(dataSource, segmentTable, chunk.objects);
+
+				put(encoded, chunk);
+
+			}
+
+		} catch(Throwable e) {
+
+			//errors too, the other stages only stop when failed is set
+			error(e);
+
+		} finally {
+
+			//the last encoder ends the writers
+			if(activeEncoders.decrementAndGet() == 0) {
+				for(int i = 0; i < writers; i++) {
+					put(encoded, END);
+				}
+			}
+
+		}
+
+	}
+
+	private void write(Connection connection) throws Exception {
+
+		try {
+
+			Chunk chunk = null;
+
+			while( ( chunk = take(encoded) ) != null && chunk != END ) {
+
+				BulkOperationsImpl.importChunk(dataSource, connection, segmentTable, chunk, outputType, checkpointsDataset);
+
+				int c = imported.addAndGet(chunk.objects.size());
+
+				if(BulkOperationsImpl.printProgress) {
+					log.info("Imported so far {}, {}ms", c, System.currentTimeMillis() - step);
+					step = System.currentTimeMillis();
+				}
+
+			}
+
+		} catch(Throwable e) {
+
+			error(e);
+
+		}
+
+	}
+
+	private void error(Throwable e) {
+
+		log.error(e.getLocalizedMessage(), e);
+
+		errors.add(e);
+
+		failed = true;
+
+	}
+
+	/**
+	 * blocks until there is space in the queue, gives up when the pipeline failed
+	 */
+	private void put(BlockingQueue<Chunk> queue, Chunk chunk) throws InterruptedException {
+
+		while(!failed) {
+			if(queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) return;
+		}
+
+	}
+
+	/**
+	 * @return next chunk or null when the pipeline failed
+	 */
+	private Chunk take(BlockingQueue<Chunk> queue) throws InterruptedException {
+
+		while(!failed) {
+			Chunk chunk = queue.poll(100, TimeUnit.MILLISECONDS);
+			if(chunk != null) return chunk;
+		}
+
+		return null;
+
+	}
+
+}
@@ -1,32 +1,36 @@
 package ai.vital.sql.dao;
 
 import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ai.vital.sql.config.VitalSqlConfig.BulkImportMode;
+import ai.vital.sql.config.VitalSqlConfig.SqlDBType;
 import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.dao.BulkImportChunks.Chunk;
+import ai.vital.sql.dao.CheckpointsOperations.Checkpoint;
 import ai.vital.sql.model.SegmentTable;
 import ai.vital.sql.model.VitalSignsToSqlBridge;
-import ai.vital.sql.model.VitalSignsToSqlBridge.GraphObjectsStreamHandler;
+import ai.vital.sql.model.VitalSignsToSqlBridge.OutputType;
+import ai.vital.sql.query.SQLSelectQueryHandler;
+import ai.vital.sql.schemas.SchemasUtils;
 import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.VitalStatus;
+import ai.vital.vitalsigns.VitalSigns;
 import ai.vital.vitalsigns.block.BlockCompactStringSerializer;
 import ai.vital.vitalsigns.block.BlockCompactStringSerializer.BlockIterator;
-import ai.vital.vitalsigns.block.BlockCompactStringSerializer.VitalBlock;
 import ai.vital.vitalsigns.model.GraphObject;
 import ai.vital.vitalsigns.model.properties.Property_hasProvenance;
 
@@ -42,85 +46,55 @@ public class BulkOperationsImpl {
 		
 		long start = System.currentTimeMillis();
 		
-		final AtomicInteger skipped = new AtomicInteger(0);
+		String provenanceURI = VitalSigns.get().getPropertiesRegistry().getPropertyURI(Property_hasProvenance.class);
 		
-		final AtomicInteger c = new AtomicInteger(0);
+		BulkExportPipeline pipeline = new BulkExportPipeline(dataSource, segmentTable);
 		
-		final AtomicLong step = new AtomicLong(System.currentTimeMillis());
-		
-		Statement stmt = null;
+		PreparedStatement stmt = null;
 
 		ResultSet rs = null;
 		
 		try {
 			
-			String tname = segmentTable.tableName;
+			String tname = SQLUtils.escapeID(connection, segmentTable.tableName);
 			
 			String order =  null;
 			
 //			if(dataSource.isSparkSQL() /*&& !dataSource.getConfig().isVanillaSparkSQL()*/) {
 //				order = "";
 //			} else {
-				order = " ORDER BY " + SQLUtils.escapeID(connection, VitalSignsToSqlBridge.COLUMN_URI) + " ASC";
+				order = " ORDER BY T." + SQLUtils.escapeID(connection, VitalSignsToSqlBridge.COLUMN_URI) + " ASC";
 //			}
 			
-			String sql = "SELECT * FROM " + SQLUtils.escapeID(connection, tname) + order;
+			String sql = null;
 			
-			if(log.isDebugEnabled()) log.debug("Bulk export sql: {}", sql);
+			if(datasetURI != null) {
+				
+				//dataset objects semi-join, only their rows are fetched
+				sql = "SELECT T.* FROM " + tname + " AS T JOIN ( SELECT DISTINCT " + VitalSignsToSqlBridge.COLUMN_URI + " FROM " + tname + 
+						" WHERE " + VitalSignsToSqlBridge.COLUMN_NAME + " = ? AND " + SQLSelectQueryHandler.getValueColumn(provenanceURI) + " = ? ) AS D ON D." + 
+						VitalSignsToSqlBridge.COLUMN_URI + " = T." + VitalSignsToSqlBridge.COLUMN_URI + order;
+				
+			} else {
+				
+				sql = "SELECT T.* FROM " + tname + " AS T" + order;
+				
+			}
 			
-//			stmt = connection.prepareStatement(sql)
+			if(log.isDebugEnabled()) log.debug("Bulk export sql: {}", sql);
 			
 			//https://dev.mysql.com/doc/connector-j/5.1/en/connector-j-reference-implementation-notes.html
-			stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			stmt.setFetchSize(Integer.MIN_VALUE);
-			rs = stmt.executeQuery(sql);
 			
-			final OutputStreamWriter local = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+			if(datasetURI != null) {
+				stmt.setString(1, provenanceURI);
+				stmt.setString(2, datasetURI);
+			}
 			
-			final BlockCompactStringSerializer serializer = new BlockCompactStringSerializer(local);
+			rs = stmt.executeQuery();
 			
-			VitalSignsToSqlBridge.fromSql(segmentTable, rs, new GraphObjectsStreamHandler() {
-				
-				@Override
-				public void onNoMoreObjects() {
-					try {
-						serializer.flush();
-						local.flush();
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
-				}
-				
-				@Override
-				public void onGraphObject(GraphObject g) {
-					
-	                 if(datasetURI != null) {
-                        String thisDataset = (String) g.getRaw(Property_hasProvenance.class);
-                        if(thisDataset == null || !datasetURI.equals(thisDataset)) {
-                            //skip the object
-                            skipped.incrementAndGet();
-                            return;
-                        }
-                    }
-						
-					
-					try {
-						serializer.startBlock();
-						serializer.writeGraphObject(g);
-						serializer.endBlock();
-						int val = c.incrementAndGet();
-						
-						if(printProgress && val % 1000 == 0) {
-							log.info("Exported so far {}, {}ms", val, System.currentTimeMillis() - step.get());
-							step.set(System.currentTimeMillis());
-						}
-						
-					} catch (IOException e) {
-						throw new RuntimeException(e);
-					}
-				}
-			});
-				
+			pipeline.run(rs, outputStream);
 			
 		} finally {
 			SQLUtils.closeQuietly(stmt, rs);
@@ -129,9 +103,9 @@ public class BulkOperationsImpl {
 		
 		log.info("BulkExport, table: {}, time: {}ms", segmentTable.tableName, System.currentTimeMillis() - start);
 		
-		VitalStatus vs = VitalStatus.withOKMessage("Exported " + c.get() + " object(s)" + (datasetURI != null ? (", filtered out " + skipped + " object(s)") : ""));
+		VitalStatus vs = VitalStatus.withOKMessage("Exported " + pipeline.getExported() + " object(s)" + (datasetURI != null ? (" of dataset " + datasetURI) : ""));
 		
-		vs.setSuccesses(c.get());
+		vs.setSuccesses(pipeline.getExported());
 		
 		return vs;
 		
@@ -139,62 +113,193 @@ public class BulkOperationsImpl {
 
 	public static VitalStatus bulkImport(VitalSqlDataSource dataSource,
 			Connection connection, SegmentTable segmentTable, InputStream inputStream, String datasetURI) throws Exception {
+		return bulkImport(dataSource, connection, segmentTable, inputStream, datasetURI, false);
+	}
+	
+	/**
+	 * @param deferIndexes secondary indices of an empty segment table are dropped before the load, all missing
+	 * indices are built in one pass after it
+	 */
+	public static VitalStatus bulkImport(VitalSqlDataSource dataSource,
+			Connection connection, SegmentTable segmentTable, InputStream inputStream, String datasetURI, boolean deferIndexes) throws Exception {
+		
+		OutputType outputType = getBulkImportOutputType(dataSource);
 		
-		log.info("BulkImport, table: {}", segmentTable.tableName);
+		log.info("BulkImport, table: {}, rows output: {}", segmentTable.tableName, outputType);
 		
 		long start = System.currentTimeMillis();
 		
-		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+		BufferedReader reader = new BufferedReader(new InputStreamReader(BulkExportPipeline.decompress(inputStream), StandardCharsets.UTF_8));
 		
 		BlockIterator blocksIterator = BlockCompactStringSerializer.getBlocksIterator(reader, false);
-			
-		int c = 0;
 		
-		List<GraphObject> buffer = new ArrayList<GraphObject>();
+		String checkpointsDataset = null;
 		
-		long step = System.currentTimeMillis();
+		Map<Integer, Checkpoint> committed = new HashMap<Integer, Checkpoint>();
 		
-		while(blocksIterator.hasNext()) {
+		if(Boolean.TRUE.equals(dataSource.getConfig().getBulkImportCheckpoints())) {
 			
-			VitalBlock _next = blocksIterator.next();
+			SchemasUtils.createCheckpointsTable(dataSource, connection, segmentTable);
 			
-			List<GraphObject> list = _next.toList();
+			checkpointsDataset = datasetURI != null ? datasetURI : "";
 			
-			for(GraphObject g : list) {
-				if(! "".equals(datasetURI)) {
-					g.set(Property_hasProvenance.class, datasetURI);
-				}
+			committed = CheckpointsOperations.getCheckpoints(connection, segmentTable, checkpointsDataset);
+			
+			if(committed.size() > 0) {
+				log.info("BulkImport, table: {}, resuming after {} committed chunk(s)", segmentTable.tableName, committed.size());
 			}
-
-			buffer.addAll(list);
 			
-			c += list.size();
+		}
+		
+		if(deferIndexes) {
+			
+			if(isEmpty(connection, segmentTable)) {
+				int dropped = SchemasUtils.dropSegmentIndexes(dataSource, connection, segmentTable);
+				log.info("BulkImport, table: {}, indices deferred: {}", segmentTable.tableName, dropped);
+			} else {
+				log.info("BulkImport, table: {} not empty, existing indices kept", segmentTable.tableName);
+			}
+			
+		}
+		
+		BulkImportChunks chunks = new BulkImportChunks(blocksIterator, committed, segmentTable.getCheckpointsTableName());
+		
+		int c = 0;
+		
+		if(dataSource.getBulkImportWriters() > 1) {
+			
+			c = new BulkImportPipeline(dataSource, segmentTable, outputType, datasetURI, checkpointsDataset).run(connection, chunks);
+			
+		} else {
 			
-			if(buffer.size() >= 1000) {
-				CoreOperations.insertGraphObjects(dataSource, connection, segmentTable, buffer);
-				buffer.clear();
+			long step = System.currentTimeMillis();
+			
+			Chunk chunk = null;
+			
+			while( ( chunk = chunks.next() ) != null ) {
+				
+				for(GraphObject g : chunk.objects) {
+					if(! "".equals(datasetURI)) {
+						g.set(Property_hasProvenance.class, datasetURI);
+					}
+				}
+				
+				importChunk(dataSource, connection, segmentTable, chunk, outputType, checkpointsDataset);
+				
+				c += chunk.objects.size();
 				
 				if(printProgress) {
 					log.info("Imported so far {}, {}ms", c, System.currentTimeMillis() - step);
 					step = System.currentTimeMillis();
 				}
 				
-				
 			}
 			
-			
-			
 		}
 		
-		if(buffer.size() > 0) {
-			CoreOperations.insertGraphObjects(dataSource, connection, segmentTable, buffer);
+		//the import is complete
+		if(checkpointsDataset != null) {
+			CheckpointsOperations.clearCheckpoints(connection, segmentTable, checkpointsDataset);
+		}
+		
+		String indexes = "";
+		
+		if(deferIndexes) {
+			
+			long indexesStart = System.currentTimeMillis();
+			
+			int built = SchemasUtils.buildSegmentIndexes(dataSource, connection, segmentTable, Boolean.TRUE.equals(dataSource.getConfig().getDeferredIndexesConcurrently()));
+			
+			if(built > 0) {
+				indexes = ", built " + built + " index(es) in " + (System.currentTimeMillis() - indexesStart) + "ms";
+			}
+			
 		}
 		
 		log.info("BulkImport, table: {}, time: {}ms", segmentTable.tableName, System.currentTimeMillis() - start);
 		
-		VitalStatus vs = VitalStatus.withOKMessage("Imported " + c + " object(s)");
+		VitalStatus vs = VitalStatus.withOKMessage("Imported " + c + " object(s)" + (chunks.skippedChunks > 0 ? (", skipped " + chunks.skippedObjects + " object(s) imported before") : "") + indexes);
 		vs.setSuccesses(c);
 		return vs;
 	} 
 	
+	/**
+	 * Inserts the chunk objects, with checkpoints the chunk checkpoint is committed in the same transaction
+	 * @param checkpointsDataset checkpoints key, null if disabled
+	 */
+	static void importChunk(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, Chunk chunk, OutputType outputType, String checkpointsDataset) throws SQLException {
+		
+		if(checkpointsDataset == null) {
+			CoreOperations.insertGraphObjects(dataSource, connection, segmentTable, chunk.objects, null, outputType, chunk.rows);
+			return;
+		}
+		
+		boolean initialAutoCommit = connection.getAutoCommit();
+		
+		if(initialAutoCommit) {
+			connection.setAutoCommit(false);
+		}
+		
+		try {
+			
+			CoreOperations.insertGraphObjects(dataSource, connection, segmentTable, chunk.objects, null, outputType, chunk.rows);
+			
+			CheckpointsOperations.addCheckpoint(connection, segmentTable, checkpointsDataset, chunk.checkpoint);
+			
+			connection.commit();
+			
+		} catch(SQLException e) {
+			connection.rollback();
+			throw e;
+		} catch(RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			if(initialAutoCommit) {
+				connection.setAutoCommit(true);
+			}
+		}
+		
+	}
+	
+	private static boolean isEmpty(Connection connection, SegmentTable segmentTable) throws SQLException {
+		
+		Statement stmt = null;
+		
+		ResultSet rs = null;
+		
+		try {
+			stmt = connection.createStatement();
+			rs = stmt.executeQuery("SELECT 1 FROM " + SQLUtils.escapeID(connection, segmentTable.tableName) + " LIMIT 1");
+			return !rs.next();
+		} finally {
+			SQLUtils.closeQuietly(stmt, rs);
+		}
+		
+	}
+	
+	static OutputType getBulkImportOutputType(VitalSqlDataSource dataSource) {
+		
+		BulkImportMode mode = dataSource.getConfig().getBulkImportMode();
+		
+		SqlDBType dbType = dataSource.getConfig().getDbType();
+		
+		if(mode == BulkImportMode.PostgreSQLCopy) {
+			
+			if(dbType == SqlDBType.PostgreSQL) return OutputType.COPY;
+			
+			log.warn("Bulk import mode {} not supported by {}, using JDBC", mode, dbType);
+			
+		} else if(mode == BulkImportMode.MySQLLoadData) {
+			
+			if(dbType == SqlDBType.MySQL || dbType == SqlDBType.MySQLAurora || dbType == SqlDBType.MySQLMemSQL || dbType == SqlDBType.MariaDB) return OutputType.LOAD_DATA;
+			
+			log.warn("Bulk import mode {} not supported by {}, using JDBC", mode, dbType);
+			
+		}
+		
+		return OutputType.JDBC;
+		
+	}
+	
 }
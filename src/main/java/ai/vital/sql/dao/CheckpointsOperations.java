@@ -0,0 +1,123 @@
+package ai.vital.sql.dao;
+
+import static ai.vital.sql.utils.SQLUtils.escapeID;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.utils.SQLUtils;
+
+/**
+ * Bulk import checkpoints table operations. The table (segment table name + {@link SegmentTable#CHECKPOINTS_TABLE_SUFFIX})
+ * keeps a row per committed chunk of an import, the import is identified by its dataset URI.
+ */
+public class CheckpointsOperations {
+
+	public final static String COLUMN_DATASET_URI = "dataset_uri";
+
+	public final static String COLUMN_CHUNK = "chunk";
+
+	public final static String COLUMN_BLOCKS = "blocks";
+
+	public final static String COLUMN_OBJECTS = "objects";
+
+	public final static String COLUMN_LAST_URI = "last_uri";
+
+	public final static String COLUMN_TSTAMP = "tstamp";
+
+	public static class Checkpoint {
+
+		public int chunk;
+
+		//blocks read up to the end of the chunk
+		public long blocks;
+
+		//objects read up to the end of the chunk
+		public long objects;
+
+		public String lastURI;
+
+	}
+
+	/**
+	 * @return chunk index -> checkpoint
+	 */
+	public static Map<Integer, Checkpoint> getCheckpoints(Connection connection, SegmentTable segmentTable, String datasetURI) throws SQLException {
+
+		Map<Integer, Checkpoint> res = new HashMap<Integer, Checkpoint>();
+
+		PreparedStatement stmt = null;
+
+		ResultSet rs = null;
+
+		try {
+
+			stmt = connection.prepareStatement("SELECT " + COLUMN_CHUNK + ", " + COLUMN_BLOCKS + ", " + COLUMN_OBJECTS + ", " + COLUMN_LAST_URI +
+					" FROM " + escapeID(connection, segmentTable.getCheckpointsTableName()) + " WHERE " + COLUMN_DATASET_URI + " = ?");
+
+			stmt.setString(1, datasetURI);
+
+			rs = stmt.executeQuery();
+
+			while(rs.next()) {
+				Checkpoint cp = new Checkpoint();
+				cp.chunk = rs.getInt(1);
+				cp.blocks = rs.getLong(2);
+				cp.objects = rs.getLong(3);
+				cp.lastURI = rs.getString(4);
+				res.put(cp.chunk, cp);
+			}
+
+		} finally {
+			SQLUtils.closeQuietly(stmt, rs);
+		}
+
+		return res;
+
+	}
+
+	public static void addCheckpoint(Connection connection, SegmentTable segmentTable, String datasetURI, Checkpoint cp) throws SQLException {
+
+		PreparedStatement stmt = null;
+
+		try {
+
+			stmt = connection.prepareStatement("INSERT INTO " + escapeID(connection, segmentTable.getCheckpointsTableName()) + " ( " +
+					COLUMN_DATASET_URI + ", " + COLUMN_CHUNK + ", " + COLUMN_BLOCKS + ", " + COLUMN_OBJECTS + ", " + COLUMN_LAST_URI + ", " + COLUMN_TSTAMP +
+					" ) VALUES ( ?, ?, ?, ?, ?, ? )");
+
+			stmt.setString(1, datasetURI);
+			stmt.setInt(2, cp.chunk);
+			stmt.setLong(3, cp.blocks);
+			stmt.setLong(4, cp.objects);
+			stmt.setString(5, cp.lastURI);
+			stmt.setLong(6, System.currentTimeMillis());
+
+			stmt.executeUpdate();
+
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	public static int clearCheckpoints(Connection connection, SegmentTable segmentTable, String datasetURI) throws SQLException {
+
+		PreparedStatement stmt = null;
+
+		try {
+			stmt = connection.prepareStatement("DELETE FROM " + escapeID(connection, segmentTable.getCheckpointsTableName()) + " WHERE " + COLUMN_DATASET_URI + " = ?");
+			stmt.setString(1, datasetURI);
+			return stmt.executeUpdate();
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+	}
+
+}
@@ -27,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import ai.vital.sql.VitalSqlImplementation.ScanHandler;
 import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.model.RowsBuffer;
 import ai.vital.sql.model.SegmentTable;
 import ai.vital.sql.model.VitalSignsToSqlBridge;
 import ai.vital.sql.model.VitalSignsToSqlBridge.GraphObjectsStreamHandler;
@@ -36,6 +37,7 @@ import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.query.QueryStats;
 import ai.vital.vitalservice.query.QueryTime;
 import ai.vital.vitalsigns.model.GraphObject;
+import ai.vital.vitalsigns.ontology.VitalCoreOntology;
 
 public class CoreOperations {
 
@@ -129,7 +131,7 @@ public class CoreOperations {
 				columnsList = "*";
 			} else {
 				
-				List<String> l = new ArrayList<String>(VitalSignsToSqlBridge.columns);
+				List<String> l = new ArrayList<String>(VitalSignsToSqlBridge.getColumns(segment));
 				l.remove(COLUMN_VALUE_FULL_TEXT);
 				
 				for(int i = 0 ; i < l.size(); i++) {
@@ -208,7 +210,17 @@ public class CoreOperations {
 				log.debug("DELETE graph object statement: {}", stmt);
 			}
 
-			return stmt.executeUpdate() > 0;
+			boolean deleted = stmt.executeUpdate() > 0;
+			
+			if(deleted && segment.edgesTable) {
+				EdgesOperations.deleteEdges(connection, segment, Arrays.asList(uri));
+			}
+			
+			if(deleted && segment.objectsTable) {
+				ObjectsOperations.deleteObjects(connection, segment, Arrays.asList(uri));
+			}
+			
+			return deleted;
 				
 		} finally {
 			SQLUtils.closeQuietly(stmt);
@@ -223,6 +235,30 @@ public class CoreOperations {
 	
 	public static void insertGraphObjects(VitalSqlDataSource dataSource, Connection connection,
 			SegmentTable segment, Collection<GraphObject> gs) throws SQLException {
+		insertGraphObjects(dataSource, connection, segment, gs, null);
+	}
+	
+	/**
+	 * @param properties uri -> names of the properties to insert, null inserts all objects completely
+	 */
+	public static void insertGraphObjects(VitalSqlDataSource dataSource, Connection connection,
+			SegmentTable segment, Collection<GraphObject> gs, Map<String, Set<String>> properties) throws SQLException {
+		insertGraphObjects(dataSource, connection, segment, gs, properties, OutputType.JDBC);
+	}
+	
+	/**
+	 * @param outputType {@link OutputType#JDBC}, {@link OutputType#COPY} or {@link OutputType#LOAD_DATA}
+	 */
+	public static void insertGraphObjects(VitalSqlDataSource dataSource, Connection connection,
+			SegmentTable segment, Collection<GraphObject> gs, Map<String, Set<String>> properties, OutputType outputType) throws SQLException {
+		insertGraphObjects(dataSource, connection, segment, gs, properties, outputType, null);
+	}
+	
+	/**
+	 * @param encoded the objects rows already encoded with {@link VitalSignsToSqlBridge#encodeRows}, null encodes them now
+	 */
+	public static void insertGraphObjects(VitalSqlDataSource dataSource, Connection connection,
+			SegmentTable segment, Collection<GraphObject> gs, Map<String, Set<String>> properties, OutputType outputType, RowsBuffer encoded) throws SQLException {
 
 		boolean initialAutoCommit = connection.getAutoCommit();
 		
@@ -252,7 +288,11 @@ public class CoreOperations {
 				
 			} else {
 				
-				VitalSignsToSqlBridge.batchInsertGraphObjects(dataSource, connection, segment, gs);//toSql(connection, segment, g);
+				if(encoded != null) {
+					VitalSignsToSqlBridge.writeRows(dataSource, connection, segment, gs, encoded, outputType);
+				} else {
+					VitalSignsToSqlBridge.batchInsertGraphObjects(dataSource, connection, segment, gs, outputType, properties);//toSql(connection, segment, g);
+				}
 				
 			}
 			
@@ -296,6 +336,12 @@ public class CoreOperations {
 		PreparedStatement stmt = null;
 		
 		try {
+			if(segmentTable.edgesTable) {
+				EdgesOperations.clearEdges(connection, segmentTable);
+			}
+			if(segmentTable.objectsTable) {
+				ObjectsOperations.clearObjects(connection, segmentTable);
+			}
 			stmt = connection.prepareStatement("DELETE FROM " + SQLUtils.escapeID(connection, segmentTable.tableName));
 			return stmt.executeUpdate();
 		} finally {
@@ -309,6 +355,12 @@ public class CoreOperations {
 		PreparedStatement stmt = null;
 		
 		try {
+			if(segmentTable.edgesTable) {
+				EdgesOperations.clearEdges(connection, segmentTable);
+			}
+			if(segmentTable.objectsTable) {
+				ObjectsOperations.clearObjects(connection, segmentTable);
+			}
 			stmt = connection.prepareStatement("TRUNCATE TABLE " + SQLUtils.escapeID(connection, segmentTable.tableName));
 			return stmt.executeUpdate();
 		} finally {
@@ -389,7 +441,12 @@ public class CoreOperations {
 		
 		try {
 			
-			stmt = connection.prepareStatement("SELECT COUNT( DISTINCT " + escapeID(connection, COLUMN_URI)+ ") FROM " + escapeID(connection, segmentTable.tableName));
+			if(segmentTable.objectsTableReady) {
+				//one row per object
+				stmt = connection.prepareStatement("SELECT COUNT(*) FROM " + escapeID(connection, segmentTable.getObjectsTableName()));
+			} else {
+				stmt = connection.prepareStatement("SELECT COUNT( DISTINCT " + escapeID(connection, COLUMN_URI)+ ") FROM " + escapeID(connection, segmentTable.tableName));
+			}
 			
 			long start = System.currentTimeMillis();
 			
@@ -484,6 +541,13 @@ public class CoreOperations {
 			
 			stmt.executeUpdate();
 			
+			if(segmentTable.edgesTable) {
+				EdgesOperations.deleteEdges(connection, segmentTable, urisSet);
+			}
+			
+			if(segmentTable.objectsTable) {
+				ObjectsOperations.deleteObjects(connection, segmentTable, urisSet);
+			}
 			
 		} finally {
 			log.debug("Delete batch, table: {}, uris count: {}, time: {}ms", segmentTable.tableName, urisSet.size(), System.currentTimeMillis() - start);
@@ -495,6 +559,11 @@ public class CoreOperations {
 	public static void batchSaveObjects(VitalSqlDataSource dataSource, Connection connection,
 			SegmentTable segmentTable, List<GraphObject> asList) throws SQLException {
 
+		if(Boolean.TRUE.equals(dataSource.getConfig().getDifferentialSave()) && !dataSource.isSparkSQL()) {
+			differentialSaveObjects(dataSource, connection, segmentTable, asList);
+			return;
+		}
+		
 		log.debug("Batch save {} objects (delete+insert) ...", asList.size()); 
 		long start = System.currentTimeMillis();
 
@@ -511,6 +580,160 @@ public class CoreOperations {
 		log.debug("Batch save (delete+insert) time: {}ms", System.currentTimeMillis() - start);
 		
 	}
+	
+	static int DIFFERENTIAL_SAVE_PAGE = 1000;
+	
+	//changing any of them requires rewriting all object rows, edges and objects header tables
+	static Set<String> structuralProperties = new HashSet<String>(Arrays.asList(
+		VitalCoreOntology.hasTimestamp.getURI(),
+		VitalCoreOntology.hasEdgeSource.getURI(),
+		VitalCoreOntology.hasEdgeDestination.getURI(),
+		VitalCoreOntology.hasHyperEdgeSource.getURI(),
+		VitalCoreOntology.hasHyperEdgeDestination.getURI()
+	));
+	
+	/**
+	 * Saves objects comparing them with the stored versions, only the rows of changed properties are deleted and inserted.
+	 * New objects and objects with changed type, timestamp, channel or edge endpoints are written completely.
+	 */
+	public static void differentialSaveObjects(VitalSqlDataSource dataSource, Connection connection,
+			SegmentTable segmentTable, List<GraphObject> asList) throws SQLException {
+		
+		log.debug("Differential save {} objects ...", asList.size()); 
+		long start = System.currentTimeMillis();
+		
+		List<String> uris = new ArrayList<String>(asList.size());
+		
+		for(GraphObject g : asList) {
+			uris.add(g.getURI());
+		}
+		
+		Map<String, GraphObject> existing = new HashMap<String, GraphObject>();
+		
+		for(int i = 0; i < uris.size(); i += DIFFERENTIAL_SAVE_PAGE) {
+			for(GraphObject g : getGraphObjectsBatch(connection, segmentTable, uris.subList(i, Math.min(i + DIFFERENTIAL_SAVE_PAGE, uris.size())), null, null)) {
+				existing.put(g.getURI(), g);
+			}
+		}
+		
+		//written completely
+		Set<String> rewritten = new HashSet<String>();
+		List<GraphObject> complete = new ArrayList<GraphObject>();
+		
+		//written partially
+		Map<String, Set<String>> changedProperties = new HashMap<String, Set<String>>();
+		List<GraphObject> partial = new ArrayList<GraphObject>();
+		
+		int unchanged = 0;
+		
+		for(GraphObject g : asList) {
+			
+			GraphObject previous = existing.get(g.getURI());
+			
+			if(previous == null) {
+				complete.add(g);
+				continue;
+			}
+			
+			Map<String, List<String>> rows = VitalSignsToSqlBridge.getPropertiesRows(dataSource, segmentTable, g);
+			
+			Map<String, List<String>> previousRows = VitalSignsToSqlBridge.getPropertiesRows(dataSource, segmentTable, previous);
+			
+			Set<String> changed = new HashSet<String>();
+			
+			for(Entry<String, List<String>> e : rows.entrySet()) {
+				if(!e.getValue().equals(previousRows.get(e.getKey()))) changed.add(e.getKey());
+			}
+			
+			for(String p : previousRows.keySet()) {
+				if(!rows.containsKey(p)) changed.add(p);
+			}
+			
+			if(changed.size() == 0) {
+				unchanged++;
+				continue;
+			}
+			
+			String channelURI = VitalSignsToSqlBridge.getChannelURI(g);
+			String previousChannelURI = VitalSignsToSqlBridge.getChannelURI(previous);
+			
+			if( g.getClass() != previous.getClass() 
+					|| ( channelURI != null ? !channelURI.equals(previousChannelURI) : previousChannelURI != null ) 
+					|| !Collections.disjoint(changed, structuralProperties) ) {
+				
+				rewritten.add(g.getURI());
+				complete.add(g);
+				
+			} else {
+				
+				changedProperties.put(g.getURI(), changed);
+				partial.add(g);
+				
+			}
+			
+		}
+		
+		if(rewritten.size() > 0) {
+			deleteBatch(dataSource, connection, segmentTable, rewritten);
+		}
+		
+		if(changedProperties.size() > 0) {
+			deleteProperties(connection, segmentTable, changedProperties);
+		}
+		
+		if(complete.size() > 0) {
+			insertGraphObjects(dataSource, connection, segmentTable, complete);
+		}
+		
+		if(partial.size() > 0) {
+			insertGraphObjects(dataSource, connection, segmentTable, partial, changedProperties);
+		}
+		
+		log.debug("Differential save: {} complete ({} rewritten), {} partial, {} unchanged, time: {}ms", complete.size(), rewritten.size(), partial.size(), unchanged, System.currentTimeMillis() - start);
+		
+	}
+	
+	/**
+	 * Deletes the rows of given objects properties
+	 * @param properties uri -> properties names
+	 */
+	public static void deleteProperties(Connection connection, SegmentTable segmentTable, Map<String, Set<String>> properties) throws SQLException {
+		
+		PreparedStatement stmt = null;
+		
+		try {
+			
+			stmt = connection.prepareStatement("DELETE FROM " + escapeID(connection, segmentTable.tableName) + " WHERE " + COLUMN_URI + " = ? AND " + COLUMN_NAME + " = ?");
+			
+			int c = 0;
+			
+			for(Entry<String, Set<String>> e : properties.entrySet()) {
+				
+				for(String p : e.getValue()) {
+					
+					stmt.setString(1, e.getKey());
+					stmt.setString(2, p);
+					stmt.addBatch();
+					
+					c++;
+					
+					if(c % 100 == 0) {
+						stmt.executeBatch();
+					}
+					
+				}
+				
+			}
+			
+			if(c % 100 > 0) {
+				stmt.executeBatch();
+			}
+			
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+		
+	}
 
 	public static void scanSegment(VitalSqlDataSource dataSource, Connection connection,
 			SegmentTable segmentTable, final int limit, final ScanHandler scanHandler) throws SQLException {
@@ -763,7 +986,9 @@ public class CoreOperations {
 		
 		try {
 			
-			String query = "SELECT DISTINCT " + COLUMN_URI + " FROM " + tableName;
+			String query = segmentTable.objectsTableReady ? 
+					"SELECT " + COLUMN_URI + " FROM " + SQLUtils.escapeID(connection, segmentTable.getObjectsTableName())
+					: "SELECT DISTINCT " + COLUMN_URI + " FROM " + tableName;
 			
 			stmt = connection.prepareStatement(query);
 			
@@ -0,0 +1,338 @@
+package ai.vital.sql.dao;
+
+import static ai.vital.sql.model.VitalSignsToSqlBridge.*;
+import static ai.vital.sql.utils.SQLUtils.escapeID;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.query.SQLGraphObjectResolver;
+import ai.vital.sql.utils.SQLUtils;
+import ai.vital.vitalservice.query.QueryStats;
+import ai.vital.vitalservice.query.QueryTime;
+import ai.vital.vitalsigns.model.GraphObject;
+import ai.vital.vitalsigns.model.VITAL_Edge;
+import ai.vital.vitalsigns.model.VITAL_HyperEdge;
+import ai.vital.vitalsigns.model.properties.Property_vitaltype;
+import ai.vital.vitalsigns.ontology.VitalCoreOntology;
+
+/**
+ * Edges adjacency table operations. The table (segment table name + {@link SegmentTable#EDGES_TABLE_SUFFIX})
+ * keeps a single row per edge or hyper edge so that arcs are expanded with a covering index lookup
+ * instead of searching the properties rows.
+ */
+public class EdgesOperations {
+
+	private final static Logger log = LoggerFactory.getLogger(EdgesOperations.class);
+
+	public final static String COLUMN_EDGE_URI = "edge_uri";
+
+	public final static String COLUMN_SOURCE_URI = "source_uri";
+
+	public final static String COLUMN_DESTINATION_URI = "destination_uri";
+
+	public final static String COLUMN_HYPER = "hyper";
+
+	static int PAGE_SIZE = 1000;
+
+	public static class Adjacency {
+
+		public SegmentTable segmentTable;
+		
+		public String edgeURI;
+
+		//the queried end
+		public String parentURI;
+
+		//the other end
+		public String endpointURI;
+
+	}
+
+	public static void insertEdges(Connection connection, SegmentTable segmentTable, Collection<GraphObject> gs) throws SQLException {
+
+		PreparedStatement stmt = null;
+
+		try {
+
+			int c = 0;
+
+			for(GraphObject g : gs) {
+
+				String source = null;
+				String destination = null;
+				boolean hyper = false;
+
+				if(g instanceof VITAL_Edge) {
+					source = ((VITAL_Edge)g).getSourceURI();
+					destination = ((VITAL_Edge)g).getDestinationURI();
+				} else if(g instanceof VITAL_HyperEdge) {
+					source = ((VITAL_HyperEdge)g).getSourceURI();
+					destination = ((VITAL_HyperEdge)g).getDestinationURI();
+					hyper = true;
+				} else {
+					continue;
+				}
+
+				if(source == null || destination == null) continue;
+
+				if(stmt == null) {
+					stmt = connection.prepareStatement("INSERT INTO " + escapeID(connection, segmentTable.getEdgesTableName()) + " ( " +
+							COLUMN_EDGE_URI + ", " + COLUMN_SOURCE_URI + ", " + COLUMN_DESTINATION_URI + ", " + COLUMN_VITALTYPE + ", " + COLUMN_HYPER +
+							" ) VALUES ( ?, ?, ?, ?, ? )");
+				}
+
+				stmt.setString(1, g.getURI());
+				stmt.setString(2, source);
+				stmt.setString(3, destination);
+				stmt.setString(4, (String) g.getRaw(Property_vitaltype.class));
+				stmt.setBoolean(5, hyper);
+				stmt.addBatch();
+
+				c++;
+
+				if(c % PAGE_SIZE == 0) {
+					stmt.executeBatch();
+				}
+
+			}
+
+			if(stmt != null && c % PAGE_SIZE > 0) {
+				stmt.executeBatch();
+			}
+
+			if(c > 0) log.debug("Edges table {} rows inserted: {}", segmentTable.getEdgesTableName(), c);
+
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	public static void deleteEdges(Connection connection, SegmentTable segmentTable, Collection<String> uris) throws SQLException {
+
+		List<String> l = new ArrayList<String>(uris);
+
+		for(int i = 0; i < l.size(); i += PAGE_SIZE) {
+
+			List<String> page = l.subList(i, Math.min(i + PAGE_SIZE, l.size()));
+
+			PreparedStatement stmt = null;
+
+			StringBuilder sb = new StringBuilder("DELETE FROM ").append(escapeID(connection, segmentTable.getEdgesTableName())).append(" WHERE ");
+			sb.append(COLUMN_EDGE_URI).append(" IN (");
+			appendPlaceholders(sb, page.size());
+			sb.append(")");
+
+			try {
+
+				stmt = connection.prepareStatement(sb.toString());
+
+				int j = 1;
+				for(String u : page) {
+					stmt.setString(j++, u);
+				}
+
+				stmt.executeUpdate();
+
+			} finally {
+				SQLUtils.closeQuietly(stmt);
+			}
+
+		}
+
+	}
+
+	public static int clearEdges(Connection connection, SegmentTable segmentTable) throws SQLException {
+
+		PreparedStatement stmt = null;
+
+		try {
+			stmt = connection.prepareStatement("DELETE FROM " + escapeID(connection, segmentTable.getEdgesTableName()));
+			return stmt.executeUpdate();
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	/**
+	 * Fills the edges table with the edges already stored in the segment table, skips the edges
+	 * already mirrored by writes so it may run while the segment is written
+	 * @return inserted rows count
+	 */
+	public static int populateEdges(Connection connection, SegmentTable segmentTable) throws SQLException {
+
+		String tableName = escapeID(connection, segmentTable.tableName);
+
+		int inserted = 0;
+
+		for(int h = 0; h < 2; h++) {
+
+			boolean hyper = h > 0;
+
+			PreparedStatement stmt = null;
+
+			try {
+
+				stmt = connection.prepareStatement(
+					"INSERT INTO " + escapeID(connection, segmentTable.getEdgesTableName()) + " ( " +
+					COLUMN_EDGE_URI + ", " + COLUMN_SOURCE_URI + ", " + COLUMN_DESTINATION_URI + ", " + COLUMN_VITALTYPE + ", " + COLUMN_HYPER + " ) " +
+					"SELECT S." + COLUMN_URI + ", S." + COLUMN_VALUE_URI + ", D." + COLUMN_VALUE_URI + ", S." + COLUMN_VITALTYPE + ", ? " +
+					"FROM " + tableName + " AS S JOIN " + tableName + " AS D ON D." + COLUMN_URI + " = S." + COLUMN_URI + " AND D." + COLUMN_NAME + " = ? " +
+					"WHERE S." + COLUMN_NAME + " = ? " +
+					"AND NOT EXISTS ( SELECT 1 FROM " + escapeID(connection, segmentTable.getEdgesTableName()) + " AS E WHERE E." + COLUMN_EDGE_URI + " = S." + COLUMN_URI + " )"
+				);
+
+				stmt.setBoolean(1, hyper);
+				stmt.setString(2, hyper ? VitalCoreOntology.hasHyperEdgeDestination.getURI() : VitalCoreOntology.hasEdgeDestination.getURI());
+				stmt.setString(3, hyper ? VitalCoreOntology.hasHyperEdgeSource.getURI() : VitalCoreOntology.hasEdgeSource.getURI());
+
+				inserted += stmt.executeUpdate();
+
+			} finally {
+				SQLUtils.closeQuietly(stmt);
+			}
+
+		}
+
+		return inserted;
+
+	}
+
+	/**
+	 * Lists edges or hyper edges adjacent to the parents, in parents and edges URIs order
+	 * @param forward true if parents are the edges sources
+	 */
+	public static List<Adjacency> getAdjacentEdges(Connection connection, SegmentTable segmentTable, Collection<String> parentsURIs, boolean forward, boolean hyper, QueryStats queryStats) throws SQLException {
+
+		String parentColumn = forward ? COLUMN_SOURCE_URI : COLUMN_DESTINATION_URI;
+
+		String endpointColumn = forward ? COLUMN_DESTINATION_URI : COLUMN_SOURCE_URI;
+
+		List<Adjacency> res = new ArrayList<Adjacency>();
+
+		List<String> l = new ArrayList<String>(parentsURIs);
+
+		for(int i = 0; i < l.size(); i += PAGE_SIZE) {
+
+			List<String> page = l.subList(i, Math.min(i + PAGE_SIZE, l.size()));
+
+			StringBuilder sb = new StringBuilder("SELECT ").append(parentColumn).append(", ").append(endpointColumn).append(", ").append(COLUMN_EDGE_URI)
+				.append(" FROM ").append(escapeID(connection, segmentTable.getEdgesTableName()))
+				.append(" WHERE ").append(parentColumn);
+
+			if(page.size() == 1) {
+				sb.append(" = ?");
+			} else {
+				sb.append(" IN (");
+				appendPlaceholders(sb, page.size());
+				sb.append(")");
+			}
+
+			sb.append(" AND ").append(COLUMN_HYPER).append(" = ? ORDER BY ").append(parentColumn).append(", ").append(COLUMN_EDGE_URI);
+
+			PreparedStatement stmt = null;
+
+			ResultSet rs = null;
+
+			try {
+
+				stmt = connection.prepareStatement(sb.toString());
+
+				int j = 1;
+				for(String u : page) {
+					stmt.setString(j++, u);
+				}
+				stmt.setBoolean(j, hyper);
+
+				long start = System.currentTimeMillis();
+
+				rs = stmt.executeQuery();
+
+				if(queryStats != null) {
+					long time = queryStats.addDatabaseTimeFrom(start);
+					if(queryStats.getQueriesTimes() != null) queryStats.getQueriesTimes().add(new QueryTime("Adjacent edges " + page.size(), stmt.toString(), time));
+				}
+
+				while(rs.next()) {
+					Adjacency a = new Adjacency();
+					a.segmentTable = segmentTable;
+					a.parentURI = rs.getString(1);
+					a.endpointURI = rs.getString(2);
+					a.edgeURI = rs.getString(3);
+					res.add(a);
+				}
+
+			} finally {
+				SQLUtils.closeQuietly(stmt, rs);
+			}
+
+		}
+
+		return res;
+
+	}
+
+	/**
+	 * Loads the edges objects of the adjacency rows, grouped by segment
+	 */
+	public static List<GraphObject> getEdgesObjects(Connection connection, List<Adjacency> adjacency, SQLGraphObjectResolver resolver, QueryStats queryStats) throws SQLException {
+
+		Map<SegmentTable, List<String>> segmentURIs = new LinkedHashMap<SegmentTable, List<String>>();
+
+		for(Adjacency a : adjacency) {
+			List<String> l = segmentURIs.get(a.segmentTable);
+			if(l == null) {
+				l = new ArrayList<String>();
+				segmentURIs.put(a.segmentTable, l);
+			}
+			l.add(a.edgeURI);
+		}
+
+		List<GraphObject> res = new ArrayList<GraphObject>();
+
+		for(Entry<SegmentTable, List<String>> e : segmentURIs.entrySet()) {
+
+			for(Iterator<String> iterator = e.getValue().iterator(); iterator.hasNext(); ) {
+
+				List<String> page = new ArrayList<String>(PAGE_SIZE);
+
+				while(iterator.hasNext() && page.size() < PAGE_SIZE) {
+					page.add(iterator.next());
+				}
+
+				res.addAll(CoreOperations.getGraphObjectsBatch(connection, e.getKey(), page, resolver, queryStats));
+
+			}
+
+		}
+
+		return res;
+
+	}
+
+	private static void appendPlaceholders(StringBuilder sb, int count) {
+		for(int i = 1; i <= count; i++) {
+			if(i > 1) {
+				sb.append(", ?");
+			} else {
+				sb.append('?');
+			}
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+package ai.vital.sql.dao;
+
+import static ai.vital.sql.model.VitalSignsToSqlBridge.*;
+import static ai.vital.sql.utils.SQLUtils.escapeID;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.model.VitalSignsToSqlBridge;
+import ai.vital.sql.utils.SQLUtils;
+import ai.vital.vitalsigns.VitalSigns;
+import ai.vital.vitalsigns.model.DomainOntology;
+import ai.vital.vitalsigns.model.GraphObject;
+import ai.vital.vitalsigns.model.properties.Property_hasTimestamp;
+import ai.vital.vitalsigns.model.properties.Property_vitaltype;
+import ai.vital.vitalsigns.ontology.VitalCoreOntology;
+
+/**
+ * Objects header table operations. The table (segment table name + {@link SegmentTable#OBJECTS_TABLE_SUFFIX})
+ * keeps a single row per object so that counts, URIs listing and type only filters don't
+ * scan all properties rows.
+ */
+public class ObjectsOperations {
+
+	public final static String COLUMN_ONTOLOGY_IRI = "ontology_iri";
+
+	public final static String COLUMN_VERSION_IRI = "version_iri";
+
+	static int PAGE_SIZE = 1000;
+
+	public static PreparedStatement prepareInsert(Connection connection, SegmentTable segmentTable) throws SQLException {
+
+		return connection.prepareStatement("INSERT INTO " + escapeID(connection, segmentTable.getObjectsTableName()) + " ( " +
+				COLUMN_URI + ", " + COLUMN_VITALTYPE + ", " + COLUMN_TSTAMP + ", " + COLUMN_CHANNEL_URI + ", " + COLUMN_ONTOLOGY_IRI + ", " + COLUMN_VERSION_IRI +
+				" ) VALUES ( ?, ?, ?, ?, ?, ? )");
+
+	}
+
+	public static void addInsertBatch(PreparedStatement stmt, String uri, String vitaltypeURI, Long timestamp, String channelURI, String ontologyIRI, String versionIRI) throws SQLException {
+
+		stmt.setString(1, uri);
+		stmt.setString(2, vitaltypeURI);
+
+		if(timestamp != null) {
+			stmt.setLong(3, timestamp);
+		} else {
+			stmt.setNull(3, Types.BIGINT);
+		}
+
+		stmt.setString(4, channelURI);
+		stmt.setString(5, ontologyIRI);
+		stmt.setString(6, versionIRI);
+
+		stmt.addBatch();
+
+	}
+
+	public static void insertObjects(Connection connection, SegmentTable segmentTable, Collection<GraphObject> gs) throws SQLException {
+
+		PreparedStatement stmt = null;
+
+		try {
+
+			stmt = prepareInsert(connection, segmentTable);
+
+			int c = 0;
+
+			for(GraphObject g : gs) {
+
+				DomainOntology _do = VitalSigns.get().getClassDomainOntology(g.getClass());
+				if(_do == null) throw new RuntimeException("Domain ontology for class: " + g.getClass().getCanonicalName() + " not found");
+
+				addInsertBatch(stmt, g.getURI(), (String) g.getRaw(Property_vitaltype.class), (Long) g.getRaw(Property_hasTimestamp.class), VitalSignsToSqlBridge.getChannelURI(g), _do.getUri(), _do.toVersionString());
+
+				c++;
+
+				if(c % PAGE_SIZE == 0) {
+					stmt.executeBatch();
+				}
+
+			}
+
+			if(c % PAGE_SIZE > 0) {
+				stmt.executeBatch();
+			}
+
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	public static void deleteObjects(Connection connection, SegmentTable segmentTable, Collection<String> uris) throws SQLException {
+
+		List<String> l = new ArrayList<String>(uris);
+
+		for(int i = 0; i < l.size(); i += PAGE_SIZE) {
+
+			List<String> page = l.subList(i, Math.min(i + PAGE_SIZE, l.size()));
+
+			PreparedStatement stmt = null;
+
+			StringBuilder sb = new StringBuilder("DELETE FROM ").append(escapeID(connection, segmentTable.getObjectsTableName())).append(" WHERE ");
+			sb.append(COLUMN_URI).append(" IN (");
+			for(int j = 1; j <= page.size(); j++) {
+				if(j > 1) {
+					sb.append(", ?");
+				} else {
+					sb.append('?');
+				}
+			}
+			sb.append(")");
+
+			try {
+
+				stmt = connection.prepareStatement(sb.toString());
+
+				int j = 1;
+				for(String u : page) {
+					stmt.setString(j++, u);
+				}
+
+				stmt.executeUpdate();
+
+			} finally {
+				SQLUtils.closeQuietly(stmt);
+			}
+
+		}
+
+	}
+
+	public static int clearObjects(Connection connection, SegmentTable segmentTable) throws SQLException {
+
+		PreparedStatement stmt = null;
+
+		try {
+			stmt = connection.prepareStatement("DELETE FROM " + escapeID(connection, segmentTable.getObjectsTableName()));
+			return stmt.executeUpdate();
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	/**
+	 * Fills the objects table with the objects already stored in the segment table, each object has exactly one ontology IRI row.
+	 * Skips the objects already mirrored by writes so it may run while the segment is written
+	 * @return inserted rows count
+	 */
+	public static int populateObjects(Connection connection, SegmentTable segmentTable) throws SQLException {
+
+		String tableName = escapeID(connection, segmentTable.tableName);
+
+		PreparedStatement stmt = null;
+
+		try {
+
+			stmt = connection.prepareStatement(
+				"INSERT INTO " + escapeID(connection, segmentTable.getObjectsTableName()) + " ( " +
+				COLUMN_URI + ", " + COLUMN_VITALTYPE + ", " + COLUMN_TSTAMP + ", " + COLUMN_CHANNEL_URI + ", " + COLUMN_ONTOLOGY_IRI + ", " + COLUMN_VERSION_IRI + " ) " +
+				"SELECT O." + COLUMN_URI + ", O." + COLUMN_VITALTYPE + ", O." + COLUMN_TSTAMP + ", O." + COLUMN_CHANNEL_URI + ", O." + COLUMN_VALUE_URI + ", V." + COLUMN_VALUE_STRING + " " +
+				"FROM " + tableName + " AS O LEFT JOIN " + tableName + " AS V ON V." + COLUMN_URI + " = O." + COLUMN_URI + " AND V." + COLUMN_NAME + " = ? " +
+				"WHERE O." + COLUMN_NAME + " = ? " +
+				"AND NOT EXISTS ( SELECT 1 FROM " + escapeID(connection, segmentTable.getObjectsTableName()) + " AS X WHERE X." + COLUMN_URI + " = O." + COLUMN_URI + " )"
+			);
+
+			stmt.setString(1, VitalCoreOntology.hasVersionIRI.getURI());
+			stmt.setString(2, VitalCoreOntology.hasOntologyIRI.getURI());
+
+			return stmt.executeUpdate();
+
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+	}
+
+}
@@ -0,0 +1,223 @@
+package ai.vital.sql.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.schemas.SqlDialect;
+import ai.vital.sql.utils.SQLUtils;
+
+/**
+ * Buffers segment table rows and writes them with multi-row INSERT ... VALUES (...), (...) statements.
+ * Rows per statement are capped by insertMaxRowsPerStatement and the dialect parameters limit, and
+ * adapted to the measured statement time. The current value is kept by the data source per table so it
+ * carries over between batches. Statements are also bounded by the estimated values size (insertMaxStatementBytes).
+ */
+public class MultiRowInsert implements RowsWriter {
+
+	private final static Logger log = LoggerFactory.getLogger(MultiRowInsert.class);
+
+	private VitalSqlDataSource dataSource;
+
+	private Connection connection;
+
+	private String tableName;
+
+	private int columnsCount;
+
+	private int maxRows;
+
+	private int maxBytes;
+
+	private List<List<Object>> rows = new ArrayList<List<Object>>();
+
+	//estimated bytes of the buffered rows
+	private List<Integer> rowsBytes = new ArrayList<Integer>();
+
+	private long bufferedBytes = 0L;
+
+	//rows count -> statement
+	private Map<Integer, PreparedStatement> statements = new HashMap<Integer, PreparedStatement>();
+
+	public MultiRowInsert(VitalSqlDataSource dataSource, Connection connection, String tableName, int columnsCount) {
+		super();
+		this.dataSource = dataSource;
+		this.connection = connection;
+		this.tableName = tableName;
+		this.columnsCount = columnsCount;
+
+		Integer configured = dataSource.getConfig().getInsertMaxRowsPerStatement();
+
+		int limit = dataSource.getDialect().getMaxParameters() / columnsCount;
+
+		this.maxRows = Math.max(1, Math.min(configured != null ? configured.intValue() : 1, limit));
+
+		Integer bytes = dataSource.getConfig().getInsertMaxStatementBytes();
+
+		this.maxBytes = bytes != null && bytes.intValue() > 0 ? bytes.intValue() : Integer.MAX_VALUE;
+	}
+
+	@Override
+	public void addRow(List<Object> record) throws SQLException {
+
+		int recordBytes = estimateBytes(record);
+
+		//the buffered rows are a statement of their own, a single oversized row is still written alone
+		if(rows.size() > 0 && bufferedBytes + recordBytes > maxBytes) {
+			writeRows(rows.size());
+		}
+
+		rows.add(record);
+		rowsBytes.add(recordBytes);
+		bufferedBytes += recordBytes;
+
+		if(rows.size() >= getRowsPerStatement()) {
+			writeRows(rows.size());
+		}
+
+	}
+
+	@Override
+	public void flush() throws SQLException {
+
+		while(rows.size() > 0) {
+			writeRows(Math.min(rows.size(), getRowsPerStatement()));
+		}
+
+	}
+
+	@Override
+	public void close() {
+
+		for(PreparedStatement stmt : statements.values()) {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+		statements.clear();
+
+	}
+
+	private int getRowsPerStatement() {
+
+		int r = dataSource.getInsertRowsPerStatement(tableName);
+
+		if(r < 1 || r > maxRows) return maxRows;
+
+		return r;
+
+	}
+
+	private void writeRows(int count) throws SQLException {
+
+		PreparedStatement stmt = statements.get(count);
+
+		if(stmt == null) {
+			stmt = connection.prepareStatement(dataSource.getInsertCommandTemplate(connection, tableName, columnsCount, count));
+			statements.put(count, stmt);
+		}
+
+		SqlDialect dialect = dataSource.getDialect();
+
+		int p = 1;
+
+		for(int r = 0; r < count; r++) {
+
+			List<Object> record = rows.get(r);
+
+			for(int i = 0; i < columnsCount; i++) {
+
+				Object raw = record.get(i);
+
+				if(raw == null) {
+					stmt.setNull(p, dialect.getColumnType(VitalSignsToSqlBridge.columns.get(i)));
+				} else {
+					stmt.setObject(p, raw);
+				}
+
+				p++;
+
+			}
+
+		}
+
+		long start = System.currentTimeMillis();
+
+		stmt.executeUpdate();
+
+		long time = System.currentTimeMillis() - start;
+
+		rows.subList(0, count).clear();
+
+		for(int r = 0; r < count; r++) {
+			bufferedBytes -= rowsBytes.get(r);
+		}
+
+		rowsBytes.subList(0, count).clear();
+
+		adapt(count, time);
+
+	}
+
+	private void adapt(int count, long time) {
+
+		//only full statements are representative
+		if(count < getRowsPerStatement()) return;
+
+		Integer target = dataSource.getConfig().getInsertStatementTargetMS();
+
+		if(target == null || target.intValue() <= 0) return;
+
+		int next = count;
+
+		if(time > target.intValue()) {
+			next = Math.max(1, count / 2);
+		} else if(time < target.intValue() / 4) {
+			next = Math.min(maxRows, count + Math.max(1, count / 4));
+		}
+
+		if(next != count) {
+			log.debug("Rows per INSERT statement {} -> {}, statement time: {}ms", count, next, time);
+			dataSource.setInsertRowsPerStatement(tableName, next);
+		}
+
+	}
+
+	//utf-8 length of strings plus quotes and separators, fixed size of other values
+	private static int estimateBytes(List<Object> record) {
+
+		int bytes = 4;
+
+		for(Object raw : record) {
+
+			if(raw instanceof String) {
+
+				String s = (String) raw;
+
+				bytes += 4;
+
+				for(int i = 0; i < s.length(); i++) {
+					char c = s.charAt(i);
+					bytes += c < 0x80 ? 1 : ( c < 0x800 || Character.isSurrogate(c) ? 2 : 3 );
+				}
+
+			} else {
+
+				bytes += 24;
+
+			}
+
+		}
+
+		return bytes;
+
+	}
+
+}
@@ -0,0 +1,205 @@
+package ai.vital.sql.model;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.schemas.SqlDialect;
+import ai.vital.sql.utils.SQLUtils;
+
+/**
+ * Streams segment table rows with LOAD DATA LOCAL INFILE from an in-memory stream, no temp files.
+ * Rows are written in the LOAD DATA default text format (tab separated, backslash escaped, \N for NULL),
+ * buffered and each flush is a complete LOAD DATA statement. BIT columns are loaded through user
+ * variables as LOAD DATA would store the characters codes.
+ */
+public class MySQLLoadData implements RowsWriter {
+
+	private final static Logger log = LoggerFactory.getLogger(MySQLLoadData.class);
+
+	//chars buffered before a LOAD DATA statement is issued
+	static int BUFFER_SIZE = 8 * 1024 * 1024;
+
+	private Connection connection;
+
+	private String sql;
+
+	private StringBuilder buffer = new StringBuilder();
+
+	private int rows = 0;
+
+	public MySQLLoadData(Connection connection, SqlDialect dialect, String tableName, int columnsCount) throws SQLException {
+		super();
+
+		this.connection = connection;
+
+		StringBuilder sb = new StringBuilder("LOAD DATA LOCAL INFILE 'stream' INTO TABLE ").append(SQLUtils.escapeID(connection, tableName))
+			.append(" CHARACTER SET utf8mb4 FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' ( ");
+
+		List<String> bitColumns = new ArrayList<String>();
+
+		for(int i = 0; i < columnsCount; i++) {
+
+			if(i > 0) sb.append(", ");
+
+			String column = VitalSignsToSqlBridge.columns.get(i);
+
+			int type = dialect.getColumnType(column);
+
+			if(type == Types.BIT || type == Types.BOOLEAN) {
+				sb.append("@").append(column);
+				bitColumns.add(column);
+			} else {
+				sb.append(column);
+			}
+
+		}
+
+		sb.append(" )");
+
+		for(int i = 0; i < bitColumns.size(); i++) {
+			String column = bitColumns.get(i);
+			sb.append(i == 0 ? " SET " : ", ").append(column).append(" = CAST(@").append(column).append(" AS UNSIGNED)");
+		}
+
+		this.sql = sb.toString();
+	}
+
+	@Override
+	public void addRow(List<Object> record) throws SQLException {
+
+		boolean first = true;
+
+		for(Object r : record) {
+
+			if(first) {
+				first = false;
+			} else {
+				buffer.append('\t');
+			}
+
+			if(r == null) {
+				buffer.append("\\N");
+			} else if(r instanceof Boolean) {
+				buffer.append(((Boolean) r).booleanValue() ? '1' : '0');
+			} else if(r instanceof Number) {
+				buffer.append((Number) r);
+			} else if(r instanceof Date) {
+				buffer.append(((Date) r).getTime());
+			} else if(r instanceof String) {
+				escape((String) r);
+			} else {
+				throw new RuntimeException("Unsupported value type: " + r);
+			}
+
+		}
+
+		buffer.append('\n');
+
+		rows++;
+
+		if(buffer.length() >= BUFFER_SIZE) {
+			flush();
+		}
+
+	}
+
+	private void escape(String s) {
+
+		for(int i = 0; i < s.length(); i++) {
+
+			char c = s.charAt(i);
+
+			switch(c) {
+			case '\\':
+				buffer.append("\\\\");
+				break;
+			case '\n':
+				buffer.append("\\n");
+				break;
+			case '\r':
+				buffer.append("\\r");
+				break;
+			case '\t':
+				buffer.append("\\t");
+				break;
+			case '\0':
+				buffer.append("\\0");
+				break;
+			default:
+				buffer.append(c);
+			}
+
+		}
+
+	}
+
+	@Override
+	public void flush() throws SQLException {
+
+		if(rows == 0) return;
+
+		long start = System.currentTimeMillis();
+
+		Statement stmt = null;
+
+		int loaded = 0;
+
+		try {
+
+			stmt = connection.createStatement();
+
+			stmt.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(new ByteArrayInputStream(buffer.toString().getBytes(StandardCharsets.UTF_8)));
+
+			loaded = stmt.executeUpdate(sql);
+
+			//truncated or converted values are only reported as warnings (SHOW WARNINGS)
+			SQLWarning warning = stmt.getWarnings();
+
+			if(warning != null) {
+
+				int warnings = 0;
+
+				for(SQLWarning w = warning; w != null; w = w.getNextWarning()) {
+					log.error("LOAD DATA warning: {}", w.getLocalizedMessage());
+					warnings++;
+				}
+
+				throw new SQLException("LOAD DATA chunk failed, warnings: " + warnings + ", first: " + warning.getLocalizedMessage(), warning);
+
+			}
+
+		} finally {
+			SQLUtils.closeQuietly(stmt);
+		}
+
+		//skipped rows (duplicates, malformed lines)
+		if(loaded != rows) {
+			throw new SQLException("LOAD DATA chunk failed, rows loaded: " + loaded + ", expected: " + rows);
+		}
+
+		log.debug("LOAD DATA rows: {}, time: {}ms", loaded, System.currentTimeMillis() - start);
+
+		buffer.setLength(0);
+
+		rows = 0;
+
+	}
+
+	@Override
+	public void close() {
+		buffer = new StringBuilder();
+		rows = 0;
+	}
+
+}
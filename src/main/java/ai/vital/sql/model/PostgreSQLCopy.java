@@ -0,0 +1,149 @@
+package ai.vital.sql.model;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.utils.SQLUtils;
+
+/**
+ * Streams segment table rows with COPY ... FROM STDIN in PostgreSQL text format. Rows are buffered
+ * and each flush is a complete COPY command, so the connection stays usable for the objects header
+ * and edges tables statements in between.
+ */
+public class PostgreSQLCopy implements RowsWriter {
+
+	private final static Logger log = LoggerFactory.getLogger(PostgreSQLCopy.class);
+
+	//chars buffered before a COPY command is issued
+	static int BUFFER_SIZE = 8 * 1024 * 1024;
+
+	private CopyManager copyManager;
+
+	private String sql;
+
+	private StringBuilder buffer = new StringBuilder();
+
+	private int rows = 0;
+
+	public PostgreSQLCopy(Connection connection, String tableName, int columnsCount) throws SQLException {
+		super();
+
+		this.copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+		StringBuilder sb = new StringBuilder("COPY ").append(SQLUtils.escapeID(connection, tableName)).append(" ( ");
+
+		for(int i = 0; i < columnsCount; i++) {
+			if(i > 0) sb.append(", ");
+			sb.append(VitalSignsToSqlBridge.columns.get(i));
+		}
+
+		sb.append(" ) FROM STDIN");
+
+		this.sql = sb.toString();
+	}
+
+	@Override
+	public void addRow(List<Object> record) throws SQLException {
+
+		boolean first = true;
+
+		for(Object r : record) {
+
+			if(first) {
+				first = false;
+			} else {
+				buffer.append('\t');
+			}
+
+			if(r == null) {
+				buffer.append("\\N");
+			} else if(r instanceof Boolean) {
+				buffer.append(((Boolean) r).booleanValue() ? 't' : 'f');
+			} else if(r instanceof Number) {
+				buffer.append((Number) r);
+			} else if(r instanceof Date) {
+				buffer.append(((Date) r).getTime());
+			} else if(r instanceof String) {
+				escape((String) r);
+			} else {
+				throw new RuntimeException("Unsupported value type: " + r);
+			}
+
+		}
+
+		buffer.append('\n');
+
+		rows++;
+
+		if(buffer.length() >= BUFFER_SIZE) {
+			flush();
+		}
+
+	}
+
+	private void escape(String s) {
+
+		for(int i = 0; i < s.length(); i++) {
+
+			char c = s.charAt(i);
+
+			switch(c) {
+			case '\\':
+				buffer.append("\\\\");
+				break;
+			case '\n':
+				buffer.append("\\n");
+				break;
+			case '\r':
+				buffer.append("\\r");
+				break;
+			case '\t':
+				buffer.append("\\t");
+				break;
+			default:
+				buffer.append(c);
+			}
+
+		}
+
+	}
+
+	@Override
+	public void flush() throws SQLException {
+
+		if(rows == 0) return;
+
+		long start = System.currentTimeMillis();
+
+		long copied = 0;
+
+		try {
+			copied = copyManager.copyIn(sql, new StringReader(buffer.toString()));
+		} catch (IOException e) {
+			throw new SQLException(e);
+		}
+
+		log.debug("COPY rows: {}, time: {}ms", copied, System.currentTimeMillis() - start);
+
+		buffer.setLength(0);
+
+		rows = 0;
+
+	}
+
+	@Override
+	public void close() {
+		buffer = new StringBuilder();
+		rows = 0;
+	}
+
+}
@@ -0,0 +1,41 @@
+package ai.vital.sql.model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps encoded rows in memory so that the encoding and writing of objects may happen on different threads
+ */
+public class RowsBuffer implements RowsWriter {
+
+	private List<List<Object>> rows = new ArrayList<List<Object>>();
+
+	@Override
+	public void addRow(List<Object> record) throws SQLException {
+		rows.add(record);
+	}
+
+	@Override
+	public void flush() throws SQLException {
+	}
+
+	@Override
+	public void close() {
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	public void writeTo(RowsWriter writer) throws SQLException {
+
+		for(List<Object> record : rows) {
+			writer.addRow(record);
+		}
+
+		writer.flush();
+
+	}
+
+}
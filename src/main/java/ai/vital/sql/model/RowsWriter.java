@@ -0,0 +1,21 @@
+package ai.vital.sql.model;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Writes segment table rows encoded by {@link VitalSignsToSqlBridge}, each record holds the values
+ * of the leading columns of {@link VitalSignsToSqlBridge#columns}
+ */
+public interface RowsWriter {
+
+	public void addRow(List<Object> record) throws SQLException;
+
+	/**
+	 * writes all pending rows
+	 */
+	public void flush() throws SQLException;
+
+	public void close();
+
+}
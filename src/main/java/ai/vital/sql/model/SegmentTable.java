@@ -5,11 +5,35 @@ import ai.vital.vitalsigns.model.properties.Property_hasSegmentID;
 
 public class SegmentTable {
 
+	public final static String EDGES_TABLE_SUFFIX = "_edges";
+	
+	public final static String OBJECTS_TABLE_SUFFIX = "_objects";
+	
+	public final static String CHECKPOINTS_TABLE_SUFFIX = "_checkpoints";
+	
+	//marker table of a fully populated edges or objects table
+	public final static String READY_TABLE_SUFFIX = "_ready";
+	
 	public VitalSegment segment;
 	
 	public String tableName;
 
 	private String segmentID;
+	
+	//set by segments catalog, tables created before value_type column was introduced don't have it
+	public volatile boolean valueTypeColumn = false;
+	
+	//set by segments catalog, edges adjacency table exists, writes are mirrored
+	public volatile boolean edgesTable = false;
+	
+	//set by segments catalog, edges adjacency table is fully populated, reads may use it
+	public volatile boolean edgesTableReady = false;
+	
+	//set by segments catalog, objects header table exists, writes are mirrored
+	public volatile boolean objectsTable = false;
+	
+	//set by segments catalog, objects header table is fully populated, reads may use it
+	public volatile boolean objectsTableReady = false;
 
 	public SegmentTable(VitalSegment segment, String tableName) {
 		super();
@@ -22,6 +46,26 @@ public class SegmentTable {
 		return segmentID;
 	}
 	
+	public String getEdgesTableName() {
+		return tableName + EDGES_TABLE_SUFFIX;
+	}
+	
+	public String getObjectsTableName() {
+		return tableName + OBJECTS_TABLE_SUFFIX;
+	}
+	
+	public String getEdgesReadyTableName() {
+		return getEdgesTableName() + READY_TABLE_SUFFIX;
+	}
+	
+	public String getObjectsReadyTableName() {
+		return getObjectsTableName() + READY_TABLE_SUFFIX;
+	}
+	
+	public String getCheckpointsTableName() {
+		return tableName + CHECKPOINTS_TABLE_SUFFIX;
+	}
+	
 	
 	
 }
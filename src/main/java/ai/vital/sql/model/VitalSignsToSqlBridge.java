@@ -3,11 +3,13 @@ package ai.vital.sql.model;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -20,6 +22,8 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.dao.EdgesOperations;
+import ai.vital.sql.dao.ObjectsOperations;
 import ai.vital.sql.query.SQLGraphObjectResolver;
 import ai.vital.sql.services.MysqlStringEscape;
 import ai.vital.sql.services.ToCSVProviderImpl;
@@ -147,6 +151,36 @@ CREATE TABLE ${NAME} (
 	//special
 	public final static String COLUMN_VALUE_FULL_TEXT = "value_full_text";
 	
+	//value column discriminator, 1-based index into VALUE_COLUMNS
+	public final static String COLUMN_VALUE_TYPE = "value_type";
+	
+	//value columns in decoding order, single and multivalue column of each kind
+	public final static String[] VALUE_COLUMNS = new String[]{
+		COLUMN_VALUE_BOOLEAN, COLUMN_VALUE_BOOLEAN_MULTIVALUE,
+		COLUMN_VALUE_DATE, COLUMN_VALUE_DATE_MULTIVALUE,
+		COLUMN_VALUE_DOUBLE, COLUMN_VALUE_DOUBLE_MULTIVALUE,
+		COLUMN_VALUE_FLOAT, COLUMN_VALUE_FLOAT_MULTIVALUE,
+		COLUMN_VALUE_GEOLOCATION, COLUMN_VALUE_GEOLOCATION_MULTIVALUE,
+		COLUMN_VALUE_INTEGER, COLUMN_VALUE_INTEGER_MULTIVALUE,
+		COLUMN_VALUE_LONG, COLUMN_VALUE_LONG_MULTIVALUE,
+		COLUMN_VALUE_OTHER, COLUMN_VALUE_OTHER_MULTIVALUE,
+		COLUMN_VALUE_STRING, COLUMN_VALUE_STRING_MULTIVALUE,
+		COLUMN_VALUE_TRUTH, COLUMN_VALUE_TRUTH_MULTIVALUE,
+		COLUMN_VALUE_URI, COLUMN_VALUE_URI_MULTIVALUE
+	};
+	
+	final static int KIND_BOOLEAN = 0;
+	final static int KIND_DATE = 1;
+	final static int KIND_DOUBLE = 2;
+	final static int KIND_FLOAT = 3;
+	final static int KIND_GEOLOCATION = 4;
+	final static int KIND_INTEGER = 5;
+	final static int KIND_LONG = 6;
+	final static int KIND_OTHER = 7;
+	final static int KIND_STRING = 8;
+	final static int KIND_TRUTH = 9;
+	final static int KIND_URI = 10;
+	
 	public final static URIProperty aimpMessageClassURI = URIProperty.withString("http://vital.ai/ontology/vital-aimp#AIMPMessage");
 	
 	
@@ -193,6 +227,7 @@ CREATE TABLE ${NAME} (
 	static int externalIndex = -1;
 	static int tstampIndex = -1;
 	static int channelURIIndex = -1;
+	static int valueTypeIndex = -1;
 	
 	static {
 		columns = Arrays.asList(
@@ -224,7 +259,9 @@ CREATE TABLE ${NAME} (
 			COLUMN_VALUE_TRUTH_MULTIVALUE,
 			COLUMN_VALUE_FULL_TEXT,
 			COLUMN_VALUE_URI,
-			COLUMN_VALUE_URI_MULTIVALUE
+			COLUMN_VALUE_URI_MULTIVALUE,
+			//keep it last, not available in tables created before this column was introduced
+			COLUMN_VALUE_TYPE
 		);
 		
 		for(int i = 1; i <= columns.size(); i++) {
@@ -243,6 +280,8 @@ CREATE TABLE ${NAME} (
 				tstampIndex = i;
 			} else if(COLUMN_CHANNEL_URI.equals(c)) {
 				channelURIIndex = i;
+			} else if(COLUMN_VALUE_TYPE.equals(c)) {
+				valueTypeIndex = i;
 			}
 			column2Index.put(c, new Integer(i));
 		}
@@ -255,23 +294,155 @@ CREATE TABLE ${NAME} (
 		
 		CSV,
 		SQLRows,
-		JDBC
+		JDBC,
+		//PostgreSQL COPY ... FROM STDIN, written through the connection like JDBC
+		COPY,
+		//MySQL LOAD DATA LOCAL INFILE, written through the connection like JDBC
+		LOAD_DATA
 		
 	}
 	
+	/**
+	 * @return value_type code of a value column, 0 if it's not a value column
+	 */
+	public static int getValueTypeCode(String valueColumn) {
+		for(int i = 0; i < VALUE_COLUMNS.length; i++) {
+			if(VALUE_COLUMNS[i].equals(valueColumn)) return i + 1;
+		}
+		return 0;
+	}
+	
+	/**
+	 * @return the columns stored in given segment table, legacy tables don't have value_type column
+	 */
+	public static List<String> getColumns(SegmentTable segmentTable) {
+		if(segmentTable == null || segmentTable.valueTypeColumn) return columns;
+		return columns.subList(0, columns.size() - 1);
+	}
+	
 	public static List<String> batchInsertGraphObjects(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, Collection<GraphObject> gs) throws SQLException {
 		return batchInsertGraphObjects(dataSource, connection, segmentTable, gs, OutputType.JDBC);
 	}
-	@SuppressWarnings("unchecked")
 	public static List<String> batchInsertGraphObjects(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, Collection<GraphObject> gs, OutputType outputType) throws SQLException {
+		return batchInsertGraphObjects(dataSource, connection, segmentTable, gs, outputType, null, null, null);
+	}
+	
+	/**
+	 * @param properties uri -> names of the properties to write, objects found there are written partially
+	 * and their objects header and edges rows are left as they are, null writes all objects completely 
+	 */
+	public static List<String> batchInsertGraphObjects(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, Collection<GraphObject> gs, OutputType outputType, Map<String, Set<String>> properties) throws SQLException {
+		return batchInsertGraphObjects(dataSource, connection, segmentTable, gs, outputType, properties, null, null);
+	}
+	
+	/**
+	 * Encodes the objects rows without writing them, the rows are written with {@link #writeRows}
+	 */
+	public static RowsBuffer encodeRows(VitalSqlDataSource dataSource, SegmentTable segmentTable, Collection<GraphObject> gs) throws SQLException {
+		
+		RowsBuffer rows = new RowsBuffer();
+		
+		batchInsertGraphObjects(dataSource, null, segmentTable, gs, OutputType.JDBC, null, null, rows);
+		
+		return rows;
+		
+	}
+	
+	/**
+	 * Writes the rows encoded with {@link #encodeRows}, objects header and edges tables rows included
+	 * @param outputType {@link OutputType#JDBC}, {@link OutputType#COPY} or {@link OutputType#LOAD_DATA}
+	 */
+	public static void writeRows(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, Collection<GraphObject> gs, RowsBuffer rows, OutputType outputType) throws SQLException {
+		
+		RowsWriter insert = null;
+		
+		try {
+			
+			insert = newRowsWriter(dataSource, connection, segmentTable, outputType);
+			
+			rows.writeTo(insert);
+			
+		} finally {
+			if(insert != null) insert.close();
+		}
+		
+		if(segmentTable.objectsTable) {
+			ObjectsOperations.insertObjects(connection, segmentTable, gs);
+		}
+		
+		if(segmentTable.edgesTable) {
+			EdgesOperations.insertEdges(connection, segmentTable, gs);
+		}
+		
+	}
+	
+	private static RowsWriter newRowsWriter(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, OutputType outputType) throws SQLException {
+		
+		int columnsCount = getColumns(segmentTable).size();
+		
+		if(outputType == OutputType.COPY) {
+			return new PostgreSQLCopy(connection, segmentTable.tableName, columnsCount);
+		} else if(outputType == OutputType.LOAD_DATA) {
+			return new MySQLLoadData(connection, dataSource.getDialect(), segmentTable.tableName, columnsCount);
+		} else {
+			return new MultiRowInsert(dataSource, connection, segmentTable.tableName, columnsCount);
+		}
+		
+	}
+	
+	/**
+	 * Encodes the object rows the same way they are written, the rows of a property are comparable with the rows of its previous version
+	 * @return property name -> rows in {@link OutputType#SQLRows} format, sorted
+	 */
+	public static Map<String, List<String>> getPropertiesRows(VitalSqlDataSource dataSource, SegmentTable segmentTable, GraphObject g) throws SQLException {
+		
+		Map<String, Map<String, List<String>>> propertiesRows = new HashMap<String, Map<String, List<String>>>();
+		
+		batchInsertGraphObjects(dataSource, null, segmentTable, Arrays.asList(g), OutputType.SQLRows, null, propertiesRows, null);
+		
+		Map<String, List<String>> rows = propertiesRows.get(g.getURI());
+		
+		if(rows == null) return new HashMap<String, List<String>>();
+		
+		for(List<String> l : rows.values()) {
+			Collections.sort(l);
+		}
+		
+		return rows;
+		
+	}
+	
+	public static String getChannelURI(GraphObject g) {
+		
+		Class<? extends GraphObject> aimpClass = VitalSigns.get().getClass(aimpMessageClassURI);
+		
+		if(aimpClass != null && aimpClass.isInstance(g)) {
+			IProperty channelURIValue = (IProperty) g.getProperty("channelURI");
+			return channelURIValue != null ? (String) channelURIValue.rawValue() : null;
+		}
+		
+		return null;
+		
+	}
+	
+	/**
+	 * @param encoded if set the rows are only encoded into it, nothing is written
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<String> batchInsertGraphObjects(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, Collection<GraphObject> gs, OutputType outputType, Map<String, Set<String>> properties, Map<String, Map<String, List<String>>> propertiesRows, RowsBuffer encoded) throws SQLException {
 		
 		Class<? extends GraphObject> aimpClass = VitalSigns.get().getClass(aimpMessageClassURI);
 		
-		if(outputType == OutputType.JDBC && dataSource.isSparkSQL()) throw new RuntimeException("Cannot use JDBC prep statement batch insert in SparkSQL mode");
+		boolean write = encoded == null && ( outputType == OutputType.JDBC || outputType == OutputType.COPY || outputType == OutputType.LOAD_DATA );
+		
+		if(write && dataSource.isSparkSQL()) throw new RuntimeException("Cannot use JDBC prep statement batch insert in SparkSQL mode");
 		
-		PreparedStatement stmt = null;
+		RowsWriter insert = encoded;
 		
-		List<String> output = outputType != OutputType.JDBC ? new ArrayList<String>() : null;
+		//objects header rows
+		PreparedStatement objectsStmt = null;
+		
+		List<String> output = !write && encoded == null ? new ArrayList<String>() : null;
 		
 		try {
 			
@@ -279,10 +450,16 @@ CREATE TABLE ${NAME} (
 			
 			int c = 0;
 			
+			int objects = 0;
+			
+			
+			int columnsCount = getColumns(segmentTable).size();
 			
-			if(outputType == OutputType.JDBC) {
-				String command = dataSource.getInsertCommandTemplate(connection, segmentTable.tableName);
-				stmt = connection.prepareStatement(command);
+			if(write) {
+				insert = newRowsWriter(dataSource, connection, segmentTable, outputType);
+				if(segmentTable.objectsTable) {
+					objectsStmt = ObjectsOperations.prepareInsert(connection, segmentTable);
+				}
 			}
 			
 			for(GraphObject g : gs) {
@@ -302,6 +479,16 @@ CREATE TABLE ${NAME} (
 				
 				String uri = g.getURI();
 				
+				//partial write
+				Set<String> writtenProperties = properties != null ? properties.get(uri) : null;
+				
+				Map<String, List<String>> objectRows = null;
+				
+				if(propertiesRows != null) {
+					objectRows = new HashMap<String, List<String>>();
+					propertiesRows.put(uri, objectRows);
+				}
+				
 				List<Entry<String, IProperty>> entries = new ArrayList<Entry<String, IProperty>>(g.getPropertiesMap().entrySet());
 				
 				//set reverse transient properties !
@@ -311,6 +498,17 @@ CREATE TABLE ${NAME} (
 				entries.add(new SimpleEntry(VitalSigns.get().getPropertiesRegistry().getPropertyURI(Property_hasOntologyIRI.class), URIProperty.withString(_do.getUri())));
 				entries.add(new SimpleEntry(VitalSigns.get().getPropertiesRegistry().getPropertyURI(Property_hasVersionIRI.class), new StringProperty(_do.toVersionString())));
 				
+				if(objectsStmt != null && writtenProperties == null) {
+					
+					ObjectsOperations.addInsertBatch(objectsStmt, uri, vitaltypeURI, timestamp, channelURI, _do.getUri(), _do.toVersionString());
+					objects++;
+					
+					if(objects % batchSize == 0) {
+						objectsStmt.executeBatch();
+					}
+					
+				}
+				
 				for( Entry<String, IProperty> entry : entries ) {
 					
 					
@@ -363,46 +561,70 @@ CREATE TABLE ${NAME} (
 					
 					String propURI = oldVersionFilter(k);
 					
+					if(writtenProperties != null && !writtenProperties.contains(propURI)) continue;
+					
+					List<String> rows = null;
+					
+					if(objectRows != null) {
+						rows = objectRows.get(propURI);
+						if(rows == null) {
+							rows = new ArrayList<String>();
+							objectRows.put(propURI, rows);
+						}
+					}
+					
 					if(collectionValue != null) {
 						
 						for(IProperty pv : collectionValue) {
 							
-							String o = propertyToRowBatch(dataSource, stmt, segmentTable, vitaltypeURI, uri, timestamp, channelURI, propURI, pv, external, true, outputType);
+							String o = propertyToRowBatch(dataSource, insert, columnsCount, vitaltypeURI, uri, timestamp, channelURI, propURI, pv, external, true, outputType);
 							if(output != null) output.add(o);
+							if(rows != null) rows.add(o);
 							c++;
 							
-							if(stmt != null && c % batchSize == 0 ) {
-								stmt.executeBatch();
-								
-							}
-							
-							
 						}
 						
 					} else {
 						
-						String o = propertyToRowBatch(dataSource, stmt, segmentTable, vitaltypeURI, uri, timestamp, channelURI, propURI, singleValue, external, false, outputType);
+						String o = propertyToRowBatch(dataSource, insert, columnsCount, vitaltypeURI, uri, timestamp, channelURI, propURI, singleValue, external, false, outputType);
 						if(output != null) output.add(o);
+						if(rows != null) rows.add(o);
 						c++;
 						
-						if(stmt != null && c % batchSize == 0) {
-							stmt.executeBatch();
-						}				
-						
 					}
 					
 				}
 				
 			}
 			
-			//only if there are any pending statements to insert
-			if(stmt != null && c % batchSize > 0) {
-				stmt.executeBatch();
+			//only if there are any pending rows to insert
+			if(insert != null) {
+				insert.flush();
 			}	
 			
+			if(objectsStmt != null && objects % batchSize > 0) {
+				objectsStmt.executeBatch();
+			}
+			
+			if(write && segmentTable.edgesTable) {
+				
+				Collection<GraphObject> completeObjects = gs;
+				
+				if(properties != null) {
+					completeObjects = new ArrayList<GraphObject>();
+					for(GraphObject g : gs) {
+						if(!properties.containsKey(g.getURI())) completeObjects.add(g);
+					}
+				}
+				
+				EdgesOperations.insertEdges(connection, segmentTable, completeObjects);
+				
+			}
+			
 			
 		} finally {
-			SQLUtils.closeQuietly(stmt);
+			if(insert != null) insert.close();
+			SQLUtils.closeQuietly(objectsStmt);
 		}
 		
 		return output;
@@ -518,7 +740,7 @@ CREATE TABLE ${NAME} (
 	}
 	
 	
-	private static String propertyToRowBatch(VitalSqlDataSource dataSource, PreparedStatement stmt, SegmentTable segmentTable, String vitaltypeURI, String URI, Long timestamp, String channelURI, String propertyURI, IProperty pv, boolean external, boolean multipleValue, OutputType outputType) throws SQLException {
+	private static String propertyToRowBatch(VitalSqlDataSource dataSource, RowsWriter insert, int columnsCount, String vitaltypeURI, String URI, Long timestamp, String channelURI, String propertyURI, IProperty pv, boolean external, boolean multipleValue, OutputType outputType) throws SQLException {
 		
 		String cn = null;
 
@@ -617,109 +839,70 @@ CREATE TABLE ${NAME} (
 		
 		if(valIndex == null) throw new RuntimeException("column index not found: " + cn);
 		
-		List<Object> record = stmt == null ? new ArrayList<Object>() : null; 
+		List<Object> record = new ArrayList<Object>(); 
 		
-		for(int i = 1 ; i <= columns.size(); i++) {
+		for(int i = 1 ; i <= columnsCount; i++) {
 			
 			Object raw = null;
 			
 			if(i == uriIndex) {
 				
-				if(stmt != null) {
-					stmt.setString(uriIndex, URI);
-				} else {
-					raw = URI;
-				}
+				raw = URI;
 				
 			} else if( i == nameIndex) {
 				
-				if(stmt != null) {
-					stmt.setString(nameIndex, propertyURI);
-				} else {
-					raw = propertyURI;
-				}
+				raw = propertyURI;
 				
 			} else if( i == vitaltypeIndex ) {
 				
-				if(stmt != null) {
-					stmt.setString(vitaltypeIndex, vitaltypeURI);
-				} else {
-					raw = vitaltypeURI;
-				}
+				raw = vitaltypeURI;
 				
 			} else if( i == externalIndex) {
 				
-				if(stmt != null) {
-					stmt.setBoolean(externalIndex, external);
-				} else {
-					raw = external;
-				}
+				raw = external;
 				
 			} else if( i == tstampIndex ) {
 				
-				if(stmt != null) {
-					if(timestamp != null) {
-						stmt.setLong(tstampIndex, timestamp);
-					} else {
-						stmt.setNull(tstampIndex, Types.BIGINT);
-					}
-				} else {
-					raw = timestamp;
-				}
+				raw = timestamp;
 				
 			} else if( i == channelURIIndex ) {
 				
-				if(stmt != null) {
-					if(channelURI != null) {
-						stmt.setString(channelURIIndex, channelURI);
-					} else {
-						stmt.setNull(channelURIIndex, Types.VARCHAR);
-					}
+				//not a part of CSV and SQL rows output
+				if(insert != null) {
+					raw = channelURI;
 				}
 				
 			} else if( i == valIndex.intValue() ) {
 				
-				if(stmt != null) {
-					stmt.setObject(valIndex.intValue(), v);
-				} else {
-					raw = v;
-				}
+				//rows writers only accept plain values, stored as the code read back with Truth.fromInteger
+				raw = v instanceof Truth && insert != null ? truthToInteger((Truth) v) : v;
 				
 			} else if(fullTextValue != null && i == fullTextIndex) {
 				
-				if(stmt != null) {
-					stmt.setString(fullTextIndex, fullTextValue);
-				} else {
-					raw = fullTextValue;
-				}
+				raw = fullTextValue;
 				
-			} else {
+			} else if( i == valueTypeIndex ) {
 				
-				String c = columns.get(i-1);
-				
-				if(stmt != null) {
-					stmt.setNull(i, dataSource.getDialect().getColumnType(c));
-				} else {
-					raw = null;
-				}
+				raw = getValueTypeCode(cn);
 				
 			}
 			
-			if(stmt == null) {
+			if(insert == null) {
 			
 				if(raw instanceof Date) {
 					raw = ((Date)raw).getTime();
 //				} else if(raw instanceof Boolean /* && outputType != OutputType.CSV*/) {
 //					raw = ((Boolean)raw).booleanValue() ? 1 : 0;
 				}
-				record.add(raw); 
 				
 			}
 			
+			record.add(raw); 
+			
 		}
 
-		if(stmt != null) {
-			stmt.addBatch();
+		if(insert != null) {
+			insert.addRow(record);
 		} else if(outputType == OutputType.CSV){
 			//ID
 			record.add(0, null);
@@ -764,6 +947,43 @@ CREATE TABLE ${NAME} (
 		
 	}
 
+	//truth -> integer code, inverse of Truth.fromInteger
+	private static Map<Truth, Integer> truthCodes = null;
+	
+	static synchronized Integer truthToInteger(Truth t) {
+		
+		if(truthCodes == null) {
+			
+			Map<Truth, Integer> codes = new HashMap<Truth, Integer>();
+			
+			int n = Truth.values().length;
+			
+			for(int i = -n; i <= n; i++) {
+				
+				Truth x = null;
+				
+				try {
+					x = Truth.fromInteger(i);
+				} catch(RuntimeException e) {
+					continue;
+				}
+				
+				if(x != null && !codes.containsKey(x)) codes.put(x, i);
+				
+			}
+			
+			truthCodes = codes;
+			
+		}
+		
+		Integer code = truthCodes.get(t);
+		
+		if(code == null) throw new RuntimeException("No integer code of truth value: " + t);
+		
+		return code;
+		
+	}
+
 	private static PreparedStatement propertyToRow(Connection connection, SegmentTable segmentTable, String vitaltypeURI, String URI, Long timestamp, String channelURI, String propertyURI, IProperty pv, boolean external, boolean multipleValue) throws SQLException {
 
 		String cn = null;
@@ -925,15 +1145,74 @@ CREATE TABLE ${NAME} (
 		return fromSql(segmentTable, rs, null, null, null);
 	}
 	
-	public static interface GraphObjectsStreamHandler {
-		public void onGraphObject(GraphObject g);
+	public static interface ObjectsStreamHandler {
 		public void onNoMoreObjects();
 	}
 	
+	public static interface GraphObjectsStreamHandler extends ObjectsStreamHandler {
+		public void onGraphObject(GraphObject g);
+	}
+	
+	/**
+	 * Stream handler receiving objects before they are decoded, {@link #toGraphObject(RawObject)}
+	 * may then be called on another thread.
+	 */
+	public static interface RawObjectsStreamHandler extends ObjectsStreamHandler {
+		public void onRawObject(RawObject o);
+	}
+
+	/**
+	 * Object properties read from the sql rows, not decoded yet
+	 */
+	public static class RawObject {
+
+		private String URI;
+
+		private Map<String, WrappedProperty> props;
+
+		private RawObject(String URI, Map<String, WrappedProperty> props) {
+			this.URI = URI;
+			this.props = props;
+		}
+
+		public String getURI() {
+			return URI;
+		}
+
+	}
+
+	public static GraphObject toGraphObject(RawObject o) {
+		return propsToObject(o.URI, o.props, true);
+	}
+
 	public static List<GraphObject> fromSql(SegmentTable segmentTable, ResultSet rs, GraphObjectsStreamHandler handler) throws SQLException {
 		return fromSql(segmentTable, rs, null, handler, null);
 	}
-	
+
+	public static void fromSqlRaw(SegmentTable segmentTable, ResultSet rs, RawObjectsStreamHandler handler) throws SQLException {
+		fromSql(segmentTable, rs, null, handler, null);
+	}
+
+	/**
+	 * Passes the object to the stream handler
+	 * @return properties map for the next object
+	 */
+	private static Map<String, WrappedProperty> emitObject(ObjectsStreamHandler handler, String URI, Map<String, WrappedProperty> props) {
+
+		if(handler instanceof RawObjectsStreamHandler) {
+			//the map is handed over
+			((RawObjectsStreamHandler) handler).onRawObject(new RawObject(URI, props));
+			return new HashMap<String, WrappedProperty>();
+		}
+
+		((GraphObjectsStreamHandler) handler).onGraphObject(propsToObject(URI, props, true));
+
+		props.clear();
+
+		return props;
+
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	/**
 	 * Overloaded method to read from either a result set or a single object version from column->value map
@@ -944,7 +1223,7 @@ CREATE TABLE ${NAME} (
 	 * @return
 	 * @throws SQLException
 	 */
-	public static List<GraphObject> fromSql(SegmentTable segmentTable, ResultSet rs, List<Map<String, Object>> objectsRows, GraphObjectsStreamHandler handler, SQLGraphObjectResolver resolver) throws SQLException {
+	public static List<GraphObject> fromSql(SegmentTable segmentTable, ResultSet rs, List<Map<String, Object>> objectsRows, ObjectsStreamHandler handler, SQLGraphObjectResolver resolver) throws SQLException {
 
 		if(rs != null && objectsRows != null) throw new RuntimeException("Cannot use both ResultSet and objectsRows object simultaneously");
 		
@@ -959,6 +1238,8 @@ CREATE TABLE ${NAME} (
 		
 		String previousURI = null;
 		
+		ColumnsIndex columnsIndex = rs != null ? new ColumnsIndex(rs) : null;
+		
 		int i = 0;
 		
 		while ( (objectsRows != null && i < objectsRows.size()) || ( rs != null && rs.next() ) ) {
@@ -970,12 +1251,12 @@ CREATE TABLE ${NAME} (
 			
 			i++;
 				
-			String uri = getString(rs, row, COLUMN_URI);
+			String uri = rs != null ? rs.getString(columnsIndex.uri) : getString(row, COLUMN_URI);
 			
 			if(handler != null) {
 				if(previousURI != null && !uri.equals(previousURI)) {
-					
-					handler.onGraphObject(propsToObject(previousURI, currentObject, true));
+
+					currentObject = emitObject(handler, previousURI, currentObject);
 					
 					if(processedURIs.size() == processedURIsLimit) {
 						Iterator<String> iterator = processedURIs.iterator();
@@ -988,16 +1269,14 @@ CREATE TABLE ${NAME} (
 					}
 					
 					//keep the processedURIs cache 
-					
-					currentObject.clear();
 				}
 				
 				
 			}
 			
-			boolean external = getBoolean(rs, row, COLUMN_EXTERNAL);
+			boolean external = rs != null ? rs.getBoolean(columnsIndex.external) : getBoolean(row, COLUMN_EXTERNAL);
 			
-			String propertyName = getString(rs, row, COLUMN_NAME);
+			String propertyName = rs != null ? rs.getString(columnsIndex.name) : getString(row, COLUMN_NAME);
 			
 			Map<String, WrappedProperty> obj = handler != null ? currentObject : m.get(uri);
 			
@@ -1006,245 +1285,105 @@ CREATE TABLE ${NAME} (
 				m.put(uri, obj);
 			}
 			
-//			
-			Boolean singleBoolean = null;
-			Boolean multiBoolean = null;
-			Object singleBooleanVal = getObject(rs, row, COLUMN_VALUE_BOOLEAN);
-			Object multiBooleanVal = getObject(rs, row, COLUMN_VALUE_BOOLEAN_MULTIVALUE);
-
-			if(singleBooleanVal != null) {
-				if(singleBooleanVal instanceof Boolean) {
-					singleBoolean = (Boolean) singleBooleanVal;
-				} else if(singleBooleanVal instanceof Integer) {
-					singleBoolean = ((Integer)singleBooleanVal).intValue() > 0;
-				} else {
-					throw new RuntimeException("Unexpected single boolean column value: " + singleBooleanVal.getClass());
-				}
-			} else if(multiBooleanVal != null) {
-				if(multiBooleanVal instanceof Boolean) {
-					multiBoolean = (Boolean) multiBooleanVal;
-				} else if(multiBooleanVal instanceof Integer) {
-					multiBoolean = ((Integer)multiBooleanVal).intValue() > 0;
-				} else {
-					throw new RuntimeException("Unexpected multi boolean column value: " + multiBooleanVal.getClass());
-				}
-			}
-			
-			Long singleDate = getLong(rs, row, COLUMN_VALUE_DATE);
-			Long multiDate = getLong(rs, row, COLUMN_VALUE_DATE_MULTIVALUE);
-			
-			Double singleDouble = getDouble(rs, row, COLUMN_VALUE_DOUBLE);
-			Double multiDouble = getDouble(rs, row, COLUMN_VALUE_DOUBLE_MULTIVALUE);
-			
-			Float singleFloat = getFloat(rs, row, COLUMN_VALUE_FLOAT);
-			Float multiFloat = getFloat(rs, row, COLUMN_VALUE_FLOAT_MULTIVALUE);
+			//only one value column is set, stop at the first non-null one
+			int valueColumn = -1;
 			
-			String singleGeo = getString(rs, row, COLUMN_VALUE_GEOLOCATION);
-			String multiGeo = getString(rs, row, COLUMN_VALUE_GEOLOCATION_MULTIVALUE);
+			Object value = null;
 			
-			Integer singleInteger = getInteger(rs, row, COLUMN_VALUE_INTEGER);
-			Integer multiInteger = getInteger(rs, row, COLUMN_VALUE_INTEGER_MULTIVALUE);
+			//rows with value_type only need the indicated column
+			int valueType = rs != null ? readValueType(rs, columnsIndex.valueType) : 0;
 			
-			Long singleLong = getLong(rs, row, COLUMN_VALUE_LONG);
-			Long multiLong= getLong(rs, row, COLUMN_VALUE_LONG_MULTIVALUE);
+			if(valueType > 0 && valueType <= VALUE_COLUMNS.length) {
+				
+				value = readValue(rs, columnsIndex.values[valueType - 1], (valueType - 1) / 2);
+				
+				if(value != null) valueColumn = valueType - 1;
+				
+			}
 			
-			String singleOther = getString(rs, row, COLUMN_VALUE_OTHER);
-			String multiOther = getString(rs, row, COLUMN_VALUE_OTHER_MULTIVALUE);
+			for(int c = 0; valueColumn < 0 && c < VALUE_COLUMNS.length; c++) {
+				
+				value = rs != null ? readValue(rs, columnsIndex.values[c], c / 2) : readValue(row, c);
+				
+				if(value != null) {
+					valueColumn = c;
+					break;
+				}
+				
+			}
 			
-			String singleString = getString(rs, row, COLUMN_VALUE_STRING);
-			String multiString = getString(rs, row, COLUMN_VALUE_STRING_MULTIVALUE);
+			if(valueColumn < 0) throw new RuntimeException("No value in sql row");
 			
-			Integer singleTruth = getInteger(rs, row, COLUMN_VALUE_TRUTH);
-			Integer multiTruth = getInteger(rs, row, COLUMN_VALUE_TRUTH_MULTIVALUE);
+			int valueKind = valueColumn / 2;
 			
-			String singleURI = getString(rs, row, COLUMN_VALUE_URI);
-			String multiURI = getString(rs, row, COLUMN_VALUE_URI_MULTIVALUE);
+			boolean multiValue = valueColumn % 2 == 1;
 			
 			IProperty v = null;
 			
-			boolean multiValue = false;
+			switch(valueKind) {
 			
-			if(singleBoolean != null) {
+			case KIND_BOOLEAN: 
+				v = new BooleanProperty(((Boolean) value).booleanValue());
+				break;
 				
-				v = new BooleanProperty(singleBoolean.booleanValue());
+			case KIND_DATE:
+				v = new DateProperty((Long) value);
+				break;
 				
-			} else if(multiBoolean != null) {
+			case KIND_DOUBLE:
+				v = new DoubleProperty((Double) value);
+				break;
 				
-				multiValue = true;
-				v = new BooleanProperty(multiBoolean.booleanValue());
+			case KIND_FLOAT:
+				v = new FloatProperty((Float) value);
+				break;
 				
-			} else if(singleDate != null) {
+			case KIND_GEOLOCATION:
+				v = GeoLocationProperty.fromRDFString((String) value);
+				break;
 				
-				v = new DateProperty(singleDate);
+			case KIND_INTEGER:
+				v = new IntegerProperty((Integer) value);
+				break;
 				
-			} else if(multiDate != null) {
+			case KIND_LONG:
+				v = new LongProperty((Long) value);
+				break;
 				
-				multiValue = true;
-				v = new DateProperty(multiDate);
+			case KIND_OTHER:
+			case KIND_STRING:
 				
-			} else if(singleDouble != null) {
+				String s = (String) value;
 				
-				v = new DoubleProperty(singleDouble);
-				
-			} else if(multiDouble != null) {
-				
-				multiValue = true;
-				v = new DoubleProperty(multiDouble);
-			
-			} else if(singleFloat != null) {
-				
-				v = new FloatProperty(singleFloat);
-				
-			} else if(multiFloat != null) {
-				
-				multiValue = true;
-				v = new FloatProperty(multiFloat);
-				
-			} else if(singleGeo != null) {
-				
-				v = GeoLocationProperty.fromRDFString(singleGeo);
-				
-			} else if(multiGeo != null) {
-				
-				multiValue = true;
-				v = GeoLocationProperty.fromRDFString(multiGeo);
-				
-			} else if(singleInteger != null) {
-				
-				v = new IntegerProperty(singleInteger);
-				
-			} else if(multiInteger != null) {
-				
-				multiValue = true;
-				v = new IntegerProperty(multiInteger);
-				
-			} else if(singleLong != null) {
-				
-				v = new LongProperty(singleLong);
-				
-			} else if(multiLong != null) {
-				
-				multiValue = true;
-				v = new LongProperty(multiLong);
-				
-			} else if(singleOther != null) {
-				
-				if(FULL_STRING_LABEL.equals(singleOther)) {
+				if(FULL_STRING_LABEL.equals(s)) {
 					
 					if(resolveFullText) {
 						
-						singleOther = getString(rs, row, COLUMN_VALUE_FULL_TEXT);
-						
-						v = OtherProperty.fromRDFString(singleOther);
+						s = rs != null ? rs.getString(columnsIndex.fullText) : getString(row, COLUMN_VALUE_FULL_TEXT);
 						
 					} else {
 						
 						resolver.putGraphObjectPropertyToGet(segmentTable, uri, propertyName);
 						
-					}
-					
-				} else {
-					
-					v = OtherProperty.fromRDFString(singleOther);
-					
-				}
-				
-
-			} else if(multiOther != null) {
-				
-				if(FULL_STRING_LABEL.equals(multiOther)) {
-					
-					if(resolveFullText) {
-						
-						multiOther = getString(rs, row, COLUMN_VALUE_FULL_TEXT);
-						
-						multiValue = true;
-						v = OtherProperty.fromRDFString(multiOther);
-						
-					} else {
-
-						resolver.putGraphObjectPropertyToGet(segmentTable, uri, propertyName);
+						s = null;
 						
 					}
 					
-				} else {
-					
-					multiValue = true;
-					v = OtherProperty.fromRDFString(multiOther);
-					
 				}
 				
-				
-			} else if(singleString != null) {
-				
-				if(FULL_STRING_LABEL.equals(singleString)) {
-					
-					if(resolveFullText) {
-						
-						singleString = getString(rs, row, COLUMN_VALUE_FULL_TEXT);
-						
-						v = new StringProperty(singleString);
-						
-					} else {
-						
-						resolver.putGraphObjectPropertyToGet(segmentTable, uri, propertyName);
-						
-					}
-					
-				} else {
-					
-					v = new StringProperty(singleString);
-					
+				if(s != null) {
+					v = valueKind == KIND_OTHER ? OtherProperty.fromRDFString(s) : new StringProperty(s);
 				}
 				
+				break;
 				
-			} else if(multiString != null) {
-
-				if(FULL_STRING_LABEL.equals(multiString)) {
-					
-					if(resolveFullText) {
-						
-						multiString= getString(rs, row, COLUMN_VALUE_FULL_TEXT);
-						
-						multiValue = true;
-						
-						v = new StringProperty(multiString);
-						
-					} else {
-						
-						resolver.putGraphObjectPropertyToGet(segmentTable, uri, propertyName);
-						
-					}
-					
-				} else {
-					
-					multiValue = true;
-					
-					v = new StringProperty(multiString);
-					
-				}
-				
-			} else if(singleTruth != null) {
-				
-				v = new TruthProperty(Truth.fromInteger(singleTruth));
-				
-			} else if(multiTruth != null) {
-				
-				multiValue = true;
-				v = new TruthProperty(Truth.fromInteger(multiTruth));
-				
-			} else if(singleURI != null) {
-				
-				v = new URIProperty(singleURI);
+			case KIND_TRUTH:
+				v = new TruthProperty(Truth.fromInteger((Integer) value));
+				break;
 				
-			} else if(multiURI != null) {
-				
-				multiValue = true;
-				v = new URIProperty(multiURI);
-				
-			} else {
-				
-				throw new RuntimeException("No value in sql row");
+			case KIND_URI:
+				v = new URIProperty((String) value);
+				break;
 				
 			}
 			
@@ -1289,7 +1428,7 @@ CREATE TABLE ${NAME} (
 			if(currentObject.size() > 0) {
 				if(processedURIs.contains(previousURI)) throw new RuntimeException("The stream version query was not sorted by column " + COLUMN_URI + " !");
 				
-				handler.onGraphObject(propsToObject(previousURI, currentObject, true));
+				emitObject(handler, previousURI, currentObject);
 				
 			}
 			handler.onNoMoreObjects();
@@ -1316,99 +1455,190 @@ CREATE TABLE ${NAME} (
 		
 	}
 	
-	private static Integer getInteger(ResultSet rs, Map<String, Object> row, String column) throws SQLException {
-		if(rs != null) {
-			Number n = (Number) rs.getObject(column);
-			if(n != null) return n.intValue();
-			return null;
-		} else {
-			Object v = row.get(column);
-			if(v == null) return null;
-			if(v instanceof Number) {
-				return ((Number)v).intValue();
-			} else {
-				throw new RuntimeException("Couldn't convert column `" + column + "` value into integer: " + v);
-			}			
+	/**
+	 * Column positions resolved once per result set from its metadata
+	 */
+	private static class ColumnsIndex {
+		
+		int uri;
+		
+		int name;
+		
+		int external;
+		
+		int fullText;
+		
+		int valueType;
+		
+		int[] values = new int[VALUE_COLUMNS.length];
+		
+		ColumnsIndex(ResultSet rs) throws SQLException {
+			
+			ResultSetMetaData metaData = rs.getMetaData();
+			
+			Map<String, Integer> positions = new HashMap<String, Integer>();
+			
+			for(int i = 1; i <= metaData.getColumnCount(); i++) {
+				String label = metaData.getColumnLabel(i).toLowerCase();
+				if(!positions.containsKey(label)) positions.put(label, i);
+			}
+			
+			uri = position(positions, COLUMN_URI, true);
+			name = position(positions, COLUMN_NAME, true);
+			external = position(positions, COLUMN_EXTERNAL, true);
+			fullText = position(positions, COLUMN_VALUE_FULL_TEXT, false);
+			valueType = position(positions, COLUMN_VALUE_TYPE, false);
+			
+			for(int i = 0; i < VALUE_COLUMNS.length; i++) {
+				values[i] = position(positions, VALUE_COLUMNS[i], false);
+			}
+			
 		}
-	}
-	private static Float getFloat(ResultSet rs, Map<String, Object> row, String column) throws SQLException {
-
-		if(rs != null) {
-			Number n = (Number) rs.getObject(column);
-			if(n != null) return n.floatValue();
-			return null;
-		} else {
-			Object v = row.get(column);
-			if(v == null) return null;
-			if(v instanceof Number) {
-				return ((Number)v).floatValue();
-			} else {
-				throw new RuntimeException("Couldn't convert column `" + column + "` value into float: " + v);
+		
+		private static int position(Map<String, Integer> positions, String column, boolean required) {
+			Integer p = positions.get(column);
+			if(p == null) {
+				if(required) throw new RuntimeException("Column `" + column + "` not found in result set");
+				return 0;
 			}
+			return p.intValue();
 		}
 		
 	}
 	
-	private static Double getDouble(ResultSet rs, Map<String, Object> row, String column) throws SQLException {
-		if(rs != null) {
-			Number n = (Number) rs.getObject(column);
-			if(n != null) return n.doubleValue();
-			return null;
-		} else {
-			
-			Object v = row.get(column);
-			if(v == null) return null;
-			if(v instanceof Number) {
-				return ((Number)v).doubleValue();
-			} else {
-				throw new RuntimeException("Couldn't convert column `" + column + "` value into double: " + v);
-			}
-			
+	private static int readValueType(ResultSet rs, int index) throws SQLException {
+		if(index < 1) return 0;
+		int t = rs.getInt(index);
+		return rs.wasNull() ? 0 : t;
+	}
+	
+	private static Object readValue(ResultSet rs, int index, int kind) throws SQLException {
+		
+		//column not selected
+		if(index < 1) return null;
+		
+		switch(kind) {
+		
+		case KIND_BOOLEAN: {
+			boolean b = rs.getBoolean(index);
+			return rs.wasNull() ? null : b;
+		}
+		
+		case KIND_DATE:
+		case KIND_LONG: {
+			long l = rs.getLong(index);
+			return rs.wasNull() ? null : l;
 		}
+		
+		case KIND_DOUBLE: {
+			double d = rs.getDouble(index);
+			return rs.wasNull() ? null : d;
+		}
+		
+		case KIND_FLOAT: {
+			float f = rs.getFloat(index);
+			return rs.wasNull() ? null : f;
+		}
+		
+		case KIND_INTEGER:
+		case KIND_TRUTH: {
+			int n = rs.getInt(index);
+			return rs.wasNull() ? null : n;
+		}
+		
+		default:
+			return rs.getString(index);
+		
+		}
+		
 	}
-	private static Long getLong(ResultSet rs, Map<String, Object> row, String column) throws SQLException {
-		if(rs != null) {
-			Number n = (Number) rs.getObject(column);
-			if(n != null) return n.longValue();
-			return null;
-		} else {
+	
+	private static Object readValue(Map<String, Object> row, int valueColumn) {
+		
+		String column = VALUE_COLUMNS[valueColumn];
+		
+		switch(valueColumn / 2) {
+		
+		case KIND_BOOLEAN: {
+			Object b = row.get(column);
+			if(b == null) return null;
+			if(b instanceof Boolean) return b;
+			if(b instanceof Integer) return ((Integer)b).intValue() > 0;
+			throw new RuntimeException("Unexpected boolean column value: " + b.getClass());
+		}
+		
+		case KIND_DATE:
+		case KIND_LONG:
+			return getLong(row, column);
+		
+		case KIND_DOUBLE:
+			return getDouble(row, column);
+		
+		case KIND_FLOAT:
+			return getFloat(row, column);
 			
-			Object v = row.get(column);
-			if(v == null) return null;
-			if(v instanceof Number) {
-				return ((Number)v).longValue();
-			} else {
-				throw new RuntimeException("Couldn't convert column `" + column + "` value into long: " + v);
-			}
+		case KIND_INTEGER:
+		case KIND_TRUTH:
+			return getInteger(row, column);
 			
+		default:
+			return getString(row, column);
+		
 		}
+		
 	}
-	private static Object getObject(ResultSet rs, Map<String, Object> row, String column) throws SQLException {
-
-		if(rs != null) {
-			return rs.getObject(column);
+	
+	private static Integer getInteger(Map<String, Object> row, String column) {
+		Object v = row.get(column);
+		if(v == null) return null;
+		if(v instanceof Number) {
+			return ((Number)v).intValue();
 		} else {
-			return row.get(column);
+			throw new RuntimeException("Couldn't convert column `" + column + "` value into integer: " + v);
+		}			
+	}
+	
+	private static Float getFloat(Map<String, Object> row, String column) {
+		Object v = row.get(column);
+		if(v == null) return null;
+		if(v instanceof Number) {
+			return ((Number)v).floatValue();
+		} else {
+			throw new RuntimeException("Couldn't convert column `" + column + "` value into float: " + v);
 		}
-		
 	}
-	private static boolean getBoolean(ResultSet rs, Map<String, Object> row, String column) throws SQLException {
-		if(rs != null) {
-			return rs.getBoolean(column);
+	
+	private static Double getDouble(Map<String, Object> row, String column) {
+		Object v = row.get(column);
+		if(v == null) return null;
+		if(v instanceof Number) {
+			return ((Number)v).doubleValue();
 		} else {
-			Object obj = row.get(column);
-			if(obj == null) return false;
-			if(!(obj instanceof Boolean)) throw new RuntimeException("Column `" + column + "` value couldn't be mapped to boolean: " + obj);
-			return ((Boolean)obj).booleanValue();
+			throw new RuntimeException("Couldn't convert column `" + column + "` value into double: " + v);
 		}
 	}
-	private static String getString(ResultSet rs, Map<String, Object> row, String column) throws SQLException {
-		if(rs != null) {
-			return rs.getString(column);
+	
+	private static Long getLong(Map<String, Object> row, String column) {
+		Object v = row.get(column);
+		if(v == null) return null;
+		if(v instanceof Number) {
+			return ((Number)v).longValue();
 		} else {
-			return (String) row.get(column);
+			throw new RuntimeException("Couldn't convert column `" + column + "` value into long: " + v);
 		}
 	}
+	
+	private static boolean getBoolean(Map<String, Object> row, String column) {
+		Object obj = row.get(column);
+		if(obj == null) return false;
+		if(!(obj instanceof Boolean)) throw new RuntimeException("Column `" + column + "` value couldn't be mapped to boolean: " + obj);
+		return ((Boolean)obj).booleanValue();
+	}
+	
+	private static String getString(Map<String, Object> row, String column) {
+		return (String) row.get(column);
+	}
+	
 	@SuppressWarnings("rawtypes")
 	private static GraphObject propsToObject(String URI, Map<String, WrappedProperty> props, boolean ignoreBrokenDataErrors) {
 		
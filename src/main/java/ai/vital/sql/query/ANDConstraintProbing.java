@@ -14,6 +14,8 @@ import org.slf4j.LoggerFactory;
 import ai.vital.sql.connector.VitalSqlDataSource;
 import ai.vital.sql.model.SegmentTable;
 import ai.vital.sql.query.SQLSelectQueryHandler.CoreSelectQuery;
+import ai.vital.sql.stats.PropertyStatistics;
+import ai.vital.sql.stats.TableStatistics;
 import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.query.QueryContainerType;
 import ai.vital.vitalservice.query.QueryStats;
@@ -22,6 +24,8 @@ import ai.vital.vitalservice.query.VitalGraphCriteriaContainer;
 import ai.vital.vitalservice.query.VitalGraphQueryElement;
 import ai.vital.vitalservice.query.VitalGraphQueryPropertyCriterion;
 import ai.vital.vitalservice.query.VitalGraphQueryPropertyCriterion.Comparator;
+import ai.vital.vitalservice.query.VitalGraphQueryTypeCriterion;
+import ai.vital.vitalsigns.VitalSigns;
 
 /**
  * An optimization that skips segments for AND containers
@@ -100,6 +104,17 @@ public class ANDConstraintProbing {
 		
 		String tableName = SQLUtils.escapeID(handler.connection, segmentTable.tableName);
 		
+		TableStatistics stats = dataSource.getSegmentStatistics().getCached(segmentTable.tableName);
+		
+		ProbeCache probeCache = dataSource.getProbeCache();
+		
+		//all probes not known to pass are combined into a single statement, each branch selects its index if it passes
+		StringBuilder sql = new StringBuilder();
+		
+		List<Object> substitutes = new ArrayList<Object>();
+		
+		List<String> keys = new ArrayList<String>();
+		
 		int c = 0;
 		
 		//TODO consolidate range into BETWEEN
@@ -107,61 +122,121 @@ public class ANDConstraintProbing {
 			
 			c++;
 			
+			if(stats != null && isPresent(stats, pc)) {
+				if(log.isDebugEnabled()) log.debug("Probe test {} skipped, present in segment statistics", c);
+				continue;
+			}
+			
 			CoreSelectQuery x = new CoreSelectQuery();
 			x.tableName = tableName;
+			x.objectsTableName = handler.getObjectsTableName(segmentTable);
 			handler.processCriterion(x, null, pc, "", true, true, null, true);
 			//OFFSET 0
 			x.queryTemplate.append(" LIMIT 1 " + ( !dataSource.isSparkSQL() ? " OFFSET 0" : ""));
 			
+			String key = x.queryTemplate.toString() + " " + x.substitutes;
 			
-			PreparedStatement stmt = null;
+			if(probeCache.isPassed(segmentTable.tableName, key)) {
+				if(log.isDebugEnabled()) log.debug("Probe test {} skipped, passed before", c);
+				continue;
+			}
 			
-			ResultSet rs = null;
+			if(keys.size() > 0) {
+				sql.append(" UNION ALL ");
+			}
 			
+			sql.append("SELECT " + keys.size() + " AS probe FROM ( " + x.queryTemplate + " ) AS P" + keys.size());
 			
-			try {
-				
-				
-				stmt = handler.connection.prepareStatement(x.queryTemplate.toString());
-				
-				for(int i = 0; i < x.substitutes.size(); i++) {
-					stmt.setObject(i+1, x.substitutes.get(i));
-				}
-				
-				
-				if(log.isDebugEnabled()) {
-					log.debug("Probe test {}, sql: {}", c, stmt);
-				}
-				
-				long start = System.currentTimeMillis();
-				
-				rs = stmt.executeQuery();
-				
-				if(queryStats != null) {
-					long time = queryStats.addProbingTimeFrom(start);
-					if(queryStats.getQueriesTimes() != null) queryStats.getQueriesTimes().add(new QueryTime("PROBE: " + pc.toString(), stmt.toString(), time));
-				}
-				
-				if(log.isDebugEnabled()) {
-					log.debug("Probe test time: {}ms", System.currentTimeMillis() - start);
-				}
-				
-				if(!rs.next()) {
-
-					if(log.isDebugEnabled()) {
-						log.debug("Probe test {} returned 0 results, breaking", c);
-					}
-					
-					return false;
-				}
-				
-			} finally {
-				SQLUtils.closeQuietly(stmt, rs);
+			substitutes.addAll(x.substitutes);
+			
+			keys.add(key);
+			
+		}
+		
+		if(keys.size() == 0) {
+			return true;
+		}
+		
+		Set<Integer> passed = new HashSet<Integer>();
+		
+		PreparedStatement stmt = null;
+		
+		ResultSet rs = null;
+		
+		try {
+			
+			stmt = handler.connection.prepareStatement(sql.toString());
+			
+			for(int i = 0; i < substitutes.size(); i++) {
+				stmt.setObject(i+1, substitutes.get(i));
+			}
+			
+			if(log.isDebugEnabled()) {
+				log.debug("Probe tests {}, sql: {}", keys.size(), stmt);
+			}
+			
+			long start = System.currentTimeMillis();
+			
+			rs = stmt.executeQuery();
+			
+			while(rs.next()) {
+				passed.add(rs.getInt(1));
+			}
+			
+			if(queryStats != null) {
+				long time = queryStats.addProbingTimeFrom(start);
+				if(queryStats.getQueriesTimes() != null) queryStats.getQueriesTimes().add(new QueryTime("PROBE: " + keys.size() + " constraint(s)", stmt.toString(), time));
+			}
+			
+			if(log.isDebugEnabled()) {
+				log.debug("Probe tests time: {}ms", System.currentTimeMillis() - start);
+			}
+			
+		} finally {
+			SQLUtils.closeQuietly(stmt, rs);
+		}
+		
+		for(Integer i : passed) {
+			probeCache.putPassed(segmentTable.tableName, keys.get(i));
+		}
+		
+		if(passed.size() < keys.size()) {
+			
+			if(log.isDebugEnabled()) {
+				log.debug("{} of {} probe tests returned 0 results, breaking", keys.size() - passed.size(), keys.size());
 			}
 			
+			return false;
+			
 		}
 		
 		return true;
 	}
 	
+	/**
+	 * Statistics may be outdated: only objects they list are assumed to exist, writes since the collection
+	 * may only make a probe pass that they would fail
+	 */
+	private static boolean isPresent(TableStatistics stats, VitalGraphQueryPropertyCriterion pc) {
+		
+		if(pc instanceof VitalGraphQueryTypeCriterion) {
+			
+			VitalGraphQueryTypeCriterion t = (VitalGraphQueryTypeCriterion) pc;
+			
+			if(pc.getComparator() != Comparator.EQ || t.isExpandTypes() || t.getType() == null) return false;
+			
+			Long objects = stats.types.get(VitalSigns.get().getClassesRegistry().getClassURI(t.getType()));
+			
+			return objects != null && objects.longValue() > 0L;
+			
+		}
+		
+		if(pc.getPropertyURI() == null || VitalGraphQueryPropertyCriterion.URI.equals(pc.getPropertyURI())) return false;
+		
+		PropertyStatistics ps = stats.properties.get(pc.getPropertyURI());
+		
+		return ps != null && ps.rows > 0L;
+		
+	}
+	
 }
@@ -0,0 +1,195 @@
+package ai.vital.sql.query;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ai.vital.sql.stats.PropertyStatistics;
+import ai.vital.sql.stats.TableStatistics;
+import ai.vital.vitalservice.query.VitalGraphQueryPropertyCriterion;
+import ai.vital.vitalservice.query.VitalGraphQueryPropertyCriterion.Comparator;
+import ai.vital.vitalservice.query.VitalGraphQueryTypeCriterion;
+import ai.vital.vitalsigns.VitalSigns;
+import ai.vital.vitalsigns.model.GraphObject;
+import ai.vital.vitalsigns.model.property.IProperty;
+
+/**
+ * Orders the criteria of an AND container by the estimated number of matching objects, so that
+ * the most selective criterion is evaluated first and restricts the following ones.
+ * Negated criteria are evaluated last, criteria that cannot be estimated keep their relative order.
+ */
+public class CriteriaPlanner {
+
+	public static void order(List<VitalGraphQueryPropertyCriterion> criteria, TableStatistics stats) {
+
+		final Map<VitalGraphQueryPropertyCriterion, Long> estimates = new IdentityHashMap<VitalGraphQueryPropertyCriterion, Long>();
+
+		for(VitalGraphQueryPropertyCriterion criterion : criteria) {
+			estimates.put(criterion, SQLSingleSegmentQueryHandler.isNegated(criterion) ? Long.MAX_VALUE : estimate(criterion, stats));
+		}
+
+		//stable sort
+		Collections.sort(criteria, new java.util.Comparator<VitalGraphQueryPropertyCriterion>() {
+
+			@Override
+			public int compare(VitalGraphQueryPropertyCriterion c1, VitalGraphQueryPropertyCriterion c2) {
+				return estimates.get(c1).compareTo(estimates.get(c2));
+			}
+
+		});
+
+	}
+
+	/**
+	 * @return estimated objects matching the positive criterion
+	 */
+	static long estimate(VitalGraphQueryPropertyCriterion criterion, TableStatistics stats) {
+
+		if(criterion == SQLSingleSegmentQueryHandler.EMPTY_CRITERION) return stats.objects;
+
+		Comparator comparator = criterion.getComparator();
+
+		Object value = criterion.getValue();
+
+		if(value instanceof IProperty) value = ((IProperty) value).rawValue();
+
+		if(criterion instanceof VitalGraphQueryTypeCriterion) {
+
+			VitalGraphQueryTypeCriterion t = (VitalGraphQueryTypeCriterion) criterion;
+
+			if(comparator == Comparator.EQ && !t.isExpandTypes()) {
+				return typeObjects(stats, t.getType());
+			}
+
+			if(comparator == Comparator.ONE_OF && value instanceof Collection) {
+				long sum = 0L;
+				for(Object v : (Collection<?>) value) {
+					sum += typeObjects(stats, v);
+				}
+				return sum;
+			}
+
+			return stats.objects;
+
+		}
+
+		if(VitalGraphQueryPropertyCriterion.URI.equals(criterion.getPropertyURI())) {
+
+			if(comparator == Comparator.EQ) return 1L;
+
+			if(comparator == Comparator.ONE_OF && value instanceof Collection) return ((Collection<?>) value).size();
+
+			return stats.objects;
+
+		}
+
+		PropertyStatistics ps = stats.properties.get(criterion.getPropertyURI());
+
+		//no objects have the property
+		if(ps == null) return 0L;
+
+		if(comparator == Comparator.EQ) {
+			
+			Long top = ps.topValues != null && value != null ? ps.topValues.get(value.toString()) : null;
+			
+			return top != null ? top.longValue() : perValue(ps);
+			
+		}
+
+		if(comparator == Comparator.ONE_OF && value instanceof Collection) {
+			return Math.min(ps.objects, ((Collection<?>) value).size() * perValue(ps));
+		}
+
+		if( ( comparator == Comparator.GT || comparator == Comparator.GE || comparator == Comparator.LT || comparator == Comparator.LE )
+				&& ps.min != null && ps.max != null && ps.max.doubleValue() > ps.min.doubleValue() ) {
+
+			Double v = null;
+
+			if(value instanceof Number) {
+				v = ((Number) value).doubleValue();
+			} else if(value instanceof Date) {
+				v = (double) ((Date) value).getTime();
+			}
+
+			if(v != null) {
+
+				double fraction = belowFraction(ps, v.doubleValue());
+
+				if(comparator == Comparator.GT || comparator == Comparator.GE) {
+					fraction = 1d - fraction;
+				}
+
+				fraction = Math.max(0d, Math.min(1d, fraction));
+
+				return Math.max(1L, (long) Math.ceil(ps.objects * fraction));
+
+			}
+
+		}
+
+		return ps.objects;
+
+	}
+
+	/**
+	 * @return fraction of the property values lower than v, linear within a histogram bucket
+	 */
+	private static double belowFraction(PropertyStatistics ps, double v) {
+		
+		double position = (v - ps.min.doubleValue()) / (ps.max.doubleValue() - ps.min.doubleValue());
+		
+		if(ps.histogram == null || position <= 0d || position >= 1d) return position;
+		
+		long total = 0L;
+		
+		for(long c : ps.histogram) {
+			total += c;
+		}
+		
+		if(total == 0L) return position;
+		
+		double bucket = position * ps.histogram.length;
+		
+		int full = (int) bucket;
+		
+		double below = 0d;
+		
+		for(int i = 0; i < full; i++) {
+			below += ps.histogram[i];
+		}
+		
+		below += ps.histogram[full] * (bucket - full);
+		
+		return below / total;
+		
+	}
+	
+	private static long perValue(PropertyStatistics ps) {
+
+		if(ps.distinctValues == null || ps.distinctValues.longValue() < 1) return ps.objects;
+
+		return Math.max(1L, ps.objects / ps.distinctValues.longValue());
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private static long typeObjects(TableStatistics stats, Object type) {
+
+		String typeURI = null;
+
+		if(type instanceof Class) {
+			typeURI = VitalSigns.get().getClassesRegistry().getClassURI((Class<? extends GraphObject>) type);
+		} else if(type != null) {
+			typeURI = type.toString();
+		}
+
+		Long c = typeURI != null ? stats.types.get(typeURI) : null;
+
+		return c != null ? c.longValue() : 0L;
+
+	}
+
+}
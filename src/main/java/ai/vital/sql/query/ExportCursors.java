@@ -0,0 +1,121 @@
+package ai.vital.sql.query;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ai.vital.sql.connector.VitalSqlDataSource;
+
+/**
+ * Per segment table export query state kept for a configured time (exportCursorsTTL seconds):
+ * the objects count and the last URI of each returned page keyed by the offset following it,
+ * so that a query for the next page continues with uri &gt; lastURI instead of skipping offset rows.
+ * Writes through this process invalidate the table state, writes of other processes are only
+ * visible after it expires.
+ */
+public class ExportCursors {
+
+	//max cached page boundaries per table
+	static int MAX_BOUNDARIES = 1000;
+
+	private static class TableState {
+
+		long created = System.currentTimeMillis();
+
+		volatile Integer total = null;
+
+		//offset -> last URI of the page ending before it
+		Map<Integer, String> boundaries = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<Integer, String> eldest) {
+				return size() > MAX_BOUNDARIES;
+			}
+
+		};
+
+	}
+
+	private VitalSqlDataSource dataSource;
+
+	private final ConcurrentHashMap<String, TableState> tables = new ConcurrentHashMap<String, TableState>();
+
+	public ExportCursors(VitalSqlDataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * @return cached objects count, null if not known
+	 */
+	public Integer getTotal(String tableName) {
+		TableState state = getState(tableName, false);
+		return state != null ? state.total : null;
+	}
+
+	public void putTotal(String tableName, int total) {
+		TableState state = getState(tableName, true);
+		if(state != null) state.total = total;
+	}
+
+	/**
+	 * @return last URI of the page ending before the offset, null if not known
+	 */
+	public String getBoundary(String tableName, int offset) {
+
+		TableState state = getState(tableName, false);
+
+		if(state == null) return null;
+
+		synchronized (state.boundaries) {
+			return state.boundaries.get(offset);
+		}
+
+	}
+
+	public void putBoundary(String tableName, int offset, String lastURI) {
+
+		TableState state = getState(tableName, true);
+
+		if(state == null) return;
+
+		synchronized (state.boundaries) {
+			state.boundaries.put(offset, lastURI);
+		}
+
+	}
+
+	public void invalidate(String tableName) {
+		tables.remove(tableName);
+	}
+
+	public void invalidateAll() {
+		tables.clear();
+	}
+
+	private TableState getState(String tableName, boolean create) {
+
+		Integer ttl = dataSource.getConfig().getExportCursorsTTL();
+
+		if(ttl == null || ttl.intValue() <= 0) return null;
+
+		TableState state = tables.get(tableName);
+
+		if(state != null && System.currentTimeMillis() - state.created > ttl.intValue() * 1000L) {
+			tables.remove(tableName, state);
+			state = null;
+		}
+
+		if(state == null && create) {
+			TableState n = new TableState();
+			state = tables.putIfAbsent(tableName, n);
+			if(state == null) state = n;
+		}
+
+		return state;
+
+	}
+
+}
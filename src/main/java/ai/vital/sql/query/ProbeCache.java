@@ -0,0 +1,104 @@
+package ai.vital.sql.query;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ai.vital.sql.connector.VitalSqlDataSource;
+
+/**
+ * Per segment table cache of passed AND constraint probes kept for a configured time (probeCacheTTL seconds).
+ * Only passed probes are cached, an outdated entry can only make a container evaluated that returns no results.
+ * Writes through this process invalidate the table probes, writes of other processes are only
+ * visible after they expire.
+ */
+public class ProbeCache {
+
+	//max cached probes per table
+	static int MAX_PROBES = 1000;
+
+	private static class TableProbes {
+
+		long created = System.currentTimeMillis();
+
+		Map<String, Boolean> passed = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<String, Boolean> eldest) {
+				return size() > MAX_PROBES;
+			}
+
+		};
+
+	}
+
+	private VitalSqlDataSource dataSource;
+
+	private final ConcurrentHashMap<String, TableProbes> tables = new ConcurrentHashMap<String, TableProbes>();
+
+	public ProbeCache(VitalSqlDataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * @param probeKey probe sql and parameters
+	 */
+	public boolean isPassed(String tableName, String probeKey) {
+
+		TableProbes probes = getProbes(tableName, false);
+
+		if(probes == null) return false;
+
+		synchronized (probes.passed) {
+			return probes.passed.containsKey(probeKey);
+		}
+
+	}
+
+	public void putPassed(String tableName, String probeKey) {
+
+		TableProbes probes = getProbes(tableName, true);
+
+		if(probes == null) return;
+
+		synchronized (probes.passed) {
+			probes.passed.put(probeKey, Boolean.TRUE);
+		}
+
+	}
+
+	public void invalidate(String tableName) {
+		tables.remove(tableName);
+	}
+
+	public void invalidateAll() {
+		tables.clear();
+	}
+
+	private TableProbes getProbes(String tableName, boolean create) {
+
+		Integer ttl = dataSource.getConfig().getProbeCacheTTL();
+
+		if(ttl == null || ttl.intValue() <= 0) return null;
+
+		TableProbes probes = tables.get(tableName);
+
+		if(probes != null && System.currentTimeMillis() - probes.created > ttl.intValue() * 1000L) {
+			tables.remove(tableName, probes);
+			probes = null;
+		}
+
+		if(probes == null && create) {
+			TableProbes n = new TableProbes();
+			probes = tables.putIfAbsent(tableName, n);
+			if(probes == null) probes = n;
+		}
+
+		return probes;
+
+	}
+
+}
@@ -43,7 +43,7 @@ public class SQLGraphObjectResolver implements GraphObjectResolver {
 		return input.get(graphObject.getURI());
 	}
 
-	public void putGraphObjectPropertyToGet(SegmentTable table, String graphObjectURI, String propertyURI) {
+	public synchronized void putGraphObjectPropertyToGet(SegmentTable table, String graphObjectURI, String propertyURI) {
 		
 		if(disabled) return;
 		
@@ -69,7 +69,7 @@ public class SQLGraphObjectResolver implements GraphObjectResolver {
 		
 	
 	@Override
-	public Map<String, GraphObject> resolveGraphObjects(Map<String, GraphObject> m) {
+	public synchronized Map<String, GraphObject> resolveGraphObjects(Map<String, GraphObject> m) {
 		
 		if(disabled) throw new RuntimeException("This resolver is disabled");
 		
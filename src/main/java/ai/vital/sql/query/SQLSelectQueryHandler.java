@@ -619,6 +619,7 @@ public class SQLSelectQueryHandler {
 		
 		CoreSelectQuery c = new CoreSelectQuery();
 		c.tableName = tableName;
+		c.objectsTableName = getObjectsTableName(table);
 		c.queryTemplate = outputQuery;
 		
 
@@ -666,10 +667,7 @@ public class SQLSelectQueryHandler {
 					//no need to select it
 				} else {
 					
-					sortString += (
-						", ( SELECT " + info.singleValueColumn + " FROM " + tableName + " AS X WHERE X." + COLUMN_URI + " = " + tableAlias + "." + COLUMN_URI + " AND " + COLUMN_NAME + " = ? ) AS " + label
-					);
-					c.substitutes.add(pURI);
+					sortString += sortValueColumn(c, tableName, tableAlias, info.singleValueColumn, pURI, label);
 					
 				}
 				
@@ -865,6 +863,30 @@ public class SQLSelectQueryHandler {
 
 		String tableName;
 		
+		//objects header table, null if not available
+		String objectsTableName;
+		
+		//single criterion queries: condition ANDed with the criterion condition, null if none
+		String uriRestriction;
+		
+		List<Object> uriRestrictionValues = new ArrayList<Object>();
+		
+	}
+	
+	/**
+	 * @param valueExpression value column or an expression of it
+	 * @return sort property value subquery selected as label, the property URI is added to the substitutes
+	 */
+	protected static String sortValueColumn(CoreSelectQuery c, String tableName, String tableAlias, String valueExpression, String propertyURI, String label) {
+		
+		c.substitutes.add(propertyURI);
+		
+		return ", ( SELECT " + valueExpression + " FROM " + tableName + " AS X WHERE X." + COLUMN_URI + " = " + tableAlias + "." + COLUMN_URI + " AND " + COLUMN_NAME + " = ? ) AS " + label;
+		
+	}
+	
+	protected String getObjectsTableName(SegmentTable table) throws SQLException {
+		return table.objectsTableReady ? SQLUtils.escapeID(connection, table.getObjectsTableName()) : null;
 	}
 	
 	protected CoreSelectQuery prepareCoreQuery(VitalGraphCriteriaContainer criteriaContainer, SegmentTable table, String indent, boolean countQuery) throws SQLException {
@@ -913,10 +935,7 @@ public class SQLSelectQueryHandler {
 					//no need to select it
 				} else {
 					
-					sortString += (
-						", ( SELECT " + info.singleValueColumn + " FROM " + tableName + " AS X WHERE X." + COLUMN_URI + " = " + tableAlias + "." + COLUMN_URI + " AND " + COLUMN_NAME + " = ? ) AS " + label
-					);
-					c.substitutes.add(pURI);
+					sortString += sortValueColumn(c, tableName, tableAlias, info.singleValueColumn, pURI, label);
 					
 				}
 				
@@ -961,6 +980,7 @@ public class SQLSelectQueryHandler {
 		
 		c.queryTemplate.append("SELECT " + uriTableNamePart + sortString + " FROM " + tableName + " AS " + tableAlias + " WHERE ");
 		c.tableName = tableName;
+		c.objectsTableName = getObjectsTableName(table);
 		processContainer(c, null, criteriaContainer, indent, true);
 		
 		return c;
@@ -1034,6 +1054,23 @@ public class SQLSelectQueryHandler {
 		class2Info.put(URIProperty.class, new PropertyInfo(COLUMN_VALUE_URI, COLUMN_VALUE_URI_MULTIVALUE, new Class[]{String.class}, 
 				new Comparator[]{Comparator.EXISTS, Comparator.EQ, Comparator.NOT_EXISTS, Comparator.NE, Comparator.ONE_OF, Comparator.NONE_OF}));
 	}
+	
+	/**
+	 * @return the value column the property values are stored in
+	 */
+	public static String getValueColumn(String propertyURI) {
+		
+		PropertyMetadata pm = VitalSigns.get().getPropertiesRegistry().getProperty(propertyURI);
+		
+		if(pm == null) throw new RuntimeException("Property not found in VitalSigns: " + propertyURI);
+		
+		PropertyInfo info = class2Info.get(pm.getBaseClass());
+		
+		if(info == null) throw new RuntimeException("Unsupported property type: " + pm.getBaseClass().getCanonicalName());
+		
+		return pm.isMultipleValues() ? info.multiValueColumn : info.singleValueColumn;
+		
+	}
 
 	void processCriterion(CoreSelectQuery c,
 			VitalGraphCriteriaContainer parentContainer,
@@ -1355,14 +1392,27 @@ public class SQLSelectQueryHandler {
 		
 		}
 		
+		//type, channel and timestamp only criteria are answered with objects header table
+		String fromTable = c.tableName;
+		
+		if(c.objectsTableName != null && ( el instanceof VitalGraphQueryTypeCriterion || ( el == SQLSingleSegmentQueryHandler.EMPTY_CRITERION && typePropTypes != null ) ) ) {
+			fromTable = c.objectsTableName;
+		}
+		
 		//this is common
 		if(singleCriterionQueries) {
 			
-			c.queryTemplate.append("SELECT DISTINCT " + COLUMN_URI + " FROM " + c.tableName + " WHERE ");
+			c.queryTemplate.append("SELECT DISTINCT " + COLUMN_URI + " FROM " + fromTable + " WHERE ");
+			
+			//the criterion condition may be a disjunction
+			if(c.uriRestriction != null) {
+				c.queryTemplate.append(c.uriRestriction).append(" AND ( ");
+				c.substitutes.addAll(c.uriRestrictionValues);
+			}
 			
 		} else {
 			
-			c.queryTemplate.append(COLUMN_URI).append((notIn ? " NOT" : "") + " IN ( ").append("SELECT " + COLUMN_URI + " FROM " + c.tableName + " WHERE ");
+			c.queryTemplate.append(COLUMN_URI).append((notIn ? " NOT" : "") + " IN ( ").append("SELECT " + COLUMN_URI + " FROM " + fromTable + " WHERE ");
 			
 		}
 		
@@ -1537,6 +1587,8 @@ public class SQLSelectQueryHandler {
 		
 		if(singleCriterionQueries) {
 			
+			if(c.uriRestriction != null) c.queryTemplate.append(" )");
+			
 		} else {
 			
 			c.queryTemplate.append(")");
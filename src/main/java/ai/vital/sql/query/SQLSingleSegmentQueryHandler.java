@@ -1,9 +1,23 @@
 package ai.vital.sql.query;
 
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_NAME;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_URI;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_TSTAMP;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_DATE;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_DOUBLE;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_FLOAT;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_GEOLOCATION;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_INTEGER;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_LONG;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_OTHER;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_STRING;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_URI;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -21,6 +35,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections.buffer.PriorityBuffer;
 import org.slf4j.Logger;
@@ -30,6 +49,8 @@ import ai.vital.sql.connector.VitalSqlDataSource;
 import ai.vital.sql.dao.CoreOperations;
 import ai.vital.sql.model.SegmentTable;
 import ai.vital.sql.query.VitalTypeANDConstraintOptimization.TypeANDResponse;
+import ai.vital.sql.schemas.SqlDialect;
+import ai.vital.sql.stats.TableStatistics;
 import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.VitalStatus;
 import ai.vital.vitalservice.query.AggregationType;
@@ -61,6 +82,9 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 	private final static Logger log = LoggerFactory.getLogger(SQLSingleSegmentQueryHandler.class);
 	
 	private SQLGraphObjectResolver resolver;
+	
+	//unprocessed query, parallel segment handlers are created from it
+	private VitalSelectQuery originalQuery;
 
 	private static class SingleContainerResults {
 		Set<String> uris = null;
@@ -69,9 +93,19 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 	
 	protected final static VitalGraphQueryPropertyCriterion EMPTY_CRITERION = new VitalGraphQueryPropertyCriterion();
 	
+	//columns aggregated in sql, dates are stored as epoch millis
+	private final static Set<String> aggregationColumns = new HashSet<String>(Arrays.asList(
+		COLUMN_VALUE_DATE,
+		COLUMN_VALUE_DOUBLE,
+		COLUMN_VALUE_FLOAT,
+		COLUMN_VALUE_INTEGER,
+		COLUMN_VALUE_LONG
+	));
+	
 	public SQLSingleSegmentQueryHandler(VitalSqlDataSource dataSource, Connection connection, VitalSelectQuery sq, List<SegmentTable> segmentTables, SQLGraphObjectResolver resolver, QueryStats queryStats) {
 		super(dataSource, connection, sq, segmentTables, queryStats);
 		this.resolver = resolver;
+		this.originalQuery = sq;
 		
 		if(sq instanceof VitalSelectAggregationQuery) {
 			
@@ -210,6 +244,21 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 	
 	boolean isSingleContainerOptimization = false;
 	
+	//keyset page, see setKeyset
+	boolean keyset = false;
+	String afterURI = null;
+	
+	/**
+	 * Keyset page: the first limit matching URIs greater than afterURI (all if null) in code point order,
+	 * the query offset and sort properties are ignored. A single positive criterion is paged by the database,
+	 * otherwise the matching URIs are filtered and sorted in memory. Total results are not meaningful
+	 * for keyset pages.
+	 */
+	public void setKeyset(String afterURI) {
+		this.keyset = true;
+		this.afterURI = afterURI;
+	}
+	
 	/**
 	 * A newer version that 
 	 * @param segmentTable
@@ -221,7 +270,7 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 		
 		List<VitalSortProperty> sortProperties = sq.getSortProperties();
 		
-		if(agg == null && !distinct) {
+		if(agg == null && !distinct && !keyset) {
 			
 			
 			if( sortProperties.size() == 1) {
@@ -243,6 +292,14 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 			}
 		}
 		
+		if(agg != null && aggregationPropertiesURIs.size() > 0 && Boolean.TRUE.equals(dataSource.getConfig().getAggregationPushdown())) {
+			
+			URIResultList aggregates = selectAggregates(segmentTable);
+			
+			if(aggregates != null) return aggregates;
+			
+		}
+		
 		VitalGraphCriteriaContainer criteriaContainer = sq.getCriteriaContainer();
 		
 		SingleContainerResults results = processSingleContainer(true, segmentTable, criteriaContainer, null);
@@ -429,6 +486,11 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 				
 				rl.setTotalResults(agg_count_distinct);
 				
+				//distinct count is merged from values
+				if(segments.size() > 1) {
+					rl.setDistinctValues(new ArrayList<Object>(uniqueValues));
+				}
+				
 			} else {
 				
 				rl.setTotalResults(agg_count);
@@ -455,7 +517,29 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 			
 			int stop = sq.getOffset() + ( sq.getLimit() > 0 ? sq.getLimit() : 10000);
 			
-			if( sortProperties == null || sortProperties.size() == 0 || indexOrder) {
+			if(keyset) {
+				
+				List<String> l = new ArrayList<String>();
+				
+				for(String u : matchingURIs) {
+					if(afterURI == null || u.compareTo(afterURI) > 0) {
+						l.add(u);
+					}
+				}
+				
+				Collections.sort(l);
+				
+				for(int i = 0; i < Math.min(stop - start, l.size()); i++) {
+					
+					URIResultElement el = new URIResultElement();
+					el.URI = l.get(i);
+					el.segment = segmentTable;
+					el.score = 1d;
+					rl.getResults().add(el);
+					
+				}
+				
+			} else if( sortProperties == null || sortProperties.size() == 0 || indexOrder) {
 				
 				int i = 0;
 				
@@ -554,6 +638,24 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 				
 			} else {
 				
+				Integer pushdownMinResults = dataSource.getConfig().getSortPushdownMinResults();
+				
+				List<URIResultElement> page = null;
+				
+				if(pushdownMinResults != null && pushdownMinResults.intValue() > 0 && matchingURIs.size() >= pushdownMinResults.intValue()) {
+					
+					page = selectSortedPage(segmentTable, sortProperties, start, stop);
+					
+				}
+				
+				if(page != null) {
+					
+					rl.getResults().addAll(page);
+					
+					return rl;
+					
+				}
+				
 				List<String> propsToGet = new ArrayList<String>();
 				
 				for(VitalSortProperty sp : sortProperties) {
@@ -585,6 +687,265 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 		return rl;
 	}
 	
+	/**
+	 * Aggregation functions evaluated by the database over the aggregated property rows
+	 * of the matching objects, one statement per segment. With multiple segments the
+	 * distinct count is merged from the distinct values selected with a second statement.
+	 * @return aggregates or null if the property values cannot be aggregated in SQL
+	 */
+	private URIResultList selectAggregates(SegmentTable segmentTable) throws SQLException {
+		
+		if(aggregationPropertiesURIs.size() != 1) return null;
+		
+		String pURI = aggregationPropertiesURIs.iterator().next();
+		
+		PropertyMetadata pm = VitalSigns.get().getPropertiesRegistry().getProperty(pURI);
+		
+		if(pm == null || pm.isMultipleValues()) return null;
+		
+		PropertyInfo info = class2Info.get(pm.getBaseClass());
+		
+		//only numeric and date values are aggregated, other types are just counted in java
+		if(info == null || !aggregationColumns.contains(info.singleValueColumn)) return null;
+		
+		String tableName = SQLUtils.escapeID(connection, segmentTable.tableName);
+		
+		String tableAlias = "parent";
+		
+		String valueColumn = tableAlias + "." + info.singleValueColumn;
+		
+		boolean countDistinct = sq.isDistinct();
+		
+		String selector = "COUNT(" + valueColumn + "), SUM(" + valueColumn + "), MIN(" + valueColumn + "), MAX(" + valueColumn + ")";
+		
+		if(countDistinct) {
+			selector += ", COUNT(DISTINCT " + valueColumn + ")";
+		}
+		
+		URIResultList rl = new URIResultList();
+		rl.results = new ArrayList<URIResultElement>();
+		rl.offset = sq.getOffset();
+		rl.limit = sq.getLimit();
+		
+		PreparedStatement stmt = null;
+		
+		ResultSet rs = null;
+		
+		try {
+			
+			stmt = prepareAggregatesStatement(tableName, tableAlias, selector, pURI);
+			
+			long start = System.currentTimeMillis();
+			
+			rs = stmt.executeQuery();
+			
+			if(queryStats != null) {
+				long time = queryStats.addDatabaseTimeFrom(start);
+				if(queryStats.getQueriesTimes() != null) queryStats.getQueriesTimes().add(new QueryTime("AGGREGATES: " + sq.debugString(), stmt.toString(), time));
+			}
+			
+			rs.next();
+			
+			rl.agg_count = rs.getInt(1);
+			
+			rl.agg_sum = rs.getDouble(2);
+			
+			double min = rs.getDouble(3);
+			rl.agg_min = rs.wasNull() ? null : min;
+			
+			double max = rs.getDouble(4);
+			rl.agg_max = rs.wasNull() ? null : max;
+			
+			if(countDistinct) {
+				rl.agg_count_distinct = rs.getInt(5);
+			}
+			
+			SQLUtils.closeQuietly(stmt, rs);
+			stmt = null;
+			rs = null;
+			
+			if(countDistinct && segments.size() > 1) {
+				
+				stmt = prepareAggregatesStatement(tableName, tableAlias, "DISTINCT " + valueColumn, pURI);
+				
+				start = System.currentTimeMillis();
+				
+				rs = stmt.executeQuery();
+				
+				if(queryStats != null) {
+					long time = queryStats.addDatabaseTimeFrom(start);
+					if(queryStats.getQueriesTimes() != null) queryStats.getQueriesTimes().add(new QueryTime("DISTINCT VALUES: " + sq.debugString(), stmt.toString(), time));
+				}
+				
+				List<Object> distinctValues = new ArrayList<Object>();
+				
+				while(rs.next()) {
+					distinctValues.add(rs.getObject(1));
+				}
+				
+				rl.setDistinctValues(distinctValues);
+				
+			}
+			
+		} finally {
+			SQLUtils.closeQuietly(stmt, rs);
+		}
+		
+		rl.setTotalResults(countDistinct ? rl.agg_count_distinct : rl.agg_count);
+		
+		return rl;
+		
+	}
+	
+	private PreparedStatement prepareAggregatesStatement(String tableName, String tableAlias, String selector, String propertyURI) throws SQLException {
+		
+		CoreSelectQuery c = new CoreSelectQuery();
+		c.tableName = tableName;
+		
+		c.queryTemplate.append("SELECT " + selector + " FROM " + tableName + " AS " + tableAlias + " WHERE " + tableAlias + "." + COLUMN_NAME + " = ? AND \n");
+		c.substitutes.add(propertyURI);
+		
+		processContainer(c, null, sq.getCriteriaContainer(), "", true);
+		
+		PreparedStatement stmt = connection.prepareStatement(c.queryTemplate.toString());
+		
+		int i = 1;
+		
+		for(Object v : c.substitutes) {
+			stmt.setObject(i, v);
+			i++;
+		}
+		
+		if(log.isDebugEnabled()) log.debug("Aggregates query: {}", stmt);
+		
+		return stmt;
+		
+	}
+	
+	/**
+	 * Top-N variant of the sort: the sort property values are joined to the objects anchor rows
+	 * (each object has exactly one hasOntologyIRI row) filtered with the query criteria, the
+	 * database sorts and returns offset+limit URIs only. Strings and URIs are sorted in binary order,
+	 * the same as the in-memory sort of smaller results.
+	 * @return page or null if the sort properties cannot be sorted in SQL
+	 */
+	private List<URIResultElement> selectSortedPage(SegmentTable segmentTable, List<VitalSortProperty> sortProperties, int start, int stop) throws SQLException {
+		
+		String tableName = SQLUtils.escapeID(connection, segmentTable.tableName);
+		
+		String tableAlias = "parent";
+		
+		SqlDialect dialect = dataSource.getDialect();
+		
+		CoreSelectQuery c = new CoreSelectQuery();
+		c.tableName = tableName;
+		c.objectsTableName = getObjectsTableName(segmentTable);
+		
+		String sortString = "";
+		
+		String order = "";
+		
+		boolean hasURISort = false;
+		
+		for(int i = 0; i < sortProperties.size(); i++) {
+			
+			VitalSortProperty sp = sortProperties.get(i);
+			
+			String pURI = sp.getPropertyURI();
+			
+			if(i > 0) order += ", ";
+			
+			if(VitalGraphQueryPropertyCriterion.URI.equals(pURI) || VitalCoreOntology.URIProp.getURI().equals(pURI)) {
+				
+				hasURISort = true;
+				
+				order += dialect.orderBy(dialect.binaryOrder(tableAlias + "." + COLUMN_URI), !sp.isReverse());
+				
+				continue;
+				
+			}
+			
+			PropertyMetadata pm = VitalSigns.get().getPropertiesRegistry().getProperty(pURI);
+			
+			//index order, relevance, external or multivalue properties
+			if(pm == null || pm.isMultipleValues()) return null;
+			
+			PropertyInfo info = class2Info.get(pm.getBaseClass());
+			
+			//not comparable in sql the same way as in java
+			if(info == null || COLUMN_VALUE_GEOLOCATION.equals(info.singleValueColumn) || COLUMN_VALUE_OTHER.equals(info.singleValueColumn)) return null;
+			
+			String label = "sortValue" + i;
+			
+			boolean text = COLUMN_VALUE_STRING.equals(info.singleValueColumn) || COLUMN_VALUE_URI.equals(info.singleValueColumn);
+			
+			//collated in the subquery, order by an output column label must be a plain label
+			sortString += sortValueColumn(c, tableName, tableAlias, text ? dialect.binaryOrder(info.singleValueColumn) : info.singleValueColumn, pURI, label);
+			
+			order += dialect.orderBy(label, !sp.isReverse());
+			
+		}
+		
+		if(!hasURISort) {
+			order += ", " + dialect.binaryOrder(tableAlias + "." + COLUMN_URI) + " ASC";
+		}
+		
+		c.queryTemplate.append("SELECT " + tableAlias + "." + COLUMN_URI + sortString + " FROM " + tableName + " AS " + tableAlias + " WHERE " + tableAlias + "." + COLUMN_NAME + " = ? AND \n");
+		c.substitutes.add(VitalCoreOntology.hasOntologyIRI.getURI());
+		
+		processContainer(c, null, sq.getCriteriaContainer(), "", true);
+		
+		c.queryTemplate.append(" ORDER BY " + order + " LIMIT " + stop);
+		
+		List<URIResultElement> page = new ArrayList<URIResultElement>();
+		
+		PreparedStatement stmt = null;
+		
+		ResultSet rs = null;
+		
+		try {
+			
+			stmt = connection.prepareStatement(c.queryTemplate.toString());
+			
+			int i = 1;
+			
+			for(Object v : c.substitutes) {
+				stmt.setObject(i, v);
+				i++;
+			}
+			
+			if(log.isDebugEnabled()) log.debug("Sorted page query: {}", stmt);
+			
+			long startTime = System.currentTimeMillis();
+			
+			rs = stmt.executeQuery();
+			
+			if(queryStats != null) {
+				long time = queryStats.addDatabaseTimeFrom(startTime);
+				if(queryStats.getQueriesTimes() != null) queryStats.getQueriesTimes().add(new QueryTime("SORTED PAGE: " + sq.debugString(), stmt.toString(), time));
+			}
+			
+			int index = 0;
+			
+			while(rs.next()) {
+				
+				if(index++ < start) continue;
+				
+				URIResultElement el = new URIResultElement();
+				el.URI = rs.getString(1);
+				el.segment = segmentTable;
+				page.add(el);
+				
+			}
+			
+		} finally {
+			SQLUtils.closeQuietly(stmt, rs);
+		}
+		
+		return page;
+		
+	}
+	
 	private SingleContainerResults processSingleContainer(boolean top, SegmentTable segmentTable, VitalGraphCriteriaContainer thisContainer, Set<String> inputURIs) throws IOException, SQLException  {
 
 		SingleContainerResults scr = new SingleContainerResults();
@@ -593,8 +954,6 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 			return scr;
 		}
 		
-		String tableName = SQLUtils.escapeID(connection, segmentTable.tableName);
-		
 		//process containers first ?
 		Set<String> outputURIs = inputURIs;
 		
@@ -725,11 +1084,30 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 			otherCriteria.add(EMPTY_CRITERION);
 		}
 		
+		if(thisContainer.getType() == QueryContainerType.and && otherCriteria.size() > 1) {
+			
+			TableStatistics stats = dataSource.getSegmentStatistics().get(connection, segmentTable, queryStats);
+			
+			if(stats != null) {
+				CriteriaPlanner.order(otherCriteria, stats);
+				if(log.isDebugEnabled()) log.debug("AND criteria order: {}", otherCriteria);
+			}
+			
+		}
+		
+		Integer restrictionMaxURIs = dataSource.getConfig().getCriteriaRestrictionMaxURIs();
+		
 		for(VitalGraphQueryPropertyCriterion criterion : otherCriteria) {
 			
-			CoreSelectQuery c = new CoreSelectQuery();
-			c.tableName = tableName;
-			processCriterion(c, null, (VitalGraphQueryPropertyCriterion) criterion, "", true, true, typePropTypes, false);
+			//the objects matched so far bound the criterion
+			boolean bounded = thisContainer.getType() == QueryContainerType.and && outputURIs != null && criterion != EMPTY_CRITERION
+					&& restrictionMaxURIs != null && outputURIs.size() <= restrictionMaxURIs.intValue();
+			
+			CoreSelectQuery c = criterionQuery(top, segmentTable, criterion, typePropTypes, bounded ? outputURIs : null);
+			
+			if(bounded && c.substitutes.size() > dataSource.getDialect().getMaxParameters()) {
+				c = criterionQuery(top, segmentTable, criterion, typePropTypes, null);
+			}
 			
 			ResultSet rs = null;
 			
@@ -742,6 +1120,22 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 				
 				String mainQuery = c.queryTemplate.toString();
 				
+				if(top && keyset) {
+					
+					String key = dataSource.getDialect().binaryOrder(COLUMN_URI);
+					
+					//a single positive criterion is the page
+					if(containers.size() == 0 && otherCriteria.size() == 1 && !isNegated(criterion) && sq.getLimit() > 0) {
+						if(key.equals(COLUMN_URI)) {
+							mainQuery += " ORDER BY " + key + " LIMIT " + sq.getLimit();
+						} else {
+							//distinct query can only be ordered by the selected column
+							mainQuery = "SELECT " + COLUMN_URI + " FROM ( " + mainQuery + " ) AS K ORDER BY " + key + " LIMIT " + sq.getLimit();
+						}
+					}
+					
+				}
+				
 				if(top && typePropTypes != null && otherCriteria.size() == 1) {
 					
 					isSingleContainerOptimization = true;
@@ -788,10 +1182,7 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 				}
 				
 				//check if it's a negated query
-				VitalGraphQueryPropertyCriterion.Comparator comparator = criterion.getComparator();
-				
-				if( ( !criterion.isNegative() && ( comparator == VitalGraphQueryPropertyCriterion.Comparator.NOT_CONTAINS || comparator == VitalGraphQueryPropertyCriterion.Comparator.NOT_EXISTS) )  
-						|| (criterion.isNegative() && (comparator == VitalGraphQueryPropertyCriterion.Comparator.CONTAINS || comparator == VitalGraphQueryPropertyCriterion.Comparator.EXISTS))) {
+				if( isNegated(criterion) ) {
 				
 					if(thisContainer.getType() == QueryContainerType.and) {
 						
@@ -1104,6 +1495,57 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 		
 	}
 	
+	/**
+	 * Single criterion query, restricted to the keyset page URIs and to the bound URIs
+	 * @param boundURIs objects matched by the previous AND criteria, null if not bounded
+	 */
+	private CoreSelectQuery criterionQuery(boolean top, SegmentTable segmentTable, VitalGraphQueryPropertyCriterion criterion, TypeANDResponse typePropTypes, Set<String> boundURIs) throws SQLException {
+		
+		CoreSelectQuery c = new CoreSelectQuery();
+		c.tableName = SQLUtils.escapeID(connection, segmentTable.tableName);
+		c.objectsTableName = getObjectsTableName(segmentTable);
+		
+		if(top && keyset && afterURI != null) {
+			restrict(c, dataSource.getDialect().binaryOrder(COLUMN_URI) + " > ?", Arrays.asList((Object) afterURI));
+		}
+		
+		if(boundURIs != null) {
+			
+			StringBuilder in = new StringBuilder(COLUMN_URI + " IN (");
+			
+			for(int j = 0; j < boundURIs.size(); j++) {
+				in.append(j > 0 ? ", ?" : "?");
+			}
+			
+			in.append(")");
+			
+			restrict(c, in.toString(), new ArrayList<Object>(boundURIs));
+			
+		}
+		
+		processCriterion(c, null, criterion, "", true, true, typePropTypes, false);
+		
+		return c;
+		
+	}
+	
+	private static void restrict(CoreSelectQuery c, String condition, List<Object> values) {
+		c.uriRestriction = c.uriRestriction != null ? c.uriRestriction + " AND " + condition : condition;
+		c.uriRestrictionValues.addAll(values);
+	}
+	
+	/**
+	 * @return true if the criterion query selects the objects to exclude
+	 */
+	static boolean isNegated(VitalGraphQueryPropertyCriterion criterion) {
+		
+		VitalGraphQueryPropertyCriterion.Comparator comparator = criterion.getComparator();
+		
+		return ( !criterion.isNegative() && ( comparator == VitalGraphQueryPropertyCriterion.Comparator.NOT_CONTAINS || comparator == VitalGraphQueryPropertyCriterion.Comparator.NOT_EXISTS) )  
+				|| (criterion.isNegative() && (comparator == VitalGraphQueryPropertyCriterion.Comparator.CONTAINS || comparator == VitalGraphQueryPropertyCriterion.Comparator.EXISTS));
+		
+	}
+	
 	static Comparator<URIResultElement> uriResultElementComparator = new Comparator<URIResultElement>(){
 		
 		public int compare(URIResultElement e1, URIResultElement e2) {
@@ -1175,9 +1617,13 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 				outputList.totalResults = 0	;
 				outputList.results = new ArrayList<URIResultElement>(0);
 				
-				for( SegmentTable segment : segments ) {
+				URIResultList[] sublists = handleSegmentsInParallel();
 				
-					URIResultList  sublist = handleSelectQueryAttempt2(segment);
+				for( int i = 0; i < segments.size(); i++ ) {
+				
+					SegmentTable segment = segments.get(i);
+					
+					URIResultList  sublist = sublists != null ? sublists[i] : handleSelectQueryAttempt2(segment);
 					outputList.totalResults	 += sublist.totalResults;
 					outputList.offset = sq.getOffset();
 					outputList.limit = sq.getLimit();
@@ -1205,21 +1651,31 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 				
 				PriorityBuffer priorityBuffer = new PriorityBuffer(maxLength, true,  uriResultElementComparator);
 				
-				for( SegmentTable segment : segments ) {
+				//keyset pages are merged in URI order
+				List<URIResultElement> keysetResults = keyset ? new ArrayList<URIResultElement>() : null;
+				
+				URIResultList[] sublists = handleSegmentsInParallel();
+				
+				Set<Object> distinctValuesSet = null;
+				
+				for( int i = 0; i < segments.size(); i++ ) {
 
-					URIResultList sublist = handleSelectQueryAttempt2(segment);					
+					SegmentTable segment = segments.get(i);
+					
+					URIResultList sublist = sublists != null ? sublists[i] : handleSelectQueryAttempt2(segment);					
 					
 					List subDistinctValues = sublist.getDistinctValues();
 					
 					if(subDistinctValues != null) {
 						if(distinctValues != null) {
 							for(Object dv : subDistinctValues) {
-								if(!distinctValues.contains(dv)) {
+								if(distinctValuesSet.add(dv)) {
 									distinctValues.add(dv);
 								}
 							}
 						} else {
-							distinctValues = subDistinctValues;
+							distinctValues = new ArrayList<Object>(subDistinctValues);
+							distinctValuesSet = new HashSet<Object>(subDistinctValues);
 						}
 					}
 					
@@ -1238,6 +1694,10 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 							agg_max = sublist.agg_max;
 						}
 						
+					} else if(keyset) {
+						
+						keysetResults.addAll(sublist.results);
+						
 					} else {
 					
 						for(URIResultElement el : sublist.results) {
@@ -1255,6 +1715,17 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 					
 				}
 				
+				if(aggType != null && sq.isDistinct()) {
+					
+					//distinct count of the merged values, not returned as distinct values
+					outputList.agg_count_distinct = distinctValues != null ? distinctValues.size() : 0;
+					
+					totalResults = outputList.agg_count_distinct;
+					
+					distinctValues = null;
+					
+				}
+				
 				if(distinctValues != null && sq.getDistinctSort() != null) {
 					
 					boolean ascNotDesc = VitalSelectQuery.asc.equals(sq.getDistinctSort());
@@ -1281,6 +1752,19 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 				outputList.agg_max = agg_max;
 				outputList.agg_min = agg_min;
 				
+				if(keysetResults != null) {
+					
+					Collections.sort(keysetResults, new Comparator<URIResultElement>() {
+						@Override
+						public int compare(URIResultElement o1, URIResultElement o2) {
+							return o1.URI.compareTo(o2.URI);
+						}
+					});
+					
+					outputList.results.addAll(keysetResults.subList(0, Math.min(initialLimit > 0 ? initialLimit : 10000, keysetResults.size())));
+					
+				}
+				
 				//copy the results into list reverse order
 				int index = 0;
 				
@@ -1305,6 +1789,152 @@ public class SQLSingleSegmentQueryHandler extends SQLSelectQueryHandler {
 	}
 	
 	
+	/**
+	 * Evaluates the segments concurrently when segmentsQueryParallelism is enabled,
+	 * returns null if the segments should be evaluated sequentially.
+	 * The calling thread takes part with the query connection, the other workers
+	 * borrow their own pooled connections if the pool can spare them. Each worker evaluates its own copy of the query
+	 * made before any segment is evaluated and all of them add their times through
+	 * {@link SynchronizedQueryStats}. Results are kept in segments order.
+	 */
+	private URIResultList[] handleSegmentsInParallel() throws IOException, SQLException {
+		
+		int workers = Math.min(dataSource.getSegmentsQueryParallelism(), segments.size());
+		
+		if(workers < 2) return null;
+		
+		log.debug("Evaluating {} segments with {} workers", segments.size(), workers);
+		
+		final QueryStats workersStats = SynchronizedQueryStats.of(queryStats);
+		
+		List<VitalSelectQuery> queries = new ArrayList<VitalSelectQuery>(workers);
+		
+		for(int w = 0; w < workers; w++) {
+			queries.add(copyQuery(originalQuery));
+		}
+		
+		final URIResultList[] sublists = new URIResultList[segments.size()];
+		
+		final AtomicInteger nextSegment = new AtomicInteger(0);
+		
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(workers - 1);
+		
+		ExecutorService executor = dataSource.getSegmentsExecutor();
+		
+		try {
+			
+			for(int w = 1; w < workers; w++) {
+				
+				final VitalSelectQuery workerQuery = queries.get(w);
+				
+				futures.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						
+						//the other workers take the segments
+						if(!dataSource.tryAcquireParallelConnection()) return null;
+						
+						Connection workerConnection = null;
+						
+						try {
+							
+							workerConnection = dataSource.getConnection(workersStats);
+							
+							handleSegmentsWorker(workerConnection, workerQuery, workersStats, nextSegment, sublists);
+							
+						} finally {
+							SQLUtils.closeQuietly(workerConnection);
+							dataSource.releaseParallelConnection();
+						}
+						
+						return null;
+					}
+					
+				}));
+				
+			}
+			
+			handleSegmentsWorker(connection, queries.get(0), workersStats, nextSegment, sublists);
+			
+			for(Future<Void> future : futures) {
+				future.get();
+			}
+			
+		} catch(ExecutionException e) {
+			
+			Throwable cause = e.getCause();
+			if(cause instanceof SQLException) throw (SQLException) cause;
+			if(cause instanceof IOException) throw (IOException) cause;
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+			
+		} catch(InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while evaluating segments");
+			
+		} finally {
+			
+			//stop remaining workers on error
+			nextSegment.set(segments.size());
+			
+			for(Future<Void> future : futures) {
+				future.cancel(true);
+			}
+			
+		}
+		
+		return sublists;
+		
+	}
+	
+	/**
+	 * Takes segments off the shared counter until none is left. Each segment gets a new handler
+	 * of the worker query as the query evaluation mutates the handler state and the criteria containers.
+	 */
+	private void handleSegmentsWorker(Connection workerConnection, VitalSelectQuery workerQuery, QueryStats workerStats, AtomicInteger nextSegment, URIResultList[] sublists) throws IOException, SQLException {
+		
+		int i;
+		
+		while( ( i = nextSegment.getAndIncrement() ) < segments.size() ) {
+			
+			SQLSingleSegmentQueryHandler handler = new SQLSingleSegmentQueryHandler(dataSource, workerConnection, workerQuery, segments, resolver, workerStats);
+			handler.sq.setOffset(sq.getOffset());
+			if(keyset) handler.setKeyset(afterURI);
+			sublists[i] = handler.handleSelectQueryAttempt2(segments.get(i));
+			
+		}
+		
+	}
+	
+	/**
+	 * Deep copy of the query, a clone shares the criteria containers
+	 */
+	static VitalSelectQuery copyQuery(VitalSelectQuery query) {
+		
+		try {
+			
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(query);
+			out.close();
+			
+			ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			
+			try {
+				return (VitalSelectQuery) in.readObject();
+			} finally {
+				in.close();
+			}
+			
+		} catch(Exception e) {
+			throw new RuntimeException("Couldn't copy the query: " + e.getLocalizedMessage(), e);
+		}
+		
+	}
+	
 	ResultList convertURIsListToResultList(URIResultList outputList) throws Exception {
 		
 		if(outputList.results == null ) outputList.results = new ArrayList<URIResultElement>();
@@ -1,19 +1,27 @@
 package ai.vital.sql.query;
 
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.dao.EdgesOperations;
+import ai.vital.sql.dao.EdgesOperations.Adjacency;
 import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.VitalStatus;
 import ai.vital.vitalservice.query.QueryStats;
 import ai.vital.vitalservice.query.ResultList;
@@ -47,6 +55,37 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 	
 	static int PAGE_SIZE = 1000;
 	
+	//child arcs pages bounds, a page doubles after each full page
+	static int MIN_PAGE_SIZE = 16;
+	
+	static int MAX_PAGE_SIZE = 5000;
+	
+	int pageSize = PAGE_SIZE;
+	
+	//last URI of the previous page, the next page starts after it
+	String lastKey = null;
+	
+	//bindings returned so far
+	int total = 0;
+	
+	private boolean fanOutReported = false;
+	
+	//percent of a page consumed before the next one is prefetched, 0 if disabled
+	private int prefetchThreshold = 0;
+	
+	private Future<Page> prefetch = null;
+	
+	private int prefetchIndex = 0;
+	
+	//fetched page, the endpoints are passed to the provider when it's consumed
+	static class Page {
+		
+		List<BindingEl> bindings = new ArrayList<BindingEl>();
+		
+		List<ResultList> endpoints = new ArrayList<ResultList>();
+		
+	}
+	
 	Connection connection;
 
 	private VitalSqlDataSource dataSource;
@@ -57,15 +96,29 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 
 	private QueryStats queryStats;
 	
+	//notified about loaded endpoints, may be null
+	private SqlResultsProvider provider;
+	
+	//parent connectors listed from edges tables, null if not available
+	private List<Adjacency> adjacency;
+	
+	private int adjacencyIndex = 0;
+	
 	/**
 	 * @param segments
 	 * @param arc
 	 * @param parent
 	 */
 	public SqlBindingElementIterator(VitalSqlDataSource dataSource, Connection connection, List<SegmentTable> segments, Arc arc, GraphObject parent, SQLGraphObjectResolver resolver, QueryStats queryStats) {
+		this(dataSource, connection, segments, arc, parent, resolver, queryStats, null);
+	}
+	
+	public SqlBindingElementIterator(VitalSqlDataSource dataSource, Connection connection, List<SegmentTable> segments, Arc arc, GraphObject parent, SQLGraphObjectResolver resolver, QueryStats queryStats, SqlResultsProvider provider) {
 
 		this.dataSource = dataSource;
 		
+		this.provider = provider;
+		
 		this.connection = connection;
 		
 		this.arc = arc;
@@ -74,46 +127,42 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 
 		this.resolver = resolver;
 		
-		this.queryStats = queryStats;
+		//the prefetching thread adds its times concurrently
+		this.queryStats = SynchronizedQueryStats.of(queryStats);
+		
+		Integer graphPrefetchThreshold = dataSource.getConfig().getGraphPrefetchThreshold();
+		this.prefetchThreshold = graphPrefetchThreshold != null ? Math.min(100, graphPrefetchThreshold.intValue()) : 0;
 		
 		if(! arc.isTopArc() ) {
+			
+			//first page fits the observed fan-out
+			Integer fanOut = provider != null ? provider.getFanOut(arc) : null;
+			if(fanOut != null) {
+				pageSize = Math.max(MIN_PAGE_SIZE, Math.min(PAGE_SIZE, fanOut.intValue() + 1));
+			}
+			
 			this.connectorQuery = VitalSelectQuery.createInstance();
 			connectorQuery.setOffset(0);
-			connectorQuery.setLimit(PAGE_SIZE);
+			connectorQuery.setLimit(pageSize);
 			if(arc.connectorContainer.connectorCriteria > 0 ) {
 				connectorQuery.getCriteriaContainer().add( arc.connectorContainer.container );
 			}
 			
 			
-			String connectorProperty = null;
-			
-			if(arc.isHyperArc()) {
-				
-				if(arc.isForwardNotReverse()) {
-					connectorProperty = VitalCoreOntology.hasHyperEdgeSource.getURI();
-				} else {
-					connectorProperty = VitalCoreOntology.hasHyperEdgeDestination.getURI();
-				}
-				
-			} else {
-				
-				if( arc.isForwardNotReverse() ) {
-					connectorProperty = VitalCoreOntology.hasEdgeSource.getURI();
-				} else {
-					connectorProperty = VitalCoreOntology.hasEdgeDestination.getURI();
-					
-				}
-				
-			}
+			String connectorProperty = getConnectorProperty(arc);
 			
 			connectorQuery.getCriteriaContainer().add(new VitalGraphQueryPropertyCriterion(connectorProperty).equalTo(URIProperty.withString(parent.getURI())));
 			
+			if(usesEdgesTables(segments, arc)) {
+				adjacency = getAdjacency(connection, segments, arc, Arrays.asList(parent.getURI()), queryStats);
+			}
+			
 		} else {
 			
 			
 			this.rootQuery = VitalSelectQuery.createInstance();
 			rootQuery.setOffset(0);
-			rootQuery.setLimit(PAGE_SIZE);
+			rootQuery.setLimit(pageSize);
 			
 			VitalGraphCriteriaContainer endpointCriteriaContainer = rootQuery.getCriteriaContainer();
 			
@@ -141,22 +190,128 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 
 		resultsPage = new ArrayList<BindingEl>();
 		
+		//pages with no matching endpoints are skipped
+		while(resultsPage.size() == 0 && (prefetch != null || !noMorePages)) {
+			
+			Page page = null;
+			
+			if(prefetch != null) {
+				page = awaitPrefetch();
+			} else {
+				page = fetchPage(connection);
+			}
+			
+			resultsPage = page.bindings;
+			
+			if(provider != null) {
+				for(ResultList endpoints : page.endpoints) {
+					provider.endpointsLoaded(arc, endpoints);
+				}
+			}
+			
+			total += resultsPage.size();
+			
+		}
+		
+		if(noMorePages && !fanOutReported && connectorQuery != null && provider != null) {
+			fanOutReported = true;
+			provider.fanOutObserved(arc, total);
+		}
+		
+		prefetchIndex = prefetchThreshold > 0 ? Math.max(1, resultsPage.size() * prefetchThreshold / 100) : Integer.MAX_VALUE;
+		
+	}
+	
+	/**
+	 * fetches the next page with the connection, the paging state is only accessed by the fetching thread
+	 */
+	private Page fetchPage(Connection c) {
+		
+		Page page = new Page();
+		
 		if(connectorQuery != null) {
 			
-			nextConnectorsPage();
+			nextConnectorsPage(page, c);
 			
 		} else {
 			
-			nextRootPage();
+			nextRootPage(page, c);
 			
 		}
 		
+		return page;
+		
+	}
 	
+	/**
+	 * fetches the next page in the background with another pooled connection,
+	 * the page is fetched when consumed if the pool can't spare one
+	 */
+	private void startPrefetch() {
+		
+		if(!dataSource.tryAcquireParallelConnection()) {
+			//not retried for this page
+			prefetchIndex = Integer.MAX_VALUE;
+			return;
+		}
 		
+		try {
+			
+			prefetch = dataSource.getSegmentsExecutor().submit(new Callable<Page>() {
+	
+				@Override
+				public Page call() throws Exception {
+					
+					Connection prefetchConnection = null;
+					
+					try {
+						
+						prefetchConnection = dataSource.getConnection(queryStats);
+						
+						return fetchPage(prefetchConnection);
+						
+					} finally {
+						SQLUtils.closeQuietly(prefetchConnection);
+						dataSource.releaseParallelConnection();
+					}
+					
+				}
+				
+			});
+			
+		} catch(RuntimeException e) {
+			dataSource.releaseParallelConnection();
+			throw e;
+		}
+		
+	}
+	
+	private Page awaitPrefetch() {
+		
+		try {
+			
+			return prefetch.get();
+			
+		} catch (ExecutionException e) {
+			
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+			
+		} finally {
+			
+			prefetch = null;
+			
+		}
 		
 	}
 
-	private void nextRootPage() {
+	private void nextRootPage(Page page, Connection connection) {
 
 		if(noMorePages) return;
 		
@@ -166,7 +321,9 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 			try {
 //				rootPage = new SQLSelectQueryHandler(dataSource, connection, rootQuery, segments).execute();
 				long start = System.currentTimeMillis();
-				rootPage = new SQLSingleSegmentQueryHandler(dataSource, connection, rootQuery, segments, resolver, queryStats).execute();
+				SQLSingleSegmentQueryHandler handler = new SQLSingleSegmentQueryHandler(dataSource, connection, rootQuery, segments, resolver, queryStats);
+				handler.setKeyset(lastKey);
+				rootPage = handler.execute();
 				if(log.isDebugEnabled()) {
 					log.debug("Root query: {}, time: {}ms", ""/*rootQuery.debugString()*/, System.currentTimeMillis() - start);
 				}
@@ -174,8 +331,6 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 				throw new RuntimeException(e);
 			}
 			
-			rootQuery.setOffset(rootQuery.getOffset() + PAGE_SIZE);
-			
 			if(rootPage.getStatus().getStatus() != VitalStatus.Status.ok) throw new RuntimeException("Error when querying for root endpoints: " + rootPage.getStatus());
 			
 			if(rootPage.getResults().size() < 1 ) {
@@ -191,12 +346,16 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 			int thisPageSize = 0;
 			for(GraphObject g : rootPage) {
 				
-				resultsPage.add(new BindingEl(arc, g, null));
+				page.bindings.add(new BindingEl(arc, g, null));
 				thisPageSize ++;
 				
+				lastKey = maxKey(lastKey, g.getURI());
+				
 			}
 			
-			if(thisPageSize < PAGE_SIZE) {
+			page.endpoints.add(rootPage);
+			
+			if(thisPageSize < pageSize) {
 				noMorePages = true;
 //				break;
 				
@@ -206,32 +365,57 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 		
 	}
 
-	private void nextConnectorsPage() {
+	private void nextConnectorsPage(Page page, Connection connection) {
 
 		if(noMorePages) return;
 		
 //		while(true) {
 
-			ResultList connectorsPage = null;
+			List<GraphObject> connectorsPage = null;
 			
-			try {
-//				connectorsPage = new SQLSelectQueryHandler(dataSource, connection, connectorQuery, segments).execute();
-				long start = System.currentTimeMillis();
-				connectorsPage = new SQLSingleSegmentQueryHandler(dataSource, connection, connectorQuery, segments, resolver, queryStats).execute();
-				if(log.isDebugEnabled()) {
-					log.debug("Connector query: {}, time: {}ms", ""/*connectorQuery.debugString()*/, System.currentTimeMillis() - start);
+			if(adjacency != null) {
+				
+				int end = Math.min(adjacencyIndex + pageSize, adjacency.size());
+				
+				try {
+					connectorsPage = EdgesOperations.getEdgesObjects(connection, adjacency.subList(adjacencyIndex, end), resolver, queryStats);
+				} catch (SQLException e) {
+					throw new RuntimeException(e);
 				}
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
+				
+				adjacencyIndex = end;
+				
+			} else {
 			
+				ResultList connectorsRS = null;
+				
+				try {
+//					connectorsPage = new SQLSelectQueryHandler(dataSource, connection, connectorQuery, segments).execute();
+					long start = System.currentTimeMillis();
+					SQLSingleSegmentQueryHandler handler = new SQLSingleSegmentQueryHandler(dataSource, connection, connectorQuery, segments, resolver, queryStats);
+					handler.setKeyset(lastKey);
+					connectorsRS = handler.execute();
+					if(log.isDebugEnabled()) {
+						log.debug("Connector query: {}, time: {}ms", ""/*connectorQuery.debugString()*/, System.currentTimeMillis() - start);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				
 //			ResultList connectorsPage = SelectQueryImpl.selectQuery(segments, connectorQuery);
+				
+				if(connectorsRS.getStatus().getStatus() != VitalStatus.Status.ok) throw new RuntimeException("Error when querying for edge: " + connectorsRS.getStatus());
+				
+				connectorsPage = new ArrayList<GraphObject>();
+				
+				for(GraphObject g : connectorsRS) {
+					connectorsPage.add(g);
+					lastKey = maxKey(lastKey, g.getURI());
+				}
+				
+			}
 			
-			connectorQuery.setOffset(connectorQuery.getOffset() + PAGE_SIZE);
-			
-			if(connectorsPage.getStatus().getStatus() != VitalStatus.Status.ok) throw new RuntimeException("Error when querying for edge: " + connectorsPage.getStatus());
-			
-			if(connectorsPage.getResults().size() < 1 ) {
+			if(connectorsPage.size() < 1 ) {
 
 				noMorePages = true;
 				return;
@@ -245,7 +429,7 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 			
 			for(GraphObject g : connectorsPage) {
 
-				String endpointURI = getConnectorEndpointURI(g);
+				String endpointURI = getConnectorEndpointURI(arc, g);
 			
 				endpoints.put(endpointURI, null);
 				
@@ -255,7 +439,7 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 			
 			VitalSelectQuery equery = VitalSelectQuery.createInstance();
 			equery.setOffset(0);
-			equery.setLimit(PAGE_SIZE);
+			equery.setLimit(endpoints.size());
 					
 			VitalGraphCriteriaContainer endpointCriteriaContainer = equery.getCriteriaContainer();
 			endpointCriteriaContainer.add(new VitalGraphQueryPropertyCriterion(VitalGraphQueryPropertyCriterion.URI).oneOf(toURIPropertiesList(endpoints.keySet())));
@@ -288,12 +472,14 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 				
 			}
 			
+			page.endpoints.add(endpointsRS);
+			
 			int edgesCount = 0;
 			for(GraphObject connector : connectorsPage) {
 				
 				edgesCount++;
 				
-				String endpointURI = getConnectorEndpointURI(connector);
+				String endpointURI = getConnectorEndpointURI(arc, connector);
 				
 				GraphObject endpoint = endpoints.get(endpointURI);
 				
@@ -301,13 +487,16 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 					
 					BindingEl b = new BindingEl(arc, endpoint, connector);
 					
-					resultsPage.add(b);
+					page.bindings.add(b);
 				}
 				
 			}
 			
-			if(edgesCount < PAGE_SIZE) {
+			if(adjacency != null ? adjacencyIndex >= adjacency.size() : edgesCount < pageSize) {
 				noMorePages = true;
+			} else {
+				pageSize = Math.min(MAX_PAGE_SIZE, pageSize * 2);
+				connectorQuery.setLimit(pageSize);
 			}
 			
 //			if(resultsPage.size() > 0) {
@@ -319,15 +508,89 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 		
 	}
 
-	private String getConnectorEndpointURI(GraphObject g) {
+	private static String maxKey(String key, String uri) {
+		return key == null || uri.compareTo(key) > 0 ? uri : key;
+	}
+	
+	/**
+	 * Edges tables list only edges and hyper edges, connectors criteria still require the properties query
+	 */
+	static boolean usesEdgesTables(List<SegmentTable> segments, Arc arc) {
+		
+		if(arc.connectorContainer.connectorCriteria > 0) return false;
+		
+		for(SegmentTable segmentTable : segments) {
+			if(!segmentTable.edgesTableReady) return false;
+		}
+		
+		return segments.size() > 0;
+		
+	}
+	
+	static List<Adjacency> getAdjacency(Connection connection, List<SegmentTable> segments, Arc arc, Collection<String> parentsURIs, QueryStats queryStats) {
+		
+		List<Adjacency> adjacency = new ArrayList<Adjacency>();
+		
+		long start = System.currentTimeMillis();
+		
+		try {
+			for(SegmentTable segmentTable : segments) {
+				adjacency.addAll(EdgesOperations.getAdjacentEdges(connection, segmentTable, parentsURIs, arc.isForwardNotReverse(), arc.isHyperArc(), queryStats));
+			}
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+		
+		if(log.isDebugEnabled()) {
+			log.debug("Adjacency of {} parents: {} connectors, time: {}ms", parentsURIs.size(), adjacency.size(), System.currentTimeMillis() - start);
+		}
+		
+		return adjacency;
+		
+	}
+
+	static String getConnectorProperty(Arc arc) {
+		
+		if(arc.isHyperArc()) {
+			
+			if(arc.isForwardNotReverse()) {
+				return VitalCoreOntology.hasHyperEdgeSource.getURI();
+			} else {
+				return VitalCoreOntology.hasHyperEdgeDestination.getURI();
+			}
+			
+		} else {
+			
+			if( arc.isForwardNotReverse() ) {
+				return VitalCoreOntology.hasEdgeSource.getURI();
+			} else {
+				return VitalCoreOntology.hasEdgeDestination.getURI();
+			}
+			
+		}
+		
+	}
+	
+	static String getConnectorEndpointURI(Arc arc, GraphObject g) {
+		return getConnectorURI(arc, g, true);
+	}
+	
+	static String getConnectorParentURI(Arc arc, GraphObject g) {
+		return getConnectorURI(arc, g, false);
+	}
+	
+	private static String getConnectorURI(Arc arc, GraphObject g, boolean endpointNotParent) {
 		
 		String endpointURI = null;
 		
+		//endpoint is the destination of a forward arc
+		boolean destination = arc.isForwardNotReverse() == endpointNotParent;
+		
 		if(g instanceof VITAL_Edge) {
 			
 			VITAL_Edge e = (VITAL_Edge) g;
 			
-			if(arc.isForwardNotReverse()) {
+			if(destination) {
 				endpointURI = e.getDestinationURI();
 			} else {
 				endpointURI = e.getSourceURI();
@@ -337,7 +600,7 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 			
 			VITAL_HyperEdge he = (VITAL_HyperEdge) g;
 			
-			if(arc.isForwardNotReverse()) {
+			if(destination) {
 				endpointURI = he.getDestinationURI();
 			} else {
 				endpointURI = he.getSourceURI();
@@ -345,7 +608,7 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 			
 		} else throw new RuntimeException("Unexpected graph object result in connectors query: " + g.getClass().getCanonicalName());
 		
-		if(endpointURI == null) throw new RuntimeException("No endpoint URI found in : " + g);
+		if(endpointURI == null) throw new RuntimeException("No " + (endpointNotParent ? "endpoint" : "parent") + " URI found in : " + g);
 		
 		return endpointURI;
 
@@ -372,6 +635,10 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 			nextPage();
 				
 				//end of results!
+		} else if(resultsIndex >= prefetchIndex && prefetch == null && !noMorePages) {
+			
+			startPrefetch();
+			
 		}
 		
 		return el;
@@ -383,7 +650,7 @@ public class SqlBindingElementIterator implements Iterator<BindingEl>{
 		throw new UnsupportedOperationException(SqlBindingElementIterator.class.getSimpleName() + " does not support removals");
 	}
 
-	private List<URIProperty> toURIPropertiesList(Collection<String> nodesURIs) {
+	static List<URIProperty> toURIPropertiesList(Collection<String> nodesURIs) {
 		List<URIProperty> l = new ArrayList<URIProperty>();
 		for(String n : nodesURIs) {
 			l.add(URIProperty.withString(n));
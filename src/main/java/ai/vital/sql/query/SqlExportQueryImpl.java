@@ -5,11 +5,14 @@ import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_URI;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.ArrayList;
 import java.util.List;
 
+import ai.vital.sql.connector.VitalSqlDataSource;
 import ai.vital.sql.dao.CoreOperations;
 import ai.vital.sql.model.SegmentTable;
 import ai.vital.sql.model.VitalSignsToSqlBridge;
+import ai.vital.sql.model.VitalSignsToSqlBridge.GraphObjectsStreamHandler;
 import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.query.QueryStats;
 import ai.vital.vitalservice.query.QueryTime;
@@ -27,6 +30,17 @@ public class SqlExportQueryImpl {
 	
 	public static ResultList export(Connection connection,
 			SegmentTable segmentTable, VitalExportQuery sq, QueryStats stats) throws Exception {
+		return export(null, connection, segmentTable, sq, null, stats);
+	}
+	
+	/**
+	 * Results are sorted by URI in binary order, the last result URI is the continuation token of the next page.
+	 * @param dataSource export cursors cache source, null disables it
+	 * @param afterURI continuation token, the page starts after that URI and the offset is ignored;
+	 * if null the page following a cached one continues after its last URI
+	 */
+	public static ResultList export(VitalSqlDataSource dataSource, Connection connection,
+			SegmentTable segmentTable, VitalExportQuery sq, String afterURI, QueryStats stats) throws Exception {
 
 		long total = System.currentTimeMillis();
 		
@@ -48,14 +62,48 @@ public class SqlExportQueryImpl {
 		r.setOffset(offset);
 		r.setQueryStats(stats);
 		
+		ExportCursors cursors = dataSource != null ? dataSource.getExportCursors() : null;
+		
+		boolean continued = afterURI != null;
+		
+		if(afterURI == null && cursors != null && offset > 0) {
+			afterURI = cursors.getBoundary(segmentTable.tableName, offset);
+		}
+		
 		try {
 			
-			r.setTotalResults(CoreOperations.getSegmentSize(connection, segmentTable, stats));
+			Integer count = cursors != null ? cursors.getTotal(segmentTable.tableName) : null;
+			
+			if(count == null) {
+				count = CoreOperations.getSegmentSize(connection, segmentTable, stats);
+				if(cursors != null) cursors.putTotal(segmentTable.tableName, count);
+			}
+			
+			r.setTotalResults(count);
+			
+			//binary order, the same as the keyset comparison regardless of the column collation
+			String key = dataSource != null ? dataSource.getDialect().binaryOrder(COLUMN_URI) : COLUMN_URI;
+			
+			String outerKey = dataSource != null ? dataSource.getDialect().binaryOrder("t1." + COLUMN_URI) : "t1." + COLUMN_URI;
+			
+			//keyset page after the last URI of the previous one
+			String after = afterURI != null ? " WHERE " + key + " > ?" : "";
+			
+			String skip = afterURI != null ? "" : " OFFSET " + offset;
+			
+			//objects header table pages through primary key instead of distinct properties rows
+			String urisPage = segmentTable.objectsTableReady ?
+				"SELECT " + COLUMN_URI + " FROM " + SQLUtils.escapeID(connection, segmentTable.getObjectsTableName()) + after + " ORDER BY " + key + " ASC LIMIT " + limit + skip
+				: "SELECT " + COLUMN_URI + " FROM " + tname + after + " GROUP BY " + COLUMN_URI + " ORDER BY " + key + " ASC LIMIT " + limit + skip;
 					
 			stmt = connection.prepareStatement(
 			"SELECT * FROM " + tname + " AS t1 INNER JOIN (" + 
-				"SELECT DISTINCT " + COLUMN_URI + " FROM " + tname + " ORDER BY " + COLUMN_URI + " ASC LIMIT " + limit + " OFFSET "+ offset +
-			") AS t2 ON t1." + COLUMN_URI + " = t2." + COLUMN_URI + " ORDER BY t1." + COLUMN_URI);
+				urisPage +
+			") AS t2 ON t1." + COLUMN_URI + " = t2." + COLUMN_URI + " ORDER BY " + outerKey);
+			
+			if(afterURI != null) {
+				stmt.setString(1, afterURI);
+			}
 			
 			
 //			SELECT v.VID, v.thumb
@@ -78,12 +126,31 @@ public class SqlExportQueryImpl {
 				if(stats.getQueriesTimes() != null) stats.getQueriesTimes().add(new QueryTime("exportQuery", stmt.toString(), time));
 			}
 			
-			List<GraphObject> fromSql = VitalSignsToSqlBridge.fromSql(segmentTable, rs);
+			//streamed in the database order, the last object is the keyset boundary
+			final List<GraphObject> fromSql = new ArrayList<GraphObject>();
+			
+			VitalSignsToSqlBridge.fromSql(segmentTable, rs, new GraphObjectsStreamHandler() {
+				
+				@Override
+				public void onGraphObject(GraphObject g) {
+					fromSql.add(g);
+				}
+				
+				@Override
+				public void onNoMoreObjects() {
+				}
+				
+			});
 			
 			for(GraphObject g : fromSql) {
 				r.getResults().add(new ResultElement(g, 1D));
 			}
 			
+			//the next page offset continues after the last URI, unknown for explicit continuation
+			if(cursors != null && !continued && fromSql.size() > 0) {
+				cursors.putBoundary(segmentTable.tableName, offset + fromSql.size(), fromSql.get(fromSql.size() - 1).getURI());
+			}
+			
 		} finally {
 			SQLUtils.closeQuietly(stmt, rs);
 		}
@@ -1,25 +1,74 @@
 package ai.vital.sql.query;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.dao.EdgesOperations;
+import ai.vital.sql.dao.EdgesOperations.Adjacency;
 import ai.vital.sql.model.SegmentTable;
+import ai.vital.vitalservice.VitalStatus;
 import ai.vital.vitalservice.query.QueryStats;
+import ai.vital.vitalservice.query.ResultList;
+import ai.vital.vitalservice.query.VitalGraphCriteriaContainer;
+import ai.vital.vitalservice.query.VitalGraphQueryPropertyCriterion;
+import ai.vital.vitalservice.query.VitalSelectQuery;
 import ai.vital.vitalsigns.model.GraphObject;
 import ai.vital.vitalsigns.query.graph.Arc;
 import ai.vital.vitalsigns.query.graph.BindingEl;
 import ai.vital.vitalsigns.query.graph.GraphQueryImplementation.ResultsProvider;
 
+/**
+ * Graph query results provider. Child arcs are evaluated for batches of parents:
+ * the endpoints loaded by an arc are remembered and when the first of them is
+ * asked for, the connectors and endpoints of up to graphBatchSize siblings are
+ * fetched with a single pair of queries and kept until they are asked for.
+ */
 public class SqlResultsProvider implements ResultsProvider {
 
+	private final static Logger log = LoggerFactory.getLogger(SqlResultsProvider.class);
+
 	final List<SegmentTable> segments;
 	private Connection connection;
 	private VitalSqlDataSource dataSource;
 	private SQLGraphObjectResolver resolver;
 	private QueryStats queryStats;
-	
+
+	private int batchSize;
+
+	private int batchMaxConnectors;
+
+	//arc -> endpoints URIs loaded by it, in results order
+	private Map<Arc, List<String>> loadedEndpoints = new IdentityHashMap<Arc, List<String>>();
+
+	//endpoint URI -> arc that loaded it last
+	private Map<String, Arc> endpointArcs = new HashMap<String, Arc>();
+
+	//arc -> parent URI -> prefetched bindings
+	private Map<Arc, Map<String, List<BindingEl>>> prefetched = new IdentityHashMap<Arc, Map<String, List<BindingEl>>>();
+
+	//arc -> parents arc -> position in its loaded endpoints
+	private Map<Arc, Map<Arc, Integer>> batchPositions = new IdentityHashMap<Arc, Map<Arc, Integer>>();
+
+	//arcs with too many connectors per batch
+	private Set<Arc> unbatchedArcs = Collections.newSetFromMap(new IdentityHashMap<Arc, Boolean>());
+
+	//arc -> {parents, bindings} of the completed per parent iterators
+	private Map<Arc, long[]> fanOuts = new IdentityHashMap<Arc, long[]>();
+
 	public SqlResultsProvider(VitalSqlDataSource dataSource, Connection connection, List<SegmentTable> segments, SQLGraphObjectResolver resolver, QueryStats queryStats) {
 		super();
 		this.dataSource = dataSource;
@@ -27,12 +76,259 @@ public class SqlResultsProvider implements ResultsProvider {
 		this.segments = segments;
 		this.resolver = resolver;
 		this.queryStats = queryStats;
+
+		Integer graphBatchSize = dataSource.getConfig().getGraphBatchSize();
+		this.batchSize = graphBatchSize != null ? graphBatchSize.intValue() : 0;
+
+		Integer graphBatchMaxConnectors = dataSource.getConfig().getGraphBatchMaxConnectors();
+		this.batchMaxConnectors = graphBatchMaxConnectors != null ? graphBatchMaxConnectors.intValue() : 0;
+
+		if(batchMaxConnectors < 1) batchSize = 0;
 	}
 
 	@Override
 	public Iterator<BindingEl> getIterator(Arc arc, GraphObject parent) {
-		return new SqlBindingElementIterator(dataSource, connection, segments, arc, parent, resolver, queryStats);
-		
+
+		if(arc.isTopArc() || batchSize < 2 || unbatchedArcs.contains(arc)) {
+			return new SqlBindingElementIterator(dataSource, connection, segments, arc, parent, resolver, queryStats, this);
+		}
+
+		Map<String, List<BindingEl>> arcBindings = prefetched.get(arc);
+
+		List<BindingEl> bindings = arcBindings != null ? arcBindings.remove(parent.getURI()) : null;
+
+		if(bindings == null) {
+
+			bindings = fetchBatch(arc, parent);
+
+			if(bindings == null) {
+
+				log.debug("Too many connectors in a batch, arc evaluated per parent");
+
+				unbatchedArcs.add(arc);
+
+				return new SqlBindingElementIterator(dataSource, connection, segments, arc, parent, resolver, queryStats, this);
+
+			}
+
+		}
+
+		return Collections.unmodifiableList(bindings).iterator();
+
+	}
+
+	/**
+	 * Called with endpoints loaded for an arc, they are the parents candidates for the child arcs batches
+	 */
+	void endpointsLoaded(Arc arc, Iterable<GraphObject> endpoints) {
+
+		if(batchSize < 2) return;
+
+		List<String> uris = loadedEndpoints.get(arc);
+
+		if(uris == null) {
+			uris = new ArrayList<String>();
+			loadedEndpoints.put(arc, uris);
+		}
+
+		for(GraphObject g : endpoints) {
+			uris.add(g.getURI());
+			endpointArcs.put(g.getURI(), arc);
+		}
+
+	}
+
+	/**
+	 * Called when a per parent iterator of the arc has returned all its bindings
+	 */
+	void fanOutObserved(Arc arc, int bindings) {
+
+		long[] f = fanOuts.get(arc);
+
+		if(f == null) {
+			f = new long[2];
+			fanOuts.put(arc, f);
+		}
+
+		f[0]++;
+		f[1] += bindings;
+
+	}
+
+	/**
+	 * @return average bindings per parent of the arc, null if not observed yet
+	 */
+	Integer getFanOut(Arc arc) {
+
+		long[] f = fanOuts.get(arc);
+
+		return f != null ? (int) (f[1] / f[0]) : null;
+
+	}
+
+	/**
+	 * Fetches the bindings of the parent and its not yet fetched siblings loaded by the same arc
+	 * @return parent bindings or null if the batch exceeds graphBatchMaxConnectors
+	 */
+	private List<BindingEl> fetchBatch(Arc arc, GraphObject parent) {
+
+		Map<String, List<BindingEl>> arcBindings = prefetched.get(arc);
+
+		if(arcBindings == null) {
+			arcBindings = new HashMap<String, List<BindingEl>>();
+			prefetched.put(arc, arcBindings);
+		}
+
+		Set<String> parentsURIs = new LinkedHashSet<String>();
+		parentsURIs.add(parent.getURI());
+
+		Arc parentsArc = endpointArcs.get(parent.getURI());
+
+		if(parentsArc != null) {
+
+			Map<Arc, Integer> positions = batchPositions.get(arc);
+
+			if(positions == null) {
+				positions = new IdentityHashMap<Arc, Integer>();
+				batchPositions.put(arc, positions);
+			}
+
+			List<String> candidates = loadedEndpoints.get(parentsArc);
+
+			Integer position = positions.get(parentsArc);
+
+			int i = position != null ? position.intValue() : 0;
+
+			for( ; i < candidates.size() && parentsURIs.size() < batchSize; i++ ) {
+
+				String candidate = candidates.get(i);
+
+				if(!arcBindings.containsKey(candidate)) {
+					parentsURIs.add(candidate);
+				}
+
+			}
+
+			positions.put(parentsArc, i);
+
+		}
+
+		long start = System.currentTimeMillis();
+
+		List<GraphObject> connectorsRS = null;
+
+		if(SqlBindingElementIterator.usesEdgesTables(segments, arc)) {
+
+			List<Adjacency> adjacency = SqlBindingElementIterator.getAdjacency(connection, segments, arc, parentsURIs, queryStats);
+
+			if(adjacency.size() > batchMaxConnectors) {
+				return null;
+			}
+
+			try {
+				connectorsRS = EdgesOperations.getEdgesObjects(connection, adjacency, resolver, queryStats);
+			} catch (SQLException e) {
+				throw new RuntimeException(e);
+			}
+
+		} else {
+
+			VitalSelectQuery connectorQuery = VitalSelectQuery.createInstance();
+			connectorQuery.setOffset(0);
+			connectorQuery.setLimit(batchMaxConnectors + 1);
+			if(arc.connectorContainer.connectorCriteria > 0 ) {
+				connectorQuery.getCriteriaContainer().add( arc.connectorContainer.container );
+			}
+
+			connectorQuery.getCriteriaContainer().add(new VitalGraphQueryPropertyCriterion(SqlBindingElementIterator.getConnectorProperty(arc)).oneOf(SqlBindingElementIterator.toURIPropertiesList(parentsURIs)));
+
+			ResultList connectorsPage = execute(connectorQuery, "connectors");
+
+			if(connectorsPage.getResults().size() > batchMaxConnectors) {
+				return null;
+			}
+
+			connectorsRS = new ArrayList<GraphObject>();
+
+			for(GraphObject g : connectorsPage) {
+				connectorsRS.add(g);
+			}
+
+		}
+
+		Map<String, GraphObject> endpoints = new LinkedHashMap<String, GraphObject>();
+
+		for(GraphObject g : connectorsRS) {
+			endpoints.put(SqlBindingElementIterator.getConnectorEndpointURI(arc, g), null);
+		}
+
+		List<String> endpointsURIs = new ArrayList<String>(endpoints.keySet());
+
+		for(int i = 0; i < endpointsURIs.size(); i += SqlBindingElementIterator.PAGE_SIZE) {
+
+			List<String> page = endpointsURIs.subList(i, Math.min(i + SqlBindingElementIterator.PAGE_SIZE, endpointsURIs.size()));
+
+			VitalSelectQuery endpointsQuery = VitalSelectQuery.createInstance();
+			endpointsQuery.setOffset(0);
+			endpointsQuery.setLimit(page.size());
+
+			VitalGraphCriteriaContainer endpointCriteriaContainer = endpointsQuery.getCriteriaContainer();
+			endpointCriteriaContainer.add(new VitalGraphQueryPropertyCriterion(VitalGraphQueryPropertyCriterion.URI).oneOf(SqlBindingElementIterator.toURIPropertiesList(page)));
+
+			if(arc.endpointContainer.endpointCriteria > 0) {
+				endpointCriteriaContainer.add(arc.endpointContainer.container);
+			}
+
+			ResultList endpointsRS = execute(endpointsQuery, "endpoints");
+
+			for(GraphObject g : endpointsRS) {
+				endpoints.put(g.getURI(), g);
+			}
+
+			endpointsLoaded(arc, endpointsRS);
+
+		}
+
+		for(String parentURI : parentsURIs) {
+			arcBindings.put(parentURI, new ArrayList<BindingEl>());
+		}
+
+		for(GraphObject connector : connectorsRS) {
+
+			GraphObject endpoint = endpoints.get(SqlBindingElementIterator.getConnectorEndpointURI(arc, connector));
+
+			if(endpoint == null) continue;
+
+			List<BindingEl> parentBindings = arcBindings.get(SqlBindingElementIterator.getConnectorParentURI(arc, connector));
+
+			if(parentBindings != null) {
+				parentBindings.add(new BindingEl(arc, endpoint, connector));
+			}
+
+		}
+
+		if(log.isDebugEnabled()) {
+			log.debug("Arc batch of {} parents, {} connectors, {} endpoints, time: {}ms", parentsURIs.size(), connectorsRS.size(), endpointsURIs.size(), System.currentTimeMillis() - start);
+		}
+
+		return arcBindings.remove(parent.getURI());
+
+	}
+
+	private ResultList execute(VitalSelectQuery query, String label) {
+
+		ResultList rl = null;
+
+		try {
+			rl = new SQLSingleSegmentQueryHandler(dataSource, connection, query, segments, resolver, queryStats).execute();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+
+		if(rl.getStatus().getStatus() != VitalStatus.Status.ok) throw new RuntimeException("Error when querying for " + label + ": " + rl.getStatus());
+
+		return rl;
+
 	}
 
 }
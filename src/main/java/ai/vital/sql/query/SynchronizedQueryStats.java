@@ -0,0 +1,77 @@
+package ai.vital.sql.query;
+
+import java.util.List;
+
+import ai.vital.vitalservice.query.QueryStats;
+import ai.vital.vitalservice.query.QueryTime;
+
+/**
+ * Query stats used by the threads evaluating a single query concurrently, the times are added
+ * to the wrapped stats under its lock. The queries times list is synchronized when the query stats
+ * are created, it's shared as is.
+ */
+public class SynchronizedQueryStats extends QueryStats {
+
+	private QueryStats stats;
+
+	private SynchronizedQueryStats(QueryStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * @return null or the stats if already synchronized, the wrappers never nest
+	 */
+	public static QueryStats of(QueryStats stats) {
+		
+		if(stats == null || stats instanceof SynchronizedQueryStats) return stats;
+		
+		return new SynchronizedQueryStats(stats);
+		
+	}
+	
+	@Override
+	public long addDatabaseTimeFrom(long start) {
+		synchronized (stats) {
+			return stats.addDatabaseTimeFrom(start);
+		}
+	}
+
+	@Override
+	public long addObjectsBatchGetTimeFrom(long start) {
+		synchronized (stats) {
+			return stats.addObjectsBatchGetTimeFrom(start);
+		}
+	}
+
+	@Override
+	public long addAttrDataGetTimeFrom(long start) {
+		synchronized (stats) {
+			return stats.addAttrDataGetTimeFrom(start);
+		}
+	}
+
+	@Override
+	public long addObjectsResolvingTimeFrom(long start) {
+		synchronized (stats) {
+			return stats.addObjectsResolvingTimeFrom(start);
+		}
+	}
+
+	@Override
+	public long addProbingTimeFrom(long start) {
+		synchronized (stats) {
+			return stats.addProbingTimeFrom(start);
+		}
+	}
+
+	@Override
+	public List<QueryTime> getQueriesTimes() {
+		return stats.getQueriesTimes();
+	}
+
+	@Override
+	public void setQueriesTimes(List<QueryTime> queriesTimes) {
+		stats.setQueriesTimes(queriesTimes);
+	}
+	
+}
@@ -2,6 +2,9 @@ package ai.vital.sql.schemas;
 
 import static ai.vital.sql.utils.SQLUtils.closeQuietly;
 import static ai.vital.sql.utils.SQLUtils.escapeID;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_ID;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_TYPE;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.VALUE_COLUMNS;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
@@ -12,13 +15,17 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ai.vital.sql.connector.VitalSqlDataSource;
 import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.dao.EdgesOperations;
+import ai.vital.sql.dao.ObjectsOperations;
 import ai.vital.sql.utils.SQLUtils;
 import ai.vital.vitalservice.query.QueryStats;
 import ai.vital.vitalservice.query.QueryTime;
@@ -28,11 +35,23 @@ public class SchemasUtils {
 
 	private final static Logger log = LoggerFactory.getLogger(SchemasUtils.class);
 	
+	//ms waited on top of the catalog TTL before populating a derived table
+	static long CATALOG_REFRESH_GRACE = 5000L;
+	
 	private static String getSegmentSchema(VitalSqlDataSource dataSource, SegmentTable segmentTable) throws IOException {
+		return getSchemaResource(dataSource, segmentTable, "Schema.sql");
+	}
+	
+	private static boolean hasSchemaResource(VitalSqlDataSource dataSource, String resource) {
+		return SchemasUtils.class.getResource(dataSource.getConfig().getDbType().name().toLowerCase() + "/" + resource) != null;
+	}
+	
+	private static String getSchemaResource(VitalSqlDataSource dataSource, SegmentTable segmentTable, String resource) throws IOException {
 		
 		InputStream is = null;
 		try {
-			is = SchemasUtils.class.getResourceAsStream(dataSource.getConfig().getDbType().name().toLowerCase() + "/Schema.sql");
+			is = SchemasUtils.class.getResourceAsStream(dataSource.getConfig().getDbType().name().toLowerCase() + "/" + resource);
+			if(is == null) throw new IOException("Schema resource not found: " + resource + " for " + dataSource.getConfig().getDbType().name());
 			String s = IOUtils.toString(is);
 			return segmentNameFilter(dataSource, segmentTable,  s);
 		} finally {
@@ -92,6 +111,7 @@ public class SchemasUtils {
 			}
 
 		} finally {
+			dataSource.getSegmentsCatalog().invalidate();
 			closeQuietly(stmt1);
 			closeQuietly(stmt);
 			closeQuietly(connection, rs);
@@ -102,6 +122,10 @@ public class SchemasUtils {
 	}
 	
 	public static SegmentTable getSegmentTable(VitalSqlDataSource dataSource, VitalSegment segment) {
+		return dataSource.getSegmentsCatalog().getSegmentTable(segment);
+	}
+	
+	static SegmentTable newSegmentTable(VitalSqlDataSource dataSource, VitalSegment segment) {
 		
 //		String tableName = dataSource.getConfig().getTablesPrefix() + BASE32.encodeToString(segment.getURI().getBytes(StandardCharsets.UTF_8)).toLowerCase();
 		
@@ -121,6 +145,11 @@ public class SchemasUtils {
 		return new SegmentTable(segment, t);
 	}
 
+	/**
+	 * Drops the segment table and its derived tables. The derived tables are dropped whether the catalog
+	 * knows them or not, ready markers first, so that a segment added again with the same URI never finds
+	 * the previous tables.
+	 */
 	public static void deleteSegmentTable(VitalSqlDataSource dataSource, Connection connection, VitalSegment segment) throws SQLException {
 
 		PreparedStatement stmt = null;
@@ -129,9 +158,21 @@ public class SchemasUtils {
 			
 			SegmentTable segmentTable = getSegmentTable(dataSource, segment);
 			
+			for(String derived : Arrays.asList(segmentTable.getEdgesReadyTableName(), segmentTable.getObjectsReadyTableName(), segmentTable.getEdgesTableName(), segmentTable.getObjectsTableName(), segmentTable.getCheckpointsTableName())) {
+				
+				stmt = connection.prepareStatement("DROP TABLE IF EXISTS " + escapeID(connection, derived));
+				stmt.executeUpdate();
+				stmt.close();
+				
+				dataSource.getSegmentsCatalog().onTableDropped(derived);
+				
+			}
+			
 			stmt = connection.prepareStatement("DROP TABLE " + escapeID(connection, segmentTable.tableName));
 			stmt.executeUpdate();
 			
+			dataSource.getSegmentsCatalog().onTableDropped(segmentTable.tableName);
+			
 		} finally {
 			
 			closeQuietly(stmt);
@@ -142,6 +183,14 @@ public class SchemasUtils {
 
 	public static boolean createSegmentTable(VitalSqlDataSource dataSource,
 			Connection connection, VitalSegment added) throws Exception {
+		return createSegmentTable(dataSource, connection, added, false);
+	}
+	
+	/**
+	 * @param deferIndexes creates the table without secondary indices, see {@link #buildSegmentIndexes}
+	 */
+	public static boolean createSegmentTable(VitalSqlDataSource dataSource,
+			Connection connection, VitalSegment added, boolean deferIndexes) throws Exception {
 
 		ResultSet rs = null;
 		
@@ -178,7 +227,16 @@ public class SchemasUtils {
 				
 			} else {
 				
-				String schema = getSegmentSchema(dataSource, segmentTable);
+				//derived tables first, any process that sees the segment table mirrors its writes
+				if(Boolean.TRUE.equals(dataSource.getConfig().getEdgesTable())) {
+					createEdgesTable(dataSource, connection, added, false);
+				}
+				
+				if(Boolean.TRUE.equals(dataSource.getConfig().getObjectsTable())) {
+					createObjectsTable(dataSource, connection, added, false);
+				}
+				
+				String schema = deferIndexes ? getSegmentIndexes(dataSource, segmentTable).tableDDL : getSegmentSchema(dataSource, segmentTable);
 				
 				log.debug("Creating system table: {}",  schema);
 				
@@ -213,6 +271,7 @@ public class SchemasUtils {
 					
 				}
 				
+				dataSource.getSegmentsCatalog().onTableCreated(segmentTable.tableName);
 				
 				return true;
 				
@@ -351,6 +410,548 @@ public class SchemasUtils {
 	
 	
 
+	public static List<String> listTablesWithColumn(Connection connection, VitalSqlDataSource dataSource, String column) throws SQLException {
+		
+		PreparedStatement stmt = null;
+		
+		ResultSet rs = null;
+		
+		List<String> res = new ArrayList<String>();
+		
+		String pref = dataSource.getConfig().getTablesPrefix();
+		
+		try {
+			
+			stmt = connection.prepareStatement(dataSource.getDialect().getTablesWithColumn());
+			stmt.setString(1, column);
+			
+			rs = stmt.executeQuery();
+			
+			while(rs.next()) {
+				String s = rs.getString(1);
+				if(s.startsWith(pref)) {
+					res.add(s);
+				}
+			}
+			
+		} finally {
+			closeQuietly(stmt, rs);
+		}
+		
+		return res;
+		
+	}
+	
+	public static List<String> listTablesWithIndex(Connection connection, VitalSqlDataSource dataSource, String index) throws SQLException {
+		
+		PreparedStatement stmt = null;
+		
+		ResultSet rs = null;
+		
+		List<String> res = new ArrayList<String>();
+		
+		String query = dataSource.getDialect().getTablesWithIndex();
+		
+		if(query == null) return res;
+		
+		String pref = dataSource.getConfig().getTablesPrefix();
+		
+		try {
+			
+			stmt = connection.prepareStatement(query);
+			stmt.setString(1, index);
+			
+			rs = stmt.executeQuery();
+			
+			while(rs.next()) {
+				String s = rs.getString(1);
+				if(s.startsWith(pref)) {
+					res.add(s);
+				}
+			}
+			
+		} finally {
+			closeQuietly(stmt, rs);
+		}
+		
+		return res;
+		
+	}
+	
+	//index present in the current schema revision only
+	final static String COMPOSITE_INDEX = "uri_name_index";
+	
+	//single column index of the previous schema revisions, dropped by CompositeIndexes.sql
+	final static String SINGLE_COLUMN_INDEX = "uri_index";
+	
+	//PostgreSQL uri index in bytewise order, suffix of the table name
+	final static String URI_BINARY_INDEX = "_uri_binary_index";
+	
+	/**
+	 * Brings a segment table created with an older schema version up to date.
+	 * Adds value_type column if missing and backfills it in id ranges, rows without it are still
+	 * decoded by probing all value columns so the table stays usable while the migration runs.
+	 * Replaces single column indices with composite (name, value) and (uri, name) ones where the
+	 * database type has the CompositeIndexes.sql migration, a table without the single column indices gets
+	 * the missing schema indices built instead. Adds the uri indices in bytewise order
+	 * used by keyset pages where the database type has the UriBinaryIndex.sql migration.
+	 * @return true if the table was altered
+	 */
+	public static boolean upgradeSegmentTable(VitalSqlDataSource dataSource, Connection connection, VitalSegment segment) throws Exception {
+		
+		SegmentTable segmentTable = getSegmentTable(dataSource, segment);
+		
+		boolean altered = false;
+		
+		if( ! listTablesWithColumn(connection, dataSource, COLUMN_VALUE_TYPE).contains(segmentTable.tableName) ) {
+			
+			String ddl = getSchemaResource(dataSource, segmentTable, "AddValueType.sql");
+			
+			log.info("Adding {} column to segment table {}", COLUMN_VALUE_TYPE, segmentTable.tableName);
+			
+			executeStatements(dataSource, connection, ddl);
+			
+			altered = true;
+			
+		}
+		
+		dataSource.getSegmentsCatalog().onValueTypeColumnAdded(segmentTable.tableName);
+		
+		boolean compositeMissing = hasSchemaResource(dataSource, "CompositeIndexes.sql") && ! listTablesWithIndex(connection, dataSource, COMPOSITE_INDEX).contains(segmentTable.tableName);
+		
+		if( compositeMissing && ! listTablesWithIndex(connection, dataSource, SINGLE_COLUMN_INDEX).contains(segmentTable.tableName) ) {
+			
+			//created with deferred indices or left without them by a failed deferred import, the schema has the composite ones
+			altered = buildSegmentIndexes(dataSource, connection, segmentTable, false) > 0 || altered;
+			
+		} else if( compositeMissing ) {
+			
+			String ddl = getSchemaResource(dataSource, segmentTable, "CompositeIndexes.sql");
+			
+			log.info("Replacing single column indices with composite ones in segment table {}", segmentTable.tableName);
+			
+			long start = System.currentTimeMillis();
+			
+			executeStatements(dataSource, connection, ddl);
+			
+			log.info("Segment table {} indices rebuilt, {}ms", segmentTable.tableName, System.currentTimeMillis() - start);
+			
+			altered = true;
+			
+		}
+		
+		if( hasSchemaResource(dataSource, "UriBinaryIndex.sql") && ! listTablesWithIndex(connection, dataSource, segmentTable.tableName + URI_BINARY_INDEX).contains(segmentTable.tableName) ) {
+			
+			log.info("Adding uri binary order index to segment table {}", segmentTable.tableName);
+			
+			executeStatements(dataSource, connection, getSchemaResource(dataSource, segmentTable, "UriBinaryIndex.sql"));
+			
+			altered = true;
+			
+		}
+		
+		if( hasSchemaResource(dataSource, "ObjectsUriBinaryIndex.sql") && tableExists(connection, dataSource, segmentTable.getObjectsTableName())
+				&& ! listTablesWithIndex(connection, dataSource, segmentTable.getObjectsTableName() + URI_BINARY_INDEX).contains(segmentTable.getObjectsTableName()) ) {
+			
+			log.info("Adding uri binary order index to objects table {}", segmentTable.getObjectsTableName());
+			
+			executeStatements(dataSource, connection, getSchemaResource(dataSource, segmentTable, "ObjectsUriBinaryIndex.sql"));
+			
+			altered = true;
+			
+		}
+		
+		int updated = backfillValueType(connection, segmentTable);
+		
+		log.info("Segment table {} value type backfilled rows: {}", segmentTable.tableName, updated);
+		
+		//a single wait for catalogs refresh covers both tables
+		boolean edges = Boolean.TRUE.equals(dataSource.getConfig().getEdgesTable()) && !segmentTable.edgesTableReady;
+		
+		boolean objects = Boolean.TRUE.equals(dataSource.getConfig().getObjectsTable()) && !segmentTable.objectsTableReady;
+		
+		if(edges || objects) {
+			altered = createDerivedTables(dataSource, connection, segment, edges, objects, true) || altered;
+		}
+		
+		return altered;
+		
+	}
+	
+	/**
+	 * Creates the edges adjacency table of a segment and fills it with the edges already stored,
+	 * see {@link #createDerivedTables}
+	 * @param populate false for a segment table that doesn't exist yet
+	 * @return true if the table was created or completed
+	 */
+	public static boolean createEdgesTable(VitalSqlDataSource dataSource, Connection connection, VitalSegment segment, boolean populate) throws Exception {
+		return createDerivedTables(dataSource, connection, segment, true, false, populate);
+	}
+	
+	/**
+	 * Creates the objects header table of a segment and fills it with the objects already stored,
+	 * see {@link #createDerivedTables}
+	 * @param populate false for a segment table that doesn't exist yet
+	 * @return true if the table was created or completed
+	 */
+	public static boolean createObjectsTable(VitalSqlDataSource dataSource, Connection connection, VitalSegment segment, boolean populate) throws Exception {
+		return createDerivedTables(dataSource, connection, segment, false, true, populate);
+	}
+	
+	/**
+	 * Creates the edges and/or objects tables of a segment and fills them with the rows already stored.
+	 * Writes are mirrored as soon as a table exists, reads use it only once its ready marker table exists:
+	 * the tables are published first, populated once after all processes catalogs had time to see them
+	 * and then marked ready. A table left unpopulated is completed.
+	 * @param populate false for a segment table that doesn't exist yet
+	 * @return true if any table was created or completed
+	 */
+	public static boolean createDerivedTables(VitalSqlDataSource dataSource, Connection connection, VitalSegment segment, boolean edges, boolean objects, boolean populate) throws Exception {
+		
+		SegmentTable segmentTable = getSegmentTable(dataSource, segment);
+		
+		boolean edgesPending = edges && publishDerivedTable(dataSource, connection, segmentTable, segmentTable.getEdgesTableName(), segmentTable.getEdgesReadyTableName(), "Edges.sql");
+		
+		boolean objectsPending = objects && publishDerivedTable(dataSource, connection, segmentTable, segmentTable.getObjectsTableName(), segmentTable.getObjectsReadyTableName(), "Objects.sql");
+		
+		if(!edgesPending && !objectsPending) return false;
+		
+		if(populate) {
+			
+			awaitCatalogsRefresh(dataSource);
+			
+			if(edgesPending) {
+				int inserted = EdgesOperations.populateEdges(connection, segmentTable);
+				log.info("Edges table {} populated rows: {}", segmentTable.getEdgesTableName(), inserted);
+			}
+			
+			if(objectsPending) {
+				int inserted = ObjectsOperations.populateObjects(connection, segmentTable);
+				log.info("Objects table {} populated rows: {}", segmentTable.getObjectsTableName(), inserted);
+			}
+			
+		}
+		
+		if(edgesPending) createReadyMarker(dataSource, connection, segmentTable.getEdgesReadyTableName());
+		
+		if(objectsPending) createReadyMarker(dataSource, connection, segmentTable.getObjectsReadyTableName());
+		
+		return true;
+		
+	}
+	
+	/**
+	 * Creates the derived table if it doesn't exist and publishes it in the catalog
+	 * @return false if the table is already marked ready
+	 */
+	private static boolean publishDerivedTable(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, String tableName, String readyTableName, String resource) throws Exception {
+		
+		if( tableExists(connection, dataSource, readyTableName) ) {
+			log.debug("Table already exists: {}", tableName);
+			return false;
+		}
+		
+		if( !tableExists(connection, dataSource, tableName) ) {
+			
+			String ddl = getSchemaResource(dataSource, segmentTable, resource);
+			
+			log.info("Creating table {}", tableName);
+			
+			executeStatements(dataSource, connection, ddl);
+			
+		}
+		
+		//writes are mirrored from now on
+		dataSource.getSegmentsCatalog().onTableCreated(tableName);
+		
+		return true;
+		
+	}
+	
+	/**
+	 * Waits until the segments catalogs of all processes have refreshed, plus a grace period for writes
+	 * started with the previous state
+	 */
+	private static void awaitCatalogsRefresh(VitalSqlDataSource dataSource) throws InterruptedException {
+		
+		Integer ttl = dataSource.getConfig().getSegmentsCatalogTTL();
+		
+		long wait = ( ttl != null && ttl.intValue() > 0 ? ttl.intValue() * 1000L : 0L ) + CATALOG_REFRESH_GRACE;
+		
+		log.info("Waiting {}ms for segments catalogs refresh", wait);
+		
+		Thread.sleep(wait);
+		
+	}
+	
+	private static void createReadyMarker(VitalSqlDataSource dataSource, Connection connection, String tableName) throws SQLException {
+		
+		executeStatements(dataSource, connection, "CREATE TABLE " + escapeID(connection, tableName) + " ( id INT )");
+		
+		dataSource.getSegmentsCatalog().onTableCreated(tableName);
+		
+	}
+	
+	/**
+	 * Creates the bulk import checkpoints table of a segment if it doesn't exist yet
+	 * @return true if the table was created
+	 */
+	public static boolean createCheckpointsTable(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable) throws Exception {
+		
+		if( dataSource.getSegmentsCatalog().tableExists(connection, segmentTable.getCheckpointsTableName()) ) {
+			return false;
+		}
+		
+		String ddl = getSchemaResource(dataSource, segmentTable, "Checkpoints.sql");
+		
+		log.info("Creating checkpoints table {}", segmentTable.getCheckpointsTableName());
+		
+		executeStatements(dataSource, connection, ddl);
+		
+		dataSource.getSegmentsCatalog().onTableCreated(segmentTable.getCheckpointsTableName());
+		
+		return true;
+		
+	}
+	
+	//secondary index clause of MySQL CREATE TABLE
+	private final static Pattern INDEX_CLAUSE = Pattern.compile("^\\s*INDEX\\s+(\\w+)\\s*(\\(.*\\))\\s*,?\\s*$", Pattern.MULTILINE);
+	
+	//trailing comma left once MySQL index clauses are removed
+	private final static Pattern TRAILING_COMMA = Pattern.compile(",(\\s|--[^\\n]*)*(\\)\\s*ENGINE)");
+	
+	//PostgreSQL CREATE INDEX statement
+	private final static Pattern CREATE_INDEX = Pattern.compile("^CREATE INDEX\\s+(\"[^\"]+\")\\s+(ON\\s+.*?)\\s*;?\\s*$", Pattern.MULTILINE);
+	
+	/**
+	 * Segment schema split into the table without secondary indices and the indices definitions
+	 */
+	static class SegmentIndexes {
+		
+		String tableDDL;
+		
+		List<String> names = new ArrayList<String>();
+		
+		//MySQL index clauses or PostgreSQL CREATE INDEX remainders
+		List<String> definitions = new ArrayList<String>();
+		
+		boolean alterTable = false;
+		
+	}
+	
+	static SegmentIndexes getSegmentIndexes(VitalSqlDataSource dataSource, SegmentTable segmentTable) throws IOException {
+		
+		String schema = getSegmentSchema(dataSource, segmentTable);
+		
+		SegmentIndexes si = new SegmentIndexes();
+		
+		Matcher m = INDEX_CLAUSE.matcher(schema);
+		
+		while(m.find()) {
+			si.names.add(m.group(1));
+			si.definitions.add("INDEX " + m.group(1) + m.group(2));
+			si.alterTable = true;
+		}
+		
+		if(si.alterTable) {
+			si.tableDDL = TRAILING_COMMA.matcher(INDEX_CLAUSE.matcher(schema).replaceAll("")).replaceFirst("\n$2");
+			return si;
+		}
+		
+		m = CREATE_INDEX.matcher(schema);
+		
+		while(m.find()) {
+			si.names.add(m.group(1).replace("\"", ""));
+			si.definitions.add(m.group(1) + " " + m.group(2));
+		}
+		
+		si.tableDDL = CREATE_INDEX.matcher(schema).replaceAll("");
+		
+		return si;
+		
+	}
+	
+	/**
+	 * Builds the missing secondary indices of a segment table created with deferred indices,
+	 * MySQL in a single ALTER TABLE pass, PostgreSQL with CREATE INDEX statements
+	 * @param concurrently PostgreSQL CREATE INDEX CONCURRENTLY, doesn't block writes
+	 * @return number of indices built
+	 */
+	public static int buildSegmentIndexes(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable, boolean concurrently) throws Exception {
+		
+		SegmentIndexes si = getSegmentIndexes(dataSource, segmentTable);
+		
+		List<String> missing = new ArrayList<String>();
+		
+		for(int i = 0; i < si.names.size(); i++) {
+			if(!listTablesWithIndex(connection, dataSource, si.names.get(i)).contains(segmentTable.tableName)) {
+				missing.add(si.definitions.get(i));
+			}
+		}
+		
+		if(missing.isEmpty()) return 0;
+		
+		log.info("Building {} indices of segment table {}", missing.size(), segmentTable.tableName);
+		
+		long start = System.currentTimeMillis();
+		
+		if(si.alterTable) {
+			
+			StringBuilder sb = new StringBuilder("ALTER TABLE ").append(escapeID(connection, segmentTable.tableName));
+			
+			for(int i = 0; i < missing.size(); i++) {
+				sb.append(i > 0 ? ", " : " ").append("ADD ").append(missing.get(i));
+			}
+			
+			executeStatements(dataSource, connection, sb.toString());
+			
+		} else {
+			
+			for(String definition : missing) {
+				executeStatements(dataSource, connection, "CREATE INDEX " + (concurrently ? "CONCURRENTLY " : "") + definition);
+			}
+			
+		}
+		
+		log.info("Segment table {} indices built, {}ms", segmentTable.tableName, System.currentTimeMillis() - start);
+		
+		return missing.size();
+		
+	}
+	
+	/**
+	 * Drops the secondary indices of a segment table before a large load, see {@link #buildSegmentIndexes}
+	 * @return number of indices dropped
+	 */
+	public static int dropSegmentIndexes(VitalSqlDataSource dataSource, Connection connection, SegmentTable segmentTable) throws Exception {
+		
+		SegmentIndexes si = getSegmentIndexes(dataSource, segmentTable);
+		
+		List<String> existing = new ArrayList<String>();
+		
+		for(String name : si.names) {
+			if(listTablesWithIndex(connection, dataSource, name).contains(segmentTable.tableName)) {
+				existing.add(name);
+			}
+		}
+		
+		if(existing.isEmpty()) return 0;
+		
+		log.info("Dropping {} indices of segment table {}", existing.size(), segmentTable.tableName);
+		
+		if(si.alterTable) {
+			
+			StringBuilder sb = new StringBuilder("ALTER TABLE ").append(escapeID(connection, segmentTable.tableName));
+			
+			for(int i = 0; i < existing.size(); i++) {
+				sb.append(i > 0 ? ", " : " ").append("DROP INDEX ").append(existing.get(i));
+			}
+			
+			executeStatements(dataSource, connection, sb.toString());
+			
+		} else {
+			
+			for(String name : existing) {
+				executeStatements(dataSource, connection, "DROP INDEX " + escapeID(connection, name));
+			}
+			
+		}
+		
+		return existing.size();
+		
+	}
+	
+	static int BACKFILL_RANGE = 50000;
+	
+	private static int backfillValueType(Connection connection, SegmentTable segmentTable) throws SQLException {
+		
+		String tableName = escapeID(connection, segmentTable.tableName);
+		
+		PreparedStatement stmt = null;
+		
+		ResultSet rs = null;
+		
+		long minID = 0;
+		long maxID = 0;
+		
+		try {
+			
+			stmt = connection.prepareStatement("SELECT MIN(" + COLUMN_ID + "), MAX(" + COLUMN_ID + ") FROM " + tableName + " WHERE " + COLUMN_VALUE_TYPE + " IS NULL");
+			rs = stmt.executeQuery();
+			
+			if(!rs.next()) return 0;
+			
+			minID = rs.getLong(1);
+			if(rs.wasNull()) return 0;
+			maxID = rs.getLong(2);
+			
+		} finally {
+			closeQuietly(stmt, rs);
+		}
+		
+		StringBuilder sql = new StringBuilder("UPDATE ").append(tableName).append(" SET ").append(COLUMN_VALUE_TYPE).append(" = CASE");
+		for(int i = 0; i < VALUE_COLUMNS.length; i++) {
+			sql.append(" WHEN ").append(VALUE_COLUMNS[i]).append(" IS NOT NULL THEN ").append(i + 1);
+		}
+		sql.append(" END WHERE ").append(COLUMN_VALUE_TYPE).append(" IS NULL AND ").append(COLUMN_ID).append(" >= ? AND ").append(COLUMN_ID).append(" < ?");
+		
+		int updated = 0;
+		
+		try {
+			
+			stmt = connection.prepareStatement(sql.toString());
+			
+			for(long from = minID; from <= maxID; from += BACKFILL_RANGE) {
+				
+				stmt.setLong(1, from);
+				stmt.setLong(2, from + BACKFILL_RANGE);
+				
+				updated += stmt.executeUpdate();
+				
+				log.debug("Value type backfill {} range [{}, {}), total: {}", segmentTable.tableName, from, from + BACKFILL_RANGE, updated);
+				
+			}
+			
+		} finally {
+			closeQuietly(stmt);
+		}
+		
+		return updated;
+		
+	}
+	
+	private static void executeStatements(VitalSqlDataSource dataSource, Connection connection, String sql) throws SQLException {
+		
+		PreparedStatement stmt = null;
+		
+		try {
+			
+			if( dataSource.singleStatementAtATime() ) {
+				
+				for(String s : sql.split(";")) {
+					
+					s = s.trim();
+					if(s.isEmpty()) continue;
+					
+					stmt = connection.prepareStatement(s);
+					stmt.executeUpdate();
+					stmt.close();
+					
+				}
+				
+			} else {
+				
+				stmt = connection.prepareStatement(sql);
+				stmt.executeUpdate();
+				
+			}
+			
+		} finally {
+			closeQuietly(stmt);
+		}
+		
+	}
+
 	final protected static char[] hexArray = "0123456789abcdef".toCharArray();
 	public static String bytesToHex(byte[] bytes) {
 	    char[] hexChars = new char[bytes.length * 2];
@@ -0,0 +1,222 @@
+package ai.vital.sql.schemas;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.model.VitalSignsToSqlBridge;
+import ai.vital.vitalservice.query.QueryStats;
+import ai.vital.vitalsigns.model.VitalSegment;
+
+/**
+ * In-process catalog of segment tables. Keeps the list of existing tables for
+ * a configured time (segmentsCatalogTTL seconds) so that the hot path does not
+ * issue a SHOW TABLES per operation, and interns SegmentTable objects per segment URI.
+ * Tables created or dropped through this process update the catalog immediately.
+ * With segmentsCatalogTTL 0 every check lists the tables once and the value_type column
+ * is only looked up when new tables appear or a segment table in use still lacks it.
+ */
+public class SegmentsCatalog {
+
+	private final static Logger log = LoggerFactory.getLogger(SegmentsCatalog.class);
+
+	private VitalSqlDataSource dataSource;
+
+	private final ConcurrentHashMap<String, SegmentTable> segmentTables = new ConcurrentHashMap<String, SegmentTable>();
+
+	private volatile Set<String> tables = null;
+
+	//tables having value_type column
+	private volatile Set<String> valueTypeTables = new HashSet<String>();
+
+	private volatile long lastRefresh = 0L;
+
+	public SegmentsCatalog(VitalSqlDataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	public SegmentTable getSegmentTable(VitalSegment segment) {
+
+		SegmentTable segmentTable = segmentTables.get(segment.getURI());
+
+		if(segmentTable == null) {
+
+			segmentTable = SchemasUtils.newSegmentTable(dataSource, segment);
+
+			segmentTable.valueTypeColumn = valueTypeTables.contains(segmentTable.tableName);
+
+			Set<String> current = tables;
+
+			if(current != null) setDerivedTables(segmentTable, current);
+
+			SegmentTable previous = segmentTables.putIfAbsent(segment.getURI(), segmentTable);
+
+			if(previous != null) segmentTable = previous;
+
+		}
+
+		return segmentTable;
+
+	}
+
+	public boolean tableExists(Connection connection, String tableName) throws SQLException {
+		return tableExists(connection, tableName, null);
+	}
+
+	/**
+	 * Checks the table against the cached list, a miss always forces a refresh
+	 * as the table might have been created by another process.
+	 */
+	public boolean tableExists(Connection connection, String tableName, QueryStats queryStats) throws SQLException {
+
+		//not cached, a single listing
+		if( !isCached() ) return getTables(connection, true, queryStats).contains(tableName);
+
+		if( getTables(connection, false, queryStats).contains(tableName) ) return true;
+
+		return getTables(connection, true, queryStats).contains(tableName);
+
+	}
+
+	public Set<String> getTables(Connection connection, boolean forceRefresh, QueryStats queryStats) throws SQLException {
+
+		Set<String> current = tables;
+
+		if(!forceRefresh && current != null && !isExpired()) return current;
+
+		synchronized (this) {
+
+			//another thread might have just refreshed it
+			if(!forceRefresh && tables != null && !isExpired()) return tables;
+
+			long start = System.currentTimeMillis();
+
+			Set<String> refreshed = Collections.unmodifiableSet(new HashSet<String>(SchemasUtils.listAllTables(connection, dataSource, queryStats)));
+
+			Set<String> previous = tables;
+
+			tables = refreshed;
+
+			//without caching the columns are only checked once new tables appear or a segment table still lacks value_type
+			if( isCached() || previous == null || !previous.containsAll(refreshed) || lacksValueType(refreshed) ) {
+				valueTypeTables = Collections.unmodifiableSet(new HashSet<String>(SchemasUtils.listTablesWithColumn(connection, dataSource, VitalSignsToSqlBridge.COLUMN_VALUE_TYPE)));
+			}
+
+			for(SegmentTable segmentTable : segmentTables.values()) {
+				segmentTable.valueTypeColumn = valueTypeTables.contains(segmentTable.tableName);
+				setDerivedTables(segmentTable, refreshed);
+			}
+
+			lastRefresh = System.currentTimeMillis();
+
+			log.debug("Segments catalog refreshed, {} tables, {}ms", refreshed.size(), lastRefresh - start);
+
+			return refreshed;
+
+		}
+
+	}
+
+	//an existing interned segment table without value_type column, it may have been upgraded by another process
+	private boolean lacksValueType(Set<String> existing) {
+		
+		Set<String> current = valueTypeTables;
+		
+		for(SegmentTable segmentTable : segmentTables.values()) {
+			if(existing.contains(segmentTable.tableName) && !current.contains(segmentTable.tableName)) return true;
+		}
+		
+		return false;
+		
+	}
+
+	private boolean isCached() {
+		Integer ttl = dataSource.getConfig().getSegmentsCatalogTTL();
+		return ttl != null && ttl.intValue() > 0;
+	}
+
+	private boolean isExpired() {
+
+		if(!isCached()) return true;
+
+		return System.currentTimeMillis() - lastRefresh > dataSource.getConfig().getSegmentsCatalogTTL().intValue() * 1000L;
+
+	}
+
+	public synchronized void onTableCreated(String tableName) {
+
+		//new tables are always created with the current schema
+		onValueTypeColumnAdded(tableName);
+
+		setDerivedTable(tableName, true);
+
+		if(tables == null) return;
+
+		Set<String> n = new HashSet<String>(tables);
+		n.add(tableName);
+		tables = Collections.unmodifiableSet(n);
+
+	}
+
+	public synchronized void onTableDropped(String tableName) {
+
+		setDerivedTable(tableName, false);
+
+		//a segment created again with the same URI gets a new table object
+		for(Entry<String, SegmentTable> e : segmentTables.entrySet()) {
+			if(e.getValue().tableName.equals(tableName)) segmentTables.remove(e.getKey(), e.getValue());
+		}
+
+		if(tables == null) return;
+
+		Set<String> n = new HashSet<String>(tables);
+		n.remove(tableName);
+		tables = Collections.unmodifiableSet(n);
+
+	}
+
+	public synchronized void onValueTypeColumnAdded(String tableName) {
+
+		Set<String> n = new HashSet<String>(valueTypeTables);
+		n.add(tableName);
+		valueTypeTables = Collections.unmodifiableSet(n);
+
+		for(SegmentTable segmentTable : segmentTables.values()) {
+			if(segmentTable.tableName.equals(tableName)) segmentTable.valueTypeColumn = true;
+		}
+
+	}
+
+	//edges and objects tables of a segment and their ready markers
+	private void setDerivedTable(String tableName, boolean exists) {
+
+		for(SegmentTable segmentTable : segmentTables.values()) {
+			if(segmentTable.getEdgesTableName().equals(tableName)) segmentTable.edgesTable = exists;
+			if(segmentTable.getEdgesReadyTableName().equals(tableName)) segmentTable.edgesTableReady = exists;
+			if(segmentTable.getObjectsTableName().equals(tableName)) segmentTable.objectsTable = exists;
+			if(segmentTable.getObjectsReadyTableName().equals(tableName)) segmentTable.objectsTableReady = exists;
+		}
+
+	}
+
+	private static void setDerivedTables(SegmentTable segmentTable, Set<String> tables) {
+		segmentTable.edgesTable = tables.contains(segmentTable.getEdgesTableName());
+		segmentTable.edgesTableReady = segmentTable.edgesTable && tables.contains(segmentTable.getEdgesReadyTableName());
+		segmentTable.objectsTable = tables.contains(segmentTable.getObjectsTableName());
+		segmentTable.objectsTableReady = segmentTable.objectsTable && tables.contains(segmentTable.getObjectsReadyTableName());
+	}
+
+	public synchronized void invalidate() {
+		tables = null;
+	}
+
+}
@@ -7,8 +7,23 @@ public interface SqlDialect {
 	//returns java.sql.Types constant for given column
 	public int getColumnType(String string);
 
+	//query listing tables of current database/schema with given column, 1 parameter: column name
+	public String getTablesWithColumn();
+	
+	//query listing tables of current database/schema with given index, 1 parameter: index name, null if indexes are not available
+	public String getTablesWithIndex();
+	
+	//max number of parameters of a single prepared statement
+	public int getMaxParameters();
+
 	public String locate(String needle, String stack);
 	
 	public String regexp(String needle, String stack);
 	
+	//ORDER BY element, null values go first in ascending and last in descending order
+	public String orderBy(String expression, boolean asc);
+	
+	//string expression compared and sorted in code point order, the order of java strings comparison
+	public String binaryOrder(String expression);
+	
 }
@@ -1,7 +1,9 @@
 package ai.vital.sql.schemas.amazonredshift;
 
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_CHANNEL_URI;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_EXTERNAL;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_NAME;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_TSTAMP;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_URI;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_BOOLEAN;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_BOOLEAN_MULTIVALUE;
@@ -24,8 +26,10 @@ import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_STRING;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_STRING_MULTIVALUE;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_TRUTH;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_TRUTH_MULTIVALUE;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_TYPE;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_URI;
 import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VALUE_URI_MULTIVALUE;
+import static ai.vital.sql.model.VitalSignsToSqlBridge.COLUMN_VITALTYPE;
 
 import java.sql.Types;
 import java.util.HashMap;
@@ -44,6 +48,9 @@ public class AmazonRedshiftSqlDialect implements SqlDialect {
 	static {
 		column2Type.put(COLUMN_URI, Types.VARCHAR);
 		column2Type.put(COLUMN_NAME, Types.VARCHAR);
+		column2Type.put(COLUMN_VITALTYPE, Types.VARCHAR);
+		column2Type.put(COLUMN_TSTAMP, Types.BIGINT);
+		column2Type.put(COLUMN_CHANNEL_URI, Types.VARCHAR);
 		column2Type.put(COLUMN_EXTERNAL, Types.BOOLEAN);
 		
 		column2Type.put(COLUMN_VALUE_BOOLEAN, Types.BOOLEAN);
@@ -83,6 +90,8 @@ public class AmazonRedshiftSqlDialect implements SqlDialect {
 		
 		column2Type.put(COLUMN_VALUE_URI, Types.VARCHAR);
 		column2Type.put(COLUMN_VALUE_URI_MULTIVALUE, Types.VARCHAR);
+		
+		column2Type.put(COLUMN_VALUE_TYPE, Types.SMALLINT);
 		  
 	}
 	
@@ -95,6 +104,25 @@ public class AmazonRedshiftSqlDialect implements SqlDialect {
 	}
 
 
+	@Override
+	public String getTablesWithColumn() {
+		return "SELECT table_name FROM information_schema.columns WHERE table_schema = current_schema() AND column_name = ?";
+	}
+
+
+	@Override
+	public String getTablesWithIndex() {
+		//indices NOT AVAILABLE
+		return null;
+	}
+
+
+	@Override
+	public int getMaxParameters() {
+		return 32767;
+	}
+
+
 	@Override
 	public String locate(String needle, String stack) {
 		return "strpos(" +stack + ", " + needle + ")";
@@ -106,4 +134,18 @@ public class AmazonRedshiftSqlDialect implements SqlDialect {
 		return stack + " ~ " + needle;
 	}
 
+
+	@Override
+	public String orderBy(String expression, boolean asc) {
+		//nulls are the highest values by default
+		return expression + (asc ? " ASC NULLS FIRST" : " DESC NULLS LAST");
+	}
+
+
+	@Override
+	public String binaryOrder(String expression) {
+		//strings are compared bytewise
+		return expression;
+	}
+
 }
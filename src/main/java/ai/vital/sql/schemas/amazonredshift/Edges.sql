@@ -0,0 +1,15 @@
+CREATE TABLE "${NAME}_edges" (
+
+  id bigint identity(0, 1),
+  edge_uri VARCHAR(191) NOT NULL,
+  source_uri VARCHAR(191) NOT NULL,
+  destination_uri VARCHAR(191) NOT NULL,
+  vitaltype VARCHAR(191) NOT NULL,
+  hyper BOOLEAN NOT NULL,
+  
+  PRIMARY KEY (id)
+  
+  -- indices NOT AVAILABLE
+  
+)
+COMPOUND SORTKEY (source_uri, destination_uri)
\ No newline at end of file
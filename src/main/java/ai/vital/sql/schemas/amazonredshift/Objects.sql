@@ -0,0 +1,15 @@
+CREATE TABLE "${NAME}_objects" (
+
+  uri VARCHAR(191) NOT NULL,
+  vitaltype VARCHAR(191) NOT NULL,
+  tstamp BIGINT,
+  channeluri VARCHAR(191),
+  ontology_iri VARCHAR(191),
+  version_iri VARCHAR(191),
+  
+  PRIMARY KEY (uri)
+  
+  -- indices NOT AVAILABLE
+  
+)
+COMPOUND SORTKEY (uri)
\ No newline at end of file
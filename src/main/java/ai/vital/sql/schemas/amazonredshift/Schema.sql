@@ -8,6 +8,8 @@ CREATE TABLE "${NAME}" (
   tstamp BIGINT,
   channeluri varchar(191),
   external BOOLEAN NOT NULL,
+  -- set value column, see VitalSignsToSqlBridge.VALUE_COLUMNS
+  value_type SMALLINT,
   
   value_boolean BOOLEAN,
   value_boolean_multivalue BOOLEAN,
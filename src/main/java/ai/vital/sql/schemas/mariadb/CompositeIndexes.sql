@@ -0,0 +1,41 @@
+ALTER TABLE `${NAME}`
+  ADD INDEX uri_name_index( uri, name ),
+  ADD INDEX name_value_boolean_index( name, value_boolean ),
+  ADD INDEX name_value_boolean_multivalue_index( name, value_boolean_multivalue ),
+  ADD INDEX name_value_date_index( name, value_date ),
+  ADD INDEX name_value_date_multivalue_index( name, value_date_multivalue ),
+  ADD INDEX name_value_double_index( name, value_double ),
+  ADD INDEX name_value_double_multivalue_index( name, value_double_multivalue ),
+  ADD INDEX name_value_float_index( name, value_float ),
+  ADD INDEX name_value_float_multivalue_index( name, value_float_multivalue ),
+  ADD INDEX name_value_integer_index( name, value_integer ),
+  ADD INDEX name_value_integer_multivalue_index( name, value_integer_multivalue ),
+  ADD INDEX name_value_long_index( name, value_long ),
+  ADD INDEX name_value_long_multivalue_index( name, value_long_multivalue ),
+  ADD INDEX name_value_string_index( name, value_string(191) ),
+  ADD INDEX name_value_string_multivalue_index( name, value_string_multivalue(191) ),
+  ADD INDEX name_value_truth_index( name, value_truth ),
+  ADD INDEX name_value_truth_multivalue_index( name, value_truth_multivalue ),
+  ADD INDEX name_value_uri_index( name, value_uri ),
+  ADD INDEX name_value_uri_multivalue_index( name, value_uri_multivalue ),
+  -- redundant single column indices
+  DROP INDEX uri_index,
+  DROP INDEX name_index,
+  DROP INDEX value_boolean_index,
+  DROP INDEX value_boolean_multivalue_index,
+  DROP INDEX value_date_index,
+  DROP INDEX value_date_multivalue_index,
+  DROP INDEX value_double_index,
+  DROP INDEX value_double_multivalue_index,
+  DROP INDEX value_float_index,
+  DROP INDEX value_float_multivalue_index,
+  DROP INDEX value_integer_index,
+  DROP INDEX value_integer_multivalue_index,
+  DROP INDEX value_long,
+  DROP INDEX value_long_multivalue_index,
+  DROP INDEX value_string_index,
+  DROP INDEX value_string_multivalue_index,
+  DROP INDEX value_truth_index,
+  DROP INDEX value_truth_multivalue_index,
+  DROP INDEX value_uri_index,
+  DROP INDEX value_uri_multivalue
\ No newline at end of file
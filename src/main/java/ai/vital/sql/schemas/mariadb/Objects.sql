@@ -0,0 +1,19 @@
+CREATE TABLE `${NAME}_objects` (
+
+  uri varchar(191) NOT NULL,
+  vitaltype varchar(191) NOT NULL,
+  tstamp BIGINT,
+  channeluri varchar(191),
+  ontology_iri varchar(191),
+  version_iri varchar(191),
+  
+  PRIMARY KEY (uri),
+  
+  -- indices
+  INDEX vitaltype_index( vitaltype, tstamp ),
+  INDEX tstamp_index( tstamp ),
+  INDEX channeluri_index( channeluri )
+  
+) ENGINE = InnoDB 
+  CHARACTER SET utf8mb4 
+  COLLATE utf8mb4_bin
\ No newline at end of file
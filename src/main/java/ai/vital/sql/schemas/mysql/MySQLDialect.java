@@ -17,6 +17,9 @@ public class MySQLDialect implements SqlDialect {
 	static {
 		column2Type.put(COLUMN_URI, Types.VARCHAR);
 		column2Type.put(COLUMN_NAME, Types.VARCHAR);
+		column2Type.put(COLUMN_VITALTYPE, Types.VARCHAR);
+		column2Type.put(COLUMN_TSTAMP, Types.BIGINT);
+		column2Type.put(COLUMN_CHANNEL_URI, Types.VARCHAR);
 		column2Type.put(COLUMN_EXTERNAL, Types.BIT);
 		
 		column2Type.put(COLUMN_VALUE_BOOLEAN, Types.BIT);
@@ -56,6 +59,8 @@ public class MySQLDialect implements SqlDialect {
 		
 		column2Type.put(COLUMN_VALUE_URI, Types.VARCHAR);
 		column2Type.put(COLUMN_VALUE_URI_MULTIVALUE, Types.VARCHAR);
+		
+		column2Type.put(COLUMN_VALUE_TYPE, Types.TINYINT);
 		  
 	}
 	
@@ -68,6 +73,24 @@ public class MySQLDialect implements SqlDialect {
 	}
 
 
+	@Override
+	public String getTablesWithColumn() {
+		return "SELECT table_name FROM information_schema.columns WHERE table_schema = DATABASE() AND column_name = ?";
+	}
+
+
+	@Override
+	public String getTablesWithIndex() {
+		return "SELECT DISTINCT table_name FROM information_schema.statistics WHERE table_schema = DATABASE() AND index_name = ?";
+	}
+
+
+	@Override
+	public int getMaxParameters() {
+		return 65535;
+	}
+
+
 	@Override
 	public String locate(String needle, String stack) {
 		return "LOCATE(" + needle + ", " + stack + ")";
@@ -79,4 +102,18 @@ public class MySQLDialect implements SqlDialect {
 		return stack + " REGEXP " + needle;
 	}
 
+
+	@Override
+	public String orderBy(String expression, boolean asc) {
+		//nulls are the lowest values
+		return expression + (asc ? " ASC" : " DESC");
+	}
+
+
+	@Override
+	public String binaryOrder(String expression) {
+		//utf8mb4_bin columns
+		return expression;
+	}
+
 }
@@ -0,0 +1 @@
+ALTER TABLE `${NAME}` ADD COLUMN value_type TINYINT
\ No newline at end of file
@@ -0,0 +1,14 @@
+CREATE TABLE `${NAME}_checkpoints` (
+
+  dataset_uri varchar(191) NOT NULL,
+  chunk INT NOT NULL,
+  blocks BIGINT NOT NULL,
+  objects BIGINT NOT NULL,
+  last_uri varchar(191),
+  tstamp BIGINT NOT NULL,
+  
+  PRIMARY KEY (dataset_uri, chunk)
+  
+) ENGINE = InnoDB 
+  CHARACTER SET utf8mb4 
+  COLLATE utf8mb4_bin
\ No newline at end of file
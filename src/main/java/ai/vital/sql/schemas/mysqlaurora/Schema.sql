@@ -7,6 +7,8 @@ CREATE TABLE `${NAME}` (
   tstamp BIGINT,
   channeluri varchar(191),
   external BIT NOT NULL,
+  -- set value column, see VitalSignsToSqlBridge.VALUE_COLUMNS
+  value_type TINYINT,
     
   value_boolean BIT,
   value_boolean_multivalue BIT,
@@ -45,45 +47,38 @@ CREATE TABLE `${NAME}` (
   
   PRIMARY KEY (id),
   
-  -- indices
-  INDEX uri_index( uri(191) ),
-  INDEX name_index( name(191) ),
+  -- indices, composite ones match name = ? AND value_x op ? criteria and uri = ? AND name = ? subqueries
+  INDEX uri_name_index( uri, name ),
   INDEX vitaltype_index( vitaltype(191) ),
   INDEX tstamp_index( tstamp ),
   INDEX channeluri_index( channeluri(191) ),
   
-  INDEX value_boolean_index( value_boolean ),
-  INDEX value_boolean_multivalue_index( value_boolean_multivalue ),
+  INDEX name_value_boolean_index( name, value_boolean ),
+  INDEX name_value_boolean_multivalue_index( name, value_boolean_multivalue ),
   
-  INDEX value_date_index( value_date ),
-  INDEX value_date_multivalue_index( value_date_multivalue ),
+  INDEX name_value_date_index( name, value_date ),
+  INDEX name_value_date_multivalue_index( name, value_date_multivalue ),
   
-  INDEX value_double_index( value_double ),
-  INDEX value_double_multivalue_index( value_double_multivalue ),
+  INDEX name_value_double_index( name, value_double ),
+  INDEX name_value_double_multivalue_index( name, value_double_multivalue ),
 
-  INDEX value_float_index( value_float ),
-  INDEX value_float_multivalue_index( value_float_multivalue ),
+  INDEX name_value_float_index( name, value_float ),
+  INDEX name_value_float_multivalue_index( name, value_float_multivalue ),
   
-  -- INDEX value_geolocation_index( value_geolocation(64) ),
-  -- INDEX value_geolocation_multivalue_index( value_geolocation_multivalue(64) ),
+  INDEX name_value_integer_index( name, value_integer ),
+  INDEX name_value_integer_multivalue_index( name, value_integer_multivalue ),
   
-  INDEX value_integer_index( value_integer ),
-  INDEX value_integer_multivalue_index( value_integer_multivalue ),
+  INDEX name_value_long_index( name, value_long ),
+  INDEX name_value_long_multivalue_index( name, value_long_multivalue ),
   
-  INDEX value_long( value_long ),
-  INDEX value_long_multivalue_index( value_long_multivalue ),
-  
-  -- INDEX value_other_index( value_other(191) ),
-  -- INDEX value_long_multivalue_index( value_other_multivalue(191) ),
-  
-  INDEX value_string_index( value_string(191) ),
-  INDEX value_string_multivalue_index( value_string_multivalue(191) ),
+  INDEX name_value_string_index( name, value_string(191) ),
+  INDEX name_value_string_multivalue_index( name, value_string_multivalue(191) ),
 
-  INDEX value_truth_index( value_truth ),
-  INDEX value_truth_multivalue_index( value_truth_multivalue ),
+  INDEX name_value_truth_index( name, value_truth ),
+  INDEX name_value_truth_multivalue_index( name, value_truth_multivalue ),
   
-  INDEX value_uri_index( value_uri (191) ),
-  INDEX value_uri_multivalue( value_uri_multivalue(191) )
+  INDEX name_value_uri_index( name, value_uri ),
+  INDEX name_value_uri_multivalue_index( name, value_uri_multivalue )
   
 ) ENGINE = InnoDB 
   CHARACTER SET utf8mb4 
@@ -0,0 +1,19 @@
+CREATE TABLE `${NAME}_edges` (
+
+  id BIGINT NOT NULL AUTO_INCREMENT,
+  edge_uri varchar(191) NOT NULL,
+  source_uri varchar(191) NOT NULL,
+  destination_uri varchar(191) NOT NULL,
+  vitaltype varchar(191) NOT NULL,
+  hyper BOOLEAN NOT NULL,
+  
+  PRIMARY KEY (id),
+  
+  -- covering indices for arcs expansion in both directions
+  INDEX edge_index( edge_uri ),
+  INDEX source_index( source_uri, hyper, destination_uri, edge_uri ),
+  INDEX destination_index( destination_uri, hyper, source_uri, edge_uri )
+  
+) ENGINE = InnoDB 
+  CHARACTER SET utf8mb4 
+  COLLATE utf8mb4_bin
\ No newline at end of file
@@ -7,6 +7,8 @@ CREATE TABLE `${NAME}` (
   tstamp BIGINT,
   channeluri varchar(191),
   external BOOLEAN NOT NULL,
+  -- set value column, see VitalSignsToSqlBridge.VALUE_COLUMNS
+  value_type TINYINT,
     
   value_boolean BOOLEAN,
   value_boolean_multivalue BOOLEAN,
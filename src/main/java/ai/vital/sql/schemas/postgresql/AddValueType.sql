@@ -0,0 +1 @@
+ALTER TABLE "${NAME}" ADD COLUMN value_type SMALLINT
\ No newline at end of file
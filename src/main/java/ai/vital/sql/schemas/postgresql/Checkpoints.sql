@@ -0,0 +1,12 @@
+CREATE TABLE "${NAME}_checkpoints" (
+
+  dataset_uri VARCHAR(191) NOT NULL,
+  chunk INT NOT NULL,
+  blocks BIGINT NOT NULL,
+  objects BIGINT NOT NULL,
+  last_uri VARCHAR(191),
+  tstamp BIGINT NOT NULL,
+  
+  PRIMARY KEY (dataset_uri, chunk)
+  
+)
\ No newline at end of file
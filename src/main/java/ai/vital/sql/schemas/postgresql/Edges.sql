@@ -0,0 +1,17 @@
+CREATE TABLE "${NAME}_edges" (
+
+  id SERIAL,
+  edge_uri VARCHAR(191) NOT NULL,
+  source_uri VARCHAR(191) NOT NULL,
+  destination_uri VARCHAR(191) NOT NULL,
+  vitaltype VARCHAR(191) NOT NULL,
+  hyper BOOLEAN NOT NULL,
+  
+  PRIMARY KEY (id)
+  
+);
+
+-- covering indices for arcs expansion in both directions
+CREATE INDEX "${NAME}_edges_edge_index" ON "${NAME}_edges" ( edge_uri );
+CREATE INDEX "${NAME}_edges_source_index" ON "${NAME}_edges" ( source_uri, hyper, destination_uri, edge_uri );
+CREATE INDEX "${NAME}_edges_destination_index" ON "${NAME}_edges" ( destination_uri, hyper, source_uri, edge_uri );
\ No newline at end of file
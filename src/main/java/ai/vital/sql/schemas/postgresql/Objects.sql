@@ -0,0 +1,19 @@
+CREATE TABLE "${NAME}_objects" (
+
+  uri VARCHAR(191) NOT NULL,
+  vitaltype VARCHAR(191) NOT NULL,
+  tstamp BIGINT,
+  channeluri VARCHAR(191),
+  ontology_iri VARCHAR(191),
+  version_iri VARCHAR(191),
+  
+  PRIMARY KEY (uri)
+  
+);
+
+-- indices
+-- keyset pages order uri bytewise, see SqlDialect.binaryOrder
+CREATE INDEX "${NAME}_objects_uri_binary_index" ON "${NAME}_objects" ( uri COLLATE "C" );
+CREATE INDEX "${NAME}_objects_vitaltype_index" ON "${NAME}_objects" ( vitaltype, tstamp );
+CREATE INDEX "${NAME}_objects_tstamp_index" ON "${NAME}_objects" ( tstamp );
+CREATE INDEX "${NAME}_objects_channeluri_index" ON "${NAME}_objects" ( channeluri );
\ No newline at end of file
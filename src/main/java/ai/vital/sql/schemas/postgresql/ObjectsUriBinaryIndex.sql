@@ -0,0 +1 @@
+CREATE INDEX "${NAME}_objects_uri_binary_index" ON "${NAME}_objects" ( uri COLLATE "C" )
\ No newline at end of file
@@ -10,4 +10,17 @@ public class PostgreSQLDialect extends AmazonRedshiftSqlDialect {
 		return stack + " ~ " + needle;
 	}
 	
+	
+	@Override
+	public String getTablesWithIndex() {
+		return "SELECT tablename FROM pg_indexes WHERE schemaname = current_schema() AND indexname = ?";
+	}
+	
+	
+	@Override
+	public String binaryOrder(String expression) {
+		//the database collation may be linguistic, uri columns have "C" collation indices for it
+		return expression + " COLLATE \"C\"";
+	}
+	
 }
@@ -8,6 +8,8 @@ CREATE TABLE "${NAME}" (
   tstamp BIGINT,
   channeluri varchar(191),
   external BOOLEAN NOT NULL,
+  -- set value column, see VitalSignsToSqlBridge.VALUE_COLUMNS
+  value_type SMALLINT,
   
   value_boolean BOOLEAN,
   value_boolean_multivalue BOOLEAN,
@@ -50,6 +52,8 @@ CREATE TABLE "${NAME}" (
 
 -- indices
 CREATE INDEX "${NAME}_uri_index" ON "${NAME}" ( uri );
+-- keyset pages order uri bytewise, see SqlDialect.binaryOrder
+CREATE INDEX "${NAME}_uri_binary_index" ON "${NAME}" ( uri COLLATE "C" );
 CREATE INDEX "${NAME}_name_index" ON "${NAME}" ( name );
 CREATE INDEX "${NAME}_vitaltype_index" ON "${NAME}" ( vitaltype );
 CREATE INDEX "${NAME}_tstamp_index" ON "${NAME}" ( tstamp );
@@ -0,0 +1 @@
+CREATE INDEX "${NAME}_uri_binary_index" ON "${NAME}" ( uri COLLATE "C" )
\ No newline at end of file
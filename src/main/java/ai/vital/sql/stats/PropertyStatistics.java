@@ -0,0 +1,35 @@
+package ai.vital.sql.stats;
+
+import java.util.Map;
+
+/**
+ * Rows statistics of a single property (name column value) in a segment table
+ */
+public class PropertyStatistics {
+
+	public String propertyURI;
+
+	//property rows
+	public long rows;
+
+	//objects having the property
+	public long objects;
+
+	//fraction of the segment objects without the property
+	public double nullFraction;
+
+	//distinct values of a single value property, null if not collected
+	public Long distinctValues;
+
+	//numeric and date properties value range, null if not collected
+	public Double min;
+
+	public Double max;
+
+	//rows per equal width bucket of the [min, max] range, null if not collected
+	public long[] histogram;
+
+	//most frequent string and URI values -> rows, in descending rows order, null if not collected
+	public Map<String, Long> topValues;
+
+}
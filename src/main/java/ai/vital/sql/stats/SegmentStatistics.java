@@ -0,0 +1,117 @@
+package ai.vital.sql.stats;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.vitalservice.query.QueryStats;
+
+/**
+ * In-process cache of segment tables statistics used to plan select queries. Statistics are always collected
+ * in the background by {@link StatisticsCollector} and queries never wait for them: with segmentStatisticsInterval
+ * they are refreshed periodically, otherwise a collection is scheduled when a query finds them missing or older than
+ * segmentStatisticsTTL seconds. Statistics are estimates only, writes don't update them.
+ */
+public class SegmentStatistics {
+
+	private final static Logger log = LoggerFactory.getLogger(SegmentStatistics.class);
+
+	private VitalSqlDataSource dataSource;
+
+	private final ConcurrentHashMap<String, TableStatistics> tables = new ConcurrentHashMap<String, TableStatistics>();
+
+	private StatisticsCollector collector;
+
+	public SegmentStatistics(VitalSqlDataSource dataSource) {
+		this.dataSource = dataSource;
+		this.collector = new StatisticsCollector(dataSource, this);
+	}
+
+	/**
+	 * @return table statistics, null if disabled, not collected yet or expired, never collects them on the calling thread
+	 */
+	public TableStatistics get(Connection connection, SegmentTable segmentTable, QueryStats queryStats) throws SQLException {
+
+		if(!isEnabled()) return null;
+
+		if(isBackground()) {
+			collector.request(segmentTable);
+			return tables.get(segmentTable.tableName);
+		}
+
+		TableStatistics ts = tables.get(segmentTable.tableName);
+
+		if(ts != null && !isExpired(ts)) return ts;
+
+		collector.schedule(segmentTable);
+
+		return null;
+
+	}
+
+	/**
+	 * @return cached table statistics, never collects them, null if not available
+	 */
+	public TableStatistics getCached(String tableName) {
+
+		if(!isEnabled()) return null;
+
+		TableStatistics ts = tables.get(tableName);
+
+		if(ts != null && !isBackground() && isExpired(ts)) return null;
+
+		return ts;
+
+	}
+
+	/**
+	 * Collects the table statistics now
+	 */
+	public TableStatistics refresh(Connection connection, SegmentTable segmentTable, QueryStats queryStats) throws SQLException {
+
+		long start = System.currentTimeMillis();
+
+		TableStatistics ts = TableStatistics.collect(connection, segmentTable, dataSource.getConfig().getSegmentStatisticsSampleRows().intValue(), queryStats);
+
+		put(ts);
+
+		log.debug("Segment statistics collected, table: {}, objects: {}, properties: {}, sampled rows: {}, {}ms", segmentTable.tableName, ts.objects, ts.properties.size(), ts.sampledRows, System.currentTimeMillis() - start);
+
+		return ts;
+
+	}
+
+	void put(TableStatistics ts) {
+		tables.put(ts.tableName, ts);
+	}
+
+	public void invalidate(String tableName) {
+		tables.remove(tableName);
+		collector.remove(tableName);
+	}
+
+	public void close() {
+		collector.stop();
+	}
+
+	private boolean isEnabled() {
+		Integer ttl = dataSource.getConfig().getSegmentStatisticsTTL();
+		return isBackground() || ( ttl != null && ttl.intValue() > 0 );
+	}
+
+	private boolean isBackground() {
+		Integer interval = dataSource.getConfig().getSegmentStatisticsInterval();
+		return interval != null && interval.intValue() > 0;
+	}
+
+	private boolean isExpired(TableStatistics ts) {
+		Integer ttl = dataSource.getConfig().getSegmentStatisticsTTL();
+		return ttl == null || System.currentTimeMillis() - ts.collected > ttl.intValue() * 1000L;
+	}
+
+}
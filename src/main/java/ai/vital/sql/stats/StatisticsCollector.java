@@ -0,0 +1,180 @@
+package ai.vital.sql.stats;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ai.vital.sql.connector.VitalSqlDataSource;
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.utils.SQLUtils;
+
+/**
+ * Background statistics collection. A single daemon thread collects the statistics of a segment table
+ * as soon as it's requested for the first time and refreshes the statistics of all requested tables every
+ * segmentStatisticsInterval seconds, or collects them once when scheduled, each with its own pooled connection.
+ * Failures are logged and the previous statistics kept.
+ */
+public class StatisticsCollector {
+
+	private final static Logger log = LoggerFactory.getLogger(StatisticsCollector.class);
+
+	private VitalSqlDataSource dataSource;
+
+	private SegmentStatistics statistics;
+
+	//table name -> requested segment table
+	private final ConcurrentHashMap<String, SegmentTable> segmentTables = new ConcurrentHashMap<String, SegmentTable>();
+
+	//table names of scheduled one-time collections not started yet
+	private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private ScheduledExecutorService scheduler = null;
+
+	StatisticsCollector(VitalSqlDataSource dataSource, SegmentStatistics statistics) {
+		this.dataSource = dataSource;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Registers the table for periodic collection, the first collection is scheduled immediately
+	 */
+	synchronized void request(final SegmentTable segmentTable) {
+
+		if(segmentTables.putIfAbsent(segmentTable.tableName, segmentTable) != null) return;
+
+		start();
+
+		scheduler.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				collect(segmentTable);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Schedules a one-time collection of the table unless one is already pending
+	 */
+	synchronized void schedule(final SegmentTable segmentTable) {
+
+		if(!pending.add(segmentTable.tableName)) return;
+
+		start();
+
+		scheduler.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				pending.remove(segmentTable.tableName);
+				doCollect(segmentTable);
+			}
+
+		});
+
+	}
+
+	/**
+	 * Stops refreshing the table, a later request registers it again
+	 */
+	void remove(String tableName) {
+		segmentTables.remove(tableName);
+	}
+
+	private void start() {
+
+		if(scheduler != null) return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "vitalsql-statistics");
+				t.setDaemon(true);
+				return t;
+			}
+
+		});
+
+		Integer i = dataSource.getConfig().getSegmentStatisticsInterval();
+
+		long interval = i != null ? i.longValue() : 0L;
+
+		//one-time collections only
+		if(interval <= 0L) return;
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+
+				for(SegmentTable segmentTable : new ArrayList<SegmentTable>(segmentTables.values())) {
+
+					if(Thread.currentThread().isInterrupted()) return;
+
+					collect(segmentTable);
+
+				}
+
+			}
+
+		}, interval, interval, TimeUnit.SECONDS);
+
+		log.info("Segment statistics collector started, interval: {}s", interval);
+
+	}
+
+	private void collect(SegmentTable segmentTable) {
+
+		//removed in the meantime
+		if(!segmentTables.containsKey(segmentTable.tableName)) return;
+
+		doCollect(segmentTable);
+
+	}
+
+	private void doCollect(SegmentTable segmentTable) {
+
+		Connection connection = null;
+
+		try {
+
+			connection = dataSource.getConnection();
+
+			statistics.refresh(connection, segmentTable, null);
+
+		} catch(Exception e) {
+
+			log.warn("Segment statistics collection failed, table: " + segmentTable.tableName + ": " + e.getLocalizedMessage(), e);
+
+		} finally {
+			SQLUtils.closeQuietly(connection);
+		}
+
+	}
+
+	synchronized void stop() {
+
+		if(scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+
+		segmentTables.clear();
+
+		pending.clear();
+
+	}
+
+}
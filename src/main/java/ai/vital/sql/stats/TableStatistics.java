@@ -0,0 +1,367 @@
+package ai.vital.sql.stats;
+
+import static ai.vital.sql.model.VitalSignsToSqlBridge.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import ai.vital.sql.model.SegmentTable;
+import ai.vital.sql.query.SQLSelectQueryHandler;
+import ai.vital.sql.utils.SQLUtils;
+import ai.vital.vitalservice.query.QueryStats;
+import ai.vital.vitalservice.query.QueryTime;
+import ai.vital.vitalsigns.VitalSigns;
+import ai.vital.vitalsigns.properties.PropertyMetadata;
+
+/**
+ * Segment table statistics: objects per type and per property rows, objects, null fraction and distinct values,
+ * value range and histogram of numeric and date properties, most frequent values of string and URI properties.
+ * The values are estimated from a sample read in {@link #SAMPLE_WINDOWS} id ranges spread over the table, each bounded
+ * with LIMIT, so the collection cost doesn't grow with the table. Counts are scaled to the estimated table rows.
+ */
+public class TableStatistics {
+
+	//value columns with min/max and histogram collected
+	private final static Set<String> rangeColumns = new HashSet<String>(Arrays.asList(COLUMN_VALUE_DATE, COLUMN_VALUE_DOUBLE, COLUMN_VALUE_FLOAT, COLUMN_VALUE_INTEGER, COLUMN_VALUE_LONG));
+
+	//value columns with top values collected
+	private final static Set<String> topValuesColumns = new HashSet<String>(Arrays.asList(COLUMN_VALUE_STRING, COLUMN_VALUE_URI));
+
+	static int SAMPLE_WINDOWS = 20;
+
+	static int HISTOGRAM_BUCKETS = 10;
+
+	static int TOP_VALUES = 10;
+
+	public String tableName;
+
+	public long collected = System.currentTimeMillis();
+
+	//estimated table rows
+	public long rows = 0L;
+
+	//sampled rows the statistics are estimated from
+	public long sampledRows = 0L;
+
+	public long objects = 0L;
+
+	//vitaltype URI -> objects
+	public Map<String, Long> types = new HashMap<String, Long>();
+
+	//property URI -> statistics
+	public Map<String, PropertyStatistics> properties = new HashMap<String, PropertyStatistics>();
+
+	//sampled values of a single value property
+	private static class PropertySample {
+
+		long rows = 0L;
+
+		Set<String> uris = new HashSet<String>();
+
+		String column;
+
+		//value -> sampled rows
+		Map<Object, Integer> values = new HashMap<Object, Integer>();
+
+	}
+
+	/**
+	 * @param sampleRows max rows read
+	 */
+	public static TableStatistics collect(Connection connection, SegmentTable segmentTable, int sampleRows, QueryStats queryStats) throws SQLException {
+
+		long start = System.currentTimeMillis();
+
+		TableStatistics ts = new TableStatistics();
+		ts.tableName = segmentTable.tableName;
+
+		String tname = SQLUtils.escapeID(connection, segmentTable.tableName);
+
+		PreparedStatement stmt = null;
+
+		ResultSet rs = null;
+
+		//single value columns
+		List<String> valueColumns = new ArrayList<String>();
+
+		for(int i = 0; i < VALUE_COLUMNS.length; i += 2) {
+			valueColumns.add(VALUE_COLUMNS[i]);
+		}
+
+		//uri -> vitaltype
+		Map<String, String> sampledObjects = new HashMap<String, String>();
+
+		Map<String, PropertySample> samples = new HashMap<String, PropertySample>();
+
+		try {
+
+			stmt = connection.prepareStatement("SELECT MIN(" + COLUMN_ID + "), MAX(" + COLUMN_ID + ") FROM " + tname);
+
+			rs = stmt.executeQuery();
+
+			Long minID = null;
+
+			Long maxID = null;
+
+			if(rs.next()) {
+				minID = toLong(rs.getObject(1));
+				maxID = toLong(rs.getObject(2));
+			}
+
+			SQLUtils.closeQuietly(stmt, rs);
+
+			stmt = null;
+			rs = null;
+
+			if(minID == null || maxID == null) return finish(ts, samples, sampledObjects, segmentTable, start, queryStats);
+
+			long range = maxID.longValue() - minID.longValue() + 1;
+
+			int windows = (int) Math.min(SAMPLE_WINDOWS, range);
+
+			int perWindow = Math.max(1, sampleRows / windows);
+
+			long step = range / windows;
+
+			StringBuilder sql = new StringBuilder("SELECT " + COLUMN_ID + ", " + COLUMN_URI + ", " + COLUMN_NAME + ", " + COLUMN_VITALTYPE);
+
+			for(String column : valueColumns) {
+				sql.append(", ").append(column);
+			}
+
+			sql.append(" FROM " + tname + " WHERE " + COLUMN_ID + " >= ? AND " + COLUMN_ID + " < ? ORDER BY " + COLUMN_ID + " LIMIT " + perWindow);
+
+			stmt = connection.prepareStatement(sql.toString());
+
+			double estimatedRows = 0d;
+
+			for(int w = 0; w < windows; w++) {
+
+				long from = minID.longValue() + w * step;
+
+				long to = w == windows - 1 ? maxID.longValue() + 1 : from + step;
+
+				stmt.setLong(1, from);
+				stmt.setLong(2, to);
+
+				rs = stmt.executeQuery();
+
+				int read = 0;
+
+				long lastID = from;
+
+				while(rs.next()) {
+
+					read++;
+
+					lastID = rs.getLong(1);
+
+					String uri = rs.getString(2);
+
+					sampledObjects.put(uri, rs.getString(4));
+
+					String propertyURI = rs.getString(3);
+
+					PropertySample sample = samples.get(propertyURI);
+
+					if(sample == null) {
+						sample = new PropertySample();
+						sample.column = getSingleValueColumn(propertyURI);
+						samples.put(propertyURI, sample);
+					}
+
+					sample.rows++;
+
+					sample.uris.add(uri);
+
+					if(sample.column != null) {
+
+						Object v = rs.getObject(5 + valueColumns.indexOf(sample.column));
+
+						if(v != null) {
+							Integer c = sample.values.get(v);
+							sample.values.put(v, c != null ? c.intValue() + 1 : 1);
+						}
+
+					}
+
+				}
+
+				SQLUtils.closeQuietly(rs);
+
+				rs = null;
+
+				ts.sampledRows += read;
+
+				//a full window only covered the ids up to the last one read
+				estimatedRows += read < perWindow ? read : (double) read * (to - from) / (lastID - from + 1);
+
+			}
+
+			ts.rows = Math.max(ts.sampledRows, Math.round(estimatedRows));
+
+		} finally {
+			SQLUtils.closeQuietly(stmt, rs);
+		}
+
+		return finish(ts, samples, sampledObjects, segmentTable, start, queryStats);
+
+	}
+
+	private static TableStatistics finish(TableStatistics ts, Map<String, PropertySample> samples, Map<String, String> sampledObjects, SegmentTable segmentTable, long start, QueryStats queryStats) {
+
+		double scale = ts.sampledRows > 0 ? (double) ts.rows / ts.sampledRows : 1d;
+
+		ts.objects = Math.round(sampledObjects.size() * scale);
+
+		Map<String, Long> sampledTypes = new HashMap<String, Long>();
+
+		for(String type : sampledObjects.values()) {
+			Long c = sampledTypes.get(type);
+			sampledTypes.put(type, c != null ? c.longValue() + 1 : 1L);
+		}
+
+		for(Entry<String, Long> e : sampledTypes.entrySet()) {
+			ts.types.put(e.getKey(), Math.round(e.getValue().longValue() * scale));
+		}
+
+		for(Entry<String, PropertySample> e : samples.entrySet()) {
+
+			PropertySample sample = e.getValue();
+
+			PropertyStatistics ps = new PropertyStatistics();
+			ps.propertyURI = e.getKey();
+			ps.rows = Math.round(sample.rows * scale);
+			ps.objects = Math.min(ts.objects, Math.round(sample.uris.size() * scale));
+			ps.nullFraction = ts.objects > 0 ? Math.max(0d, 1d - (double) ps.objects / ts.objects) : 0d;
+
+			if(sample.column != null) {
+				estimateValues(sample, ps, scale);
+			}
+
+			ts.properties.put(ps.propertyURI, ps);
+
+		}
+
+		if(queryStats != null) {
+			long time = queryStats.addDatabaseTimeFrom(start);
+			if(queryStats.getQueriesTimes() != null) queryStats.getQueriesTimes().add(new QueryTime("Segment statistics", segmentTable.tableName, time));
+		}
+
+		return ts;
+
+	}
+
+	private static void estimateValues(PropertySample sample, PropertyStatistics ps, double scale) {
+
+		long distinct = sample.values.size();
+
+		long singletons = 0L;
+
+		for(Integer c : sample.values.values()) {
+			if(c.intValue() == 1) singletons++;
+		}
+
+		//GEE estimator: values seen once stand for sqrt(N/n) values each
+		ps.distinctValues = Math.max(distinct, Math.min(ps.rows, Math.round(Math.sqrt(scale) * singletons + ( distinct - singletons ))));
+
+		if(rangeColumns.contains(sample.column)) {
+
+			for(Object v : sample.values.keySet()) {
+
+				Double d = toDouble(v);
+
+				if(d == null) continue;
+
+				if(ps.min == null || d.doubleValue() < ps.min.doubleValue()) ps.min = d;
+				if(ps.max == null || d.doubleValue() > ps.max.doubleValue()) ps.max = d;
+
+			}
+
+			if(ps.min != null && ps.max != null && ps.max.doubleValue() > ps.min.doubleValue()) {
+
+				long[] histogram = new long[HISTOGRAM_BUCKETS];
+
+				double width = (ps.max.doubleValue() - ps.min.doubleValue()) / HISTOGRAM_BUCKETS;
+
+				for(Entry<Object, Integer> e : sample.values.entrySet()) {
+
+					Double d = toDouble(e.getKey());
+
+					if(d == null) continue;
+
+					//max value falls into the last bucket
+					int bucket = Math.max(0, Math.min(HISTOGRAM_BUCKETS - 1, (int) Math.floor((d.doubleValue() - ps.min.doubleValue()) / width)));
+
+					histogram[bucket] += Math.round(e.getValue().intValue() * scale);
+
+				}
+
+				ps.histogram = histogram;
+
+			}
+
+		} else if(topValuesColumns.contains(sample.column)) {
+
+			List<Entry<Object, Integer>> entries = new ArrayList<Entry<Object, Integer>>(sample.values.entrySet());
+
+			Collections.sort(entries, new Comparator<Entry<Object, Integer>>() {
+
+				@Override
+				public int compare(Entry<Object, Integer> e1, Entry<Object, Integer> e2) {
+					return e2.getValue().compareTo(e1.getValue());
+				}
+
+			});
+
+			Map<String, Long> topValues = new LinkedHashMap<String, Long>();
+
+			for(int i = 0; i < entries.size() && i < TOP_VALUES; i++) {
+				topValues.put(entries.get(i).getKey().toString(), Math.round(entries.get(i).getValue().intValue() * scale));
+			}
+
+			ps.topValues = topValues;
+
+		}
+
+	}
+
+	/**
+	 * @return value column of a single value property, null for multivalue, unknown or external properties
+	 */
+	private static String getSingleValueColumn(String propertyURI) {
+
+		PropertyMetadata pm = VitalSigns.get().getPropertiesRegistry().getProperty(propertyURI);
+
+		if(pm == null || pm.isMultipleValues()) return null;
+
+		try {
+			return SQLSelectQueryHandler.getValueColumn(propertyURI);
+		} catch(RuntimeException e) {
+			return null;
+		}
+
+	}
+
+	private static Double toDouble(Object v) {
+		return v instanceof Number ? ((Number) v).doubleValue() : null;
+	}
+
+	private static Long toLong(Object v) {
+		return v instanceof Number ? ((Number) v).longValue() : null;
+	}
+
+}